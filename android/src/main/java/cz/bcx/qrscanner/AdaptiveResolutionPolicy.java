@@ -0,0 +1,76 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Moves to a larger capture size when codes are located but can't be decoded, which usually means there are too few
+ * pixels per module. Moves to a smaller size when decoding takes longer than the target time or when found codes
+ * cover a large part of the frame, so fewer pixels would do.
+ *
+ * The size is changed at most once per switch interval and only after enough frames have been decoded at the
+ * current size, so a single odd frame doesn't restart the capture session.
+ */
+public class AdaptiveResolutionPolicy implements ResolutionPolicy {
+    private static final long SWITCH_INTERVAL = 2_000_000_000L; // ns
+    private static final int MIN_SAMPLES = 10;
+    private static final int PARTIALS_BEFORE_UPSCALE = 3;
+    private static final int LARGE_CODES_BEFORE_DOWNSCALE = 3;
+    private static final float LARGE_CODE_SIZE = 0.5f;
+    private static final float LATENCY_SMOOTHING = 0.2f;
+
+    private final long targetDecodeTime;
+
+    private long levelChanged = Long.MIN_VALUE;
+    private int samples = 0;
+    private int partials = 0;
+    private int largeCodes = 0;
+    private long averageDecodeTime = 0;
+
+    /**
+     * @param targetDecodeTime - Decode time per frame in nanoseconds above which a smaller size is used
+     */
+    public AdaptiveResolutionPolicy(long targetDecodeTime) {
+        this.targetDecodeTime = targetDecodeTime;
+    }
+
+    @Override
+    public synchronized int onDecodeFinished(long now, int level, int levelCount, DecodeStatus status, long decodeTime,
+                                             float codeSize) {
+        samples++;
+        averageDecodeTime = averageDecodeTime == 0 ?
+                decodeTime :
+                (long) (averageDecodeTime + LATENCY_SMOOTHING * (decodeTime - averageDecodeTime));
+
+        switch (status) {
+            case FOUND:
+                largeCodes = codeSize >= LARGE_CODE_SIZE ? largeCodes + 1 : 0;
+                break;
+            case PARTIAL:
+                partials++;
+                break;
+            default:
+                largeCodes = 0;
+        }
+
+        if(samples < MIN_SAMPLES) return level;
+        if(levelChanged != Long.MIN_VALUE && now - levelChanged < SWITCH_INTERVAL) return level;
+
+        if(level > 0 && (averageDecodeTime > targetDecodeTime || largeCodes >= LARGE_CODES_BEFORE_DOWNSCALE)) {
+            return level - 1;
+        }
+
+        // Larger frames take longer to decode, don't upscale when the current size is already close to the target
+        if(level < levelCount - 1 && partials >= PARTIALS_BEFORE_UPSCALE && averageDecodeTime * 2 < targetDecodeTime) {
+            return level + 1;
+        }
+
+        return level;
+    }
+
+    @Override
+    public synchronized void onLevelChanged(long now, int level) {
+        levelChanged = now;
+        samples = 0;
+        partials = 0;
+        largeCodes = 0;
+        averageDecodeTime = 0;
+    }
+}
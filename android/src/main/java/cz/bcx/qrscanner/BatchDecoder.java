@@ -0,0 +1,196 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes QR codes in image files with the same {@link DecodeEngine}s the camera pipeline uses.
+ *
+ * Files of a batch are decoded in parallel by a bounded number of workers, every worker reuses its decoder and frame
+ * for all its files. Results are reported as soon as every file is decoded, not at the end of the batch.
+ */
+public class BatchDecoder {
+    public interface Listener {
+        /**
+         * Called from a worker thread for every decoded file, in order of completion.
+         * @param index - Index of the file in the batch
+         * @param results - Codes found in the file, empty if there is none; points are in image coordinates
+         */
+        void onFileDecoded(int index, File file, List<Result> results);
+
+        /**
+         * Called from a worker thread for every file which couldn't be loaded.
+         */
+        void onFileFailed(int index, File file, Exception e);
+
+        /**
+         * Called from a worker thread once all files have been processed or the batch has been cancelled.
+         */
+        void onBatchFinished(int decoded, int failed, boolean cancelled);
+    }
+
+    public static final class Batch {
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private final AtomicInteger nextIndex = new AtomicInteger(0);
+        private final AtomicInteger decoded = new AtomicInteger(0);
+        private final AtomicInteger failed = new AtomicInteger(0);
+        private final AtomicInteger runningWorkers;
+
+        private Batch(int workers) {
+            this.runningWorkers = new AtomicInteger(workers);
+        }
+
+        /**
+         * Stops the batch after files which are being decoded right now.
+         */
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        /**
+         * @return True if the batch is over, set right before the listener is told so.
+         */
+        public boolean isFinished() {
+            return finished.get();
+        }
+    }
+
+    private static final String WORKER_THREAD_NAME = "cz.bcx.qr_scanner.file_decoder_";
+
+    private final ImageLoader imageLoader;
+    private final int workerCount;
+    private final ExecutorService executor;
+
+    /**
+     * @param workerCount - Maximal number of files decoded at once over all batches
+     */
+    public BatchDecoder(ImageLoader imageLoader, int workerCount) {
+        this.imageLoader = imageLoader;
+        this.workerCount = Math.max(1, workerCount);
+
+        this.executor = Executors.newFixedThreadPool(this.workerCount, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, WORKER_THREAD_NAME + count++);
+                thread.setDaemon(true);
+                // Batches run next to the camera pipeline, which has priority
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return Files of the directory which the loader can read, sorted by name. Subdirectories are not searched.
+     */
+    public List<File> listImages(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            throw new IOException("Can't list directory: " + directory);
+        }
+
+        Arrays.sort(files);
+
+        List<File> images = new ArrayList<>();
+        for(File file : files) {
+            if(file.isFile() && imageLoader.canLoad(file)) {
+                images.add(file);
+            }
+        }
+
+        return images;
+    }
+
+    /**
+     * Starts decoding of the files in the background.
+     * @param options - Decoding options, only those of the decode engine apply (engine, binarizer, multiple codes,
+     *                pyramid, prescreen)
+     */
+    public Batch decode(final List<File> files, ScannerOptions options, final Listener listener) {
+        final int workers = Math.max(1, Math.min(workerCount, files.size()));
+        final Batch batch = new Batch(workers);
+        DecodeEngine engine = DecodeEngines.create(options.getDecodeEngine(), options);
+
+        for(int i = 0; i < workers; i++) {
+            final DecodeEngine.Decoder decoder = engine.createDecoder(null);
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runWorker(batch, files, decoder, listener);
+                }
+            });
+        }
+
+        return batch;
+    }
+
+    /**
+     * Decodes a single file on the calling thread.
+     * @return Codes found in the file, points are in image coordinates.
+     */
+    public List<Result> decodeFile(File file, ScannerOptions options) throws IOException {
+        DecodeEngine.Decoder decoder = DecodeEngines.create(options.getDecodeEngine(), options).createDecoder(null);
+        Frame frame = new Frame(0);
+
+        imageLoader.load(file, frame);
+        return decoder.decode(frame);
+    }
+
+    private void runWorker(Batch batch, List<File> files, DecodeEngine.Decoder decoder, Listener listener) {
+        Frame frame = new Frame(0);
+
+        try {
+            int index;
+            while(!batch.isCancelled() && (index = batch.nextIndex.getAndIncrement()) < files.size()) {
+                File file = files.get(index);
+
+                List<Result> results;
+                try {
+                    imageLoader.load(file, frame);
+                    results = decoder.decode(frame);
+                } catch (IOException | RuntimeException e) {
+                    batch.failed.incrementAndGet();
+                    listener.onFileFailed(index, file, e);
+                    continue;
+                }
+
+                batch.decoded.incrementAndGet();
+                listener.onFileDecoded(index, file, results.isEmpty() ? Collections.<Result>emptyList() : results);
+            }
+        } finally {
+            // The last worker to finish reports the end of the batch
+            if(batch.runningWorkers.decrementAndGet() == 0) {
+                batch.finished.set(true);
+                listener.onBatchFinished(batch.decoded.get(), batch.failed.get(), batch.isCancelled());
+            }
+        }
+    }
+
+    /**
+     * Stops worker threads once running batches are finished, waits at most given time for them.
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,165 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Order in which binarizers are tried on a frame. Next binarizer is tried only when the previous one didn't find
+ * any code.
+ *
+ * The cascade is shared by all decode workers. It tracks how often each tier finds a code and periodically reorders
+ * tiers by hit rate per cost, so e.g. in low light the hybrid binarizer moves in front of the global one.
+ * Every few frames tiers are tried in the order of their cost, so the cheaper tiers get a chance to recover.
+ */
+public class BinarizerCascade {
+    public enum Tier {
+        GLOBAL_HISTOGRAM(1f) {
+            @Override
+            public Binarizer create(LuminanceSource source) {
+                return new GlobalHistogramBinarizer(source);
+            }
+
+            @Override
+            public Binarizer create(LuminanceSource source, DecodeContext context) {
+                return new ReusableGlobalHistogramBinarizer(source, context);
+            }
+        },
+        HYBRID(2.5f) {
+            @Override
+            public Binarizer create(LuminanceSource source) {
+                return new HybridBinarizer(source);
+            }
+
+            @Override
+            public Binarizer create(LuminanceSource source, DecodeContext context) {
+                return new ReusableHybridBinarizer(source, context);
+            }
+        };
+
+        // Relative cost of binarization
+        private final float cost;
+
+        Tier(float cost) {
+            this.cost = cost;
+        }
+
+        public abstract Binarizer create(LuminanceSource source);
+
+        /**
+         * @return Binarizer writing into buffers of the context, producing the same matrix as {@link #create}.
+         */
+        public abstract Binarizer create(LuminanceSource source, DecodeContext context);
+    }
+
+    public enum Strategy {
+        HYBRID("hybrid"),
+        GLOBAL("global"),
+        CASCADE("cascade");
+
+        private final String serializedName;
+
+        Strategy(String serializedName) {
+            this.serializedName = serializedName;
+        }
+
+        public static Strategy getStrategyForName(String serializedName) {
+            for(Strategy strategy : values()) {
+                if(strategy.serializedName.equals(serializedName)) return strategy;
+            }
+
+            return CASCADE;
+        }
+    }
+
+    private static final int REORDER_INTERVAL = 32; // frames
+    private static final int PROBE_INTERVAL = 16; // frames
+    private static final float HIT_RATE_SMOOTHING = 0.05f;
+
+    private final boolean adaptive;
+    private final Tier[] costOrder;
+    private final float[] hitRates = new float[Tier.values().length];
+    private final long[] attempts = new long[Tier.values().length];
+    private final long[] hits = new long[Tier.values().length];
+
+    private volatile Tier[] order;
+    private long frames = 0;
+
+    public BinarizerCascade(Strategy strategy) {
+        switch (strategy) {
+            case HYBRID:
+                this.costOrder = new Tier[] {Tier.HYBRID};
+                break;
+            case GLOBAL:
+                this.costOrder = new Tier[] {Tier.GLOBAL_HISTOGRAM};
+                break;
+            default:
+                this.costOrder = new Tier[] {Tier.GLOBAL_HISTOGRAM, Tier.HYBRID};
+        }
+
+        this.adaptive = costOrder.length > 1;
+        this.order = costOrder;
+
+        // Start optimistic, so no tier gets demoted before it's been tried
+        Arrays.fill(hitRates, 1f);
+    }
+
+    /**
+     * @return Tiers in the order they should be tried on the next frame. The array must not be modified.
+     */
+    public Tier[] nextOrder() {
+        if(!adaptive) return costOrder;
+
+        synchronized (this) {
+            if(++frames % PROBE_INTERVAL == 0) return costOrder;
+        }
+
+        return order;
+    }
+
+    /**
+     * Records result of a single binarizer tier on a frame.
+     * @param found - True if a code has been decoded with the tier
+     */
+    public synchronized void onAttempt(Tier tier, boolean found) {
+        int index = tier.ordinal();
+
+        attempts[index]++;
+        if(found) hits[index]++;
+
+        hitRates[index] += HIT_RATE_SMOOTHING * ((found ? 1f : 0f) - hitRates[index]);
+
+        if(adaptive && attempts[index] % REORDER_INTERVAL == 0) {
+            reorder();
+        }
+    }
+
+    public synchronized long getAttempts(Tier tier) {
+        return attempts[tier.ordinal()];
+    }
+
+    public synchronized long getHits(Tier tier) {
+        return hits[tier.ordinal()];
+    }
+
+    private void reorder() {
+        Tier[] newOrder = costOrder.clone();
+
+        Arrays.sort(newOrder, new Comparator<Tier>() {
+            @Override
+            public int compare(Tier first, Tier second) {
+                return Float.compare(getScore(second), getScore(first));
+            }
+        });
+
+        order = newOrder;
+    }
+
+    private float getScore(Tier tier) {
+        return hitRates[tier.ordinal()] / tier.cost;
+    }
+}
@@ -0,0 +1,86 @@
+package cz.bcx.qrscanner;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loads images of any format BitmapFactory supports. Large photos are downsampled while being decoded, so a batch of
+ * them doesn't need a full size bitmap per worker.
+ */
+public class BitmapImageLoader implements ImageLoader {
+    private static final String[] EXTENSIONS = {".jpg", ".jpeg", ".png", ".webp", ".bmp", ".gif"};
+
+    // Longer side of a loaded image, codes in photos are rarely too small to decode at this size
+    private static final int MAX_IMAGE_SIZE = 2048; // px
+
+    private final PgmImageLoader pgmImageLoader = new PgmImageLoader();
+
+    @Override
+    public boolean canLoad(File file) {
+        if(pgmImageLoader.canLoad(file)) return true;
+
+        String name = file.getName().toLowerCase();
+        for(String extension : EXTENSIONS) {
+            if(name.endsWith(extension)) return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void load(File file, Frame frame) throws IOException {
+        if(pgmImageLoader.canLoad(file)) {
+            pgmImageLoader.load(file, frame);
+            return;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+
+        if(options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not a supported image: " + file);
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while(Math.max(options.outWidth, options.outHeight) / options.inSampleSize > MAX_IMAGE_SIZE) {
+            options.inSampleSize *= 2;
+        }
+
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if(bitmap == null) {
+            throw new IOException("Failed to decode image: " + file);
+        }
+
+        try {
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+
+            byte[] data = frame.ensureCapacity(width * height);
+            int[] row = new int[width];
+
+            // Row by row, so there is no second full size copy of the image
+            for(int y = 0; y < height; y++) {
+                bitmap.getPixels(row, 0, width, 0, y, width, 1);
+
+                int offset = y * width;
+                for(int x = 0; x < width; x++) {
+                    int pixel = row[x];
+                    // Same luma weights as ZXing's RGBLuminanceSource
+                    int red = (pixel >> 16) & 0xff;
+                    int green = (pixel >> 8) & 0xff;
+                    int blue = pixel & 0xff;
+                    data[offset + x] = (byte) ((red + 2 * green + blue) / 4);
+                }
+            }
+
+            frame.set(width, height, null, 0, 0);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
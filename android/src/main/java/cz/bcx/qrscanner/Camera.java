@@ -3,43 +3,39 @@ package cz.bcx.qrscanner;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.MeteringRectangle;
 import android.media.Image;
 import android.media.ImageReader;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Range;
 import android.util.Size;
 import android.view.Surface;
 
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.view.FlutterView;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.LuminanceSource;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.NotFoundException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
 
 
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-public class Camera {
+public class Camera implements ResolutionController.Target, ScannerLifecycle.Target, CaptureController.Target {
     public enum CameraStateError {
         CAMERA_UNKNOWN_ERROR(
             -1,
@@ -94,103 +90,273 @@ public class Camera {
     public interface CameraStateListener {
         void onCameraDisconnected();
         void onCameraError(CameraStateError cameraStateError);
-        void onCodeScanned(String code);
+        /**
+         * Called from a decode worker thread with all new codes found in a frame.
+         * @param timestamp - Sensor timestamp of the frame in which the codes have been found
+         */
+        void onCodesScanned(List<Result> results, long timestamp);
+        /**
+         * Called from a decode worker thread with all codes found in a frame if tracking events are enabled.
+         * @param timestamp - Sensor timestamp of the frame in which the codes have been found
+         */
+        void onCodesTracked(List<Result> results, long timestamp);
     }
 
     public interface ScannerCallback {
         void onCodeScanned(String data);
     }
 
-    private static final int BETWEEN_SCANS_DELAY = 333; //ms
-
     private HandlerThread backgroundThread;
     private Handler backgroundHandler;
 
+    // Receives camera device and startup session callbacks, so they don't wait for the main thread
+    private final HandlerThread cameraThread;
+    private final Handler cameraHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
     private CameraStateListener stateListener;
 
+    private static final int IMAGE_READER_BUFFERS = 4;
+
+    private final CameraConfiguration configuration;
     private final String cameraId;
-    private final ImageReader imageReader;
-    private final FlutterView.SurfaceTextureEntry textureEntry;
+    private final Rect sensorSize;
+    private final ScanWindow scanWindow;
+    private final ScannerOptions options;
+    private final DecodeScheduler decodeScheduler;
+    private final StartupTimeline startupTimeline;
+
+    private FlutterView.SurfaceTextureEntry textureEntry;
+    private ImageReader imageReader;
+    private Size captureSize;
 
     private CameraDevice cameraDevice;
     private CameraCaptureSession cameraCaptureSession;
 
     private CaptureRequest captureRequest;
+    // Null keeps the preview defaults with continuous focus
+    private volatile CaptureSettings captureSettings;
+    private CaptureController captureController;
+    // True while a triggered focus scan holds the lens, changed on the background thread
+    private boolean focusTriggered = false;
 
     private Surface previewSurface;
     private Size previewSize;
 
-    private MultiFormatReader qrReader;
-
-    private boolean scanningEnabled = false;
-    private long lastTimeScanned = 0;
+    private FramePipeline framePipeline;
+    private final FrameRecorder frameRecorder;
+    private ScannerLifecycle lifecycle;
+
+    private CameraManager cameraManager;
+    private boolean previewRequested = false;
+    // Incremented whenever the camera is released, callbacks of an older camera are ignored
+    private int cameraGeneration = 0;
+
+    // Opening the camera and creating outputs run in parallel, the session is created when both are done
+    private int pendingStartupSteps = 2;
+    private MethodChannel.Result startupResult;
+    private boolean disposed = false;
+
+    private final ImageReader.OnImageAvailableListener imageAvailableListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            long acquireStart = System.nanoTime();
+            Image image = reader.acquireLatestImage();
+
+            if (image == null) return;
+
+            framePipeline.getStats().recordSince(PipelineStats.Stage.ACQUIRE, acquireStart);
+            startupTimeline.mark(StartupTimeline.Mark.FIRST_IMAGE);
+            lifecycle.onFrame();
+
+            try {
+                // The plane is copied out of the image, so the image can be closed before decoding starts
+                Image.Plane plane = image.getPlanes()[0];
+                boolean submitted = framePipeline.onFrame(
+                        plane.getBuffer(),
+                        plane.getRowStride(),
+                        plane.getPixelStride(),
+                        image.getWidth(),
+                        image.getHeight(),
+                        image.getTimestamp()
+                );
+
+                if(submitted) startupTimeline.mark(StartupTimeline.Mark.FIRST_SCAN_FRAME);
+            } finally {
+                image.close();
+            }
+        }
+    };
 
-    protected Camera(String cameraId, FlutterView.SurfaceTextureEntry textureEntry, Size previewSize, Size captureSize) {
-        this.cameraId = cameraId;
-        this.textureEntry = textureEntry;
-        this.previewSize = previewSize;
+    private final CameraCaptureSession.CaptureCallback previewCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
+            startupTimeline.mark(StartupTimeline.Mark.FIRST_PREVIEW_FRAME);
+        }
+    };
+
+    protected Camera(CameraConfiguration configuration, ScannerOptions options, DecodeScheduler decodeScheduler,
+                     StartupTimeline startupTimeline, FrameRecorder frameRecorder) {
+        this.configuration = configuration;
+        this.cameraId = configuration.getCameraId();
+        this.previewSize = configuration.getPreviewSize();
+        this.captureSize = configuration.getCaptureSizes()[configuration.getCaptureSizeIndex()];
+        this.sensorSize = configuration.getSensorSize();
+        this.scanWindow = options.getScanWindow();
+        this.options = options;
+        this.decodeScheduler = decodeScheduler;
+        this.startupTimeline = startupTimeline;
+        this.frameRecorder = frameRecorder;
+
+        this.cameraThread = new HandlerThread("cz.bcx.qr_scanner.camera_thread");
+        this.cameraThread.start();
+        this.cameraHandler = new Handler(cameraThread.getLooper());
+    }
 
-        this.imageReader = ImageReader.newInstance(
-                captureSize.getWidth(),
-                captureSize.getHeight(),
-                ImageFormat.YUV_420_888,
-                4
+    /**
+     * @param decodeScheduler - Scheduler shared by all sessions, null to decode on threads of this camera only
+     * @param startupTimeline - Timeline started at the beginning of initialization
+     * @throws IOException if the recording requested by {@link ScannerOptions#getRecordFile()} can't be started
+     */
+    public static Camera createCameraInstance(CameraManager cameraManager, PreviewQuality previewQuality, ScannerOptions options,
+                                              DecodeScheduler decodeScheduler, StartupTimeline startupTimeline)
+            throws CameraAccessException, IOException {
+        CameraConfiguration configuration = CameraConfiguration.get(
+                cameraManager,
+                options.getLensFacing(),
+                options.getCameraId(),
+                previewQuality
         );
+        startupTimeline.mark(StartupTimeline.Mark.CONFIGURATION_READY);
+
+        // Opened before anything of the session exists, so a recording which can't be started fails the initialization
+        FrameRecorder frameRecorder = null;
+        if(options.getRecordFile() != null) {
+            frameRecorder = new FrameRecorder(
+                    new File(options.getRecordFile()),
+                    options.getRecordBuffers(),
+                    options.getRecordFrameRate(),
+                    options.getRecordMaxSize()
+            );
+        }
+
+        return new Camera(configuration, options, decodeScheduler, startupTimeline, frameRecorder);
+    }
+
+    /**
+     * Creates the preview surface, the image reader and the frame pipeline with its decoders. Called on the main
+     * thread, which the surface texture has to be created on, while the camera is being opened.
+     */
+    private void createOutputs(FlutterView flutterView) {
+        this.textureEntry = flutterView.createSurfaceTexture();
 
         SurfaceTexture surfaceTexture = textureEntry.surfaceTexture();
         surfaceTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight()); //TODO);
         this.previewSurface = new Surface(surfaceTexture);
 
-        this.qrReader = new MultiFormatReader();
+        this.imageReader = createImageReader(captureSize);
 
-        // Scan QR Codes only
-        // Makes scanning much faster
-        HashMap<DecodeHintType, Object> hints = new HashMap<>();
-        hints.put(DecodeHintType.POSSIBLE_FORMATS, Arrays.asList(BarcodeFormat.QR_CODE));
-        this.qrReader.setHints(hints);
-    }
-
-    public static Camera createCameraInstance(CameraManager cameraManager, FlutterView flutterView, PreviewQuality previewQuality) throws CameraAccessException {
-        String   cameraId    = null;
+        this.framePipeline = new FramePipeline(options, decodeScheduler, FramePipeline.SYSTEM_CLOCK, new FramePipeline.Listener() {
+            @Override
+            public void onCodesScanned(List<Result> results, long timestamp) {
+                if(Camera.this.stateListener != null) {
+                    Camera.this.stateListener.onCodesScanned(results, timestamp);
+                }
+            }
 
-        String[] availableCameras = cameraManager.getCameraIdList();
+            @Override
+            public void onCodesTracked(List<Result> results, long timestamp) {
+                if(Camera.this.stateListener != null) {
+                    Camera.this.stateListener.onCodesTracked(results, timestamp);
+                }
+            }
+        });
 
-        for (String camera : availableCameras) {
-            CameraCharacteristics camCharacteristics = cameraManager.getCameraCharacteristics(camera);
+        this.framePipeline.setCrop(getCaptureCrop(captureSize));
 
-            @SuppressWarnings("ConstantConditions")
-            int lensDirection = camCharacteristics.get(CameraCharacteristics.LENS_FACING);
+        if(options.isScanCaptureProfile()) {
+            Region scanRegion = scanWindow.isFull() ?
+                    null :
+                    scanWindow.toSensorRegion(
+                            previewSize.getWidth(), previewSize.getHeight(), sensorSize.width(), sensorSize.height()
+                    );
 
-            if (lensDirection == CameraCharacteristics.LENS_FACING_BACK) {
-                cameraId = camera;
-                break;
-            }
+            this.captureController = new CaptureController(
+                    configuration.getCaptureCapabilities(),
+                    scanRegion,
+                    options.getMaxExposureTime() * 1_000_000L,
+                    options.isCloseFocus(),
+                    this
+            );
+            this.captureSettings = captureController.getSettings();
+            this.framePipeline.setCaptureController(captureController);
         }
+        this.framePipeline.getStats().setSensorClock(configuration.getSensorClock());
 
-        if(cameraId == null) {
-            throw new CameraAccessException(CameraAccessException.CAMERA_ERROR, "Couldn't find any useable back-facing camera.");
+        if(frameRecorder != null) {
+            this.framePipeline.setFrameRecorder(frameRecorder);
         }
 
-        FlutterView.SurfaceTextureEntry surfaceTextureEntry = flutterView.createSurfaceTexture();
+        this.lifecycle = new ScannerLifecycle(
+                options.getReleaseMode(),
+                this,
+                FramePipeline.SYSTEM_CLOCK,
+                framePipeline.getStats()
+        );
 
-        CameraCharacteristics cameraCharacteristics = cameraManager.getCameraCharacteristics(cameraId);
+        Size[] captureSizes = configuration.getCaptureSizes();
+        if(options.isAdaptiveResolution() && captureSizes.length > 1) {
+            int[] widths = new int[captureSizes.length];
+            int[] heights = new int[captureSizes.length];
+            for(int i = 0; i < captureSizes.length; i++) {
+                widths[i] = captureSizes[i].getWidth();
+                heights[i] = captureSizes[i].getHeight();
+            }
 
-        StreamConfigurationMap streamConfigurationMap =
-                cameraCharacteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            this.framePipeline.setResolutionController(new ResolutionController(
+                    widths,
+                    heights,
+                    configuration.getCaptureSizeIndex(),
+                    new AdaptiveResolutionPolicy(options.getTargetDecodeTime() * 1_000_000L),
+                    this
+            ));
+        }
+    }
 
-        Size[] availableTextureSizes = streamConfigurationMap.getOutputSizes(SurfaceTexture.class);
-        Size previewSize = ScannerUtils.getOptimalSize(previewQuality.getSize(), availableTextureSizes);
+    private static ImageReader createImageReader(Size captureSize) {
+        return ImageReader.newInstance(
+                captureSize.getWidth(),
+                captureSize.getHeight(),
+                ImageFormat.YUV_420_888,
+                IMAGE_READER_BUFFERS
+        );
+    }
 
-        Size[] availableCaptureSizes = streamConfigurationMap.getOutputSizes(ImageFormat.YUV_420_888);
-        Size captureSize = ScannerUtils.getOptimalSize(new Size(800, 600), availableCaptureSizes);
+    /**
+     * @return Part of frames of given size to decode, null for whole frames.
+     */
+    private Region getCaptureCrop(Size captureSize) {
+        if(scanWindow.isFull()) return null;
 
-        return new Camera(cameraId, surfaceTextureEntry, previewSize, captureSize);
+        return scanWindow.toCaptureRegion(
+                previewSize.getWidth(), previewSize.getHeight(),
+                captureSize.getWidth(), captureSize.getHeight(),
+                sensorSize.width(), sensorSize.height()
+        );
     }
 
     public long getTextureId() {
         return textureEntry.id();
     }
 
+    public PipelineStats getStats() {
+        return framePipeline.getStats();
+    }
+
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
     public Size getPreviewResolution() {
         return previewSize;
     }
@@ -201,9 +367,14 @@ public class Camera {
         backgroundThread = new HandlerThread("cz.bcx.qr_scanner.background_thread");
         backgroundThread.start();
         backgroundHandler = new Handler(backgroundThread.getLooper());
+
+        framePipeline.start();
     }
 
     private void stopBackgroundThread() {
+        // Stopped even without the thread, e.g. on a cold released camera, waits for frames being decoded
+        framePipeline.stop();
+
         if(backgroundThread == null) return;
 
         backgroundThread.quitSafely();
@@ -216,45 +387,62 @@ public class Camera {
         }
     }
 
+    /**
+     * Opens the camera and creates its outputs in the meantime. The result gets the texture ID and the preview size
+     * once the capture session is configured.
+     */
     @SuppressLint("MissingPermission") //Put camera permission to your apps android manifest file.
-    protected void openCamera(CameraManager cameraManager, final MethodChannel.Result result, final CameraStateListener cameraStateListener) throws CameraAccessException {
+    protected void openCamera(CameraManager cameraManager, FlutterView flutterView, final MethodChannel.Result result, final CameraStateListener cameraStateListener) throws CameraAccessException {
+        this.cameraManager = cameraManager;
         this.stateListener = cameraStateListener;
+        this.startupResult = result;
 
-        CameraDevice.StateCallback cameraDeviceStateCallback = new CameraDevice.StateCallback() {
-            @Override
-            public void onOpened(final CameraDevice cameraDevice) {
-                Camera.this.cameraDevice = cameraDevice;
+        try {
+            cameraManager.openCamera(
+                cameraId,
+                createDeviceStateCallback(false),
+                cameraHandler
+            );
+        } catch (CameraAccessException e) {
+            // The caller reports the failure
+            takeStartupResult();
+            CameraConfiguration.invalidate();
+            throw e;
+        }
 
-                List<Surface> surfaceList = new ArrayList<>();
-                surfaceList.add(previewSurface);
-                surfaceList.add(imageReader.getSurface());
+        createOutputs(flutterView);
+        startupTimeline.mark(StartupTimeline.Mark.SETUP_DONE);
+        onStartupStepDone();
+    }
 
-                try {
-                    cameraDevice.createCaptureSession(
-                        surfaceList,
-                        new CameraCaptureSession.StateCallback() {
-                            @Override
-                            public void onConfigured(CameraCaptureSession session) {
-                                Camera.this.cameraCaptureSession = session;
+    /**
+     * @param reopening - True if the camera is being reopened after a release, false on startup
+     */
+    private CameraDevice.StateCallback createDeviceStateCallback(final boolean reopening) {
+        final int generation;
+        synchronized (this) {
+            generation = cameraGeneration;
+        }
 
-                                HashMap<String, Object> response = new HashMap<>();
-                                response.put("textureId", Camera.this.getTextureId());
+        return new CameraDevice.StateCallback() {
+            @Override
+            public void onOpened(final CameraDevice cameraDevice) {
+                synchronized (Camera.this) {
+                    // Disposed or released again while it was being opened
+                    if(disposed || generation != cameraGeneration) {
+                        cameraDevice.close();
+                        return;
+                    }
 
-                                Size res = Camera.this.getPreviewResolution();
-                                response.put("previewWidth", res.getWidth());
-                                response.put("previewHeight", res.getHeight());
-                                result.success(response);
-                            }
+                    Camera.this.cameraDevice = cameraDevice;
+                }
 
-                            @Override
-                            public void onConfigureFailed(CameraCaptureSession session) {
-                                result.error("configureFailed", "Failed to configure camera session.", null);
-                            }
-                        },
-                        null
-                    );
-                } catch (CameraAccessException e) {
-                    result.error("CameraAccessException", "Failed to create capture session.", e);
+                if(reopening) {
+                    createResumedSession(generation);
+                }
+                else {
+                    startupTimeline.mark(StartupTimeline.Mark.CAMERA_OPENED);
+                    onStartupStepDone();
                 }
             }
 
@@ -267,20 +455,262 @@ public class Camera {
 
             @Override
             public void onError(CameraDevice camera, int error) {
+                CameraStateError stateError = CameraStateError.getByErrorCode(error);
+
+                if(stateError != CameraStateError.CAMERA_IN_USE && stateError != CameraStateError.CAMERA_MAX_IN_USE) {
+                    CameraConfiguration.invalidate();
+                }
+
+                if(reopening) {
+                    lifecycle.onReopenFailed();
+                }
+                else {
+                    postStartupError("cameraError", stateError.getMessage(), null);
+                }
+
                 if(Camera.this.stateListener != null) {
-                    Camera.this.stateListener.onCameraError(CameraStateError.getByErrorCode(error));
+                    Camera.this.stateListener.onCameraError(stateError);
                 }
             }
         };
+    }
 
-        cameraManager.openCamera(
-            cameraId,
-            cameraDeviceStateCallback,
-            null
-        );
+    private synchronized boolean isCurrentGeneration(int generation) {
+        return !disposed && generation == cameraGeneration;
+    }
+
+    /**
+     * Called on the main thread when outputs are created and on the camera thread when the camera is opened, the
+     * later one creates the capture session.
+     */
+    private void onStartupStepDone() {
+        final int generation;
+        synchronized (this) {
+            if(--pendingStartupSteps > 0 || disposed) return;
+            generation = cameraGeneration;
+        }
+
+        try {
+            cameraDevice.createCaptureSession(
+                Arrays.asList(previewSurface, imageReader.getSurface()),
+                new CameraCaptureSession.StateCallback() {
+                    @Override
+                    public void onConfigured(CameraCaptureSession session) {
+                        // Released while configuring, the result is sent once the camera is reopened
+                        if(!isCurrentGeneration(generation)) {
+                            session.close();
+                            return;
+                        }
+
+                        Camera.this.cameraCaptureSession = session;
+                        startupTimeline.mark(StartupTimeline.Mark.SESSION_CONFIGURED);
+                        postStartupSuccess(createStartupResponse());
+                    }
+
+                    @Override
+                    public void onConfigureFailed(CameraCaptureSession session) {
+                        if(isCurrentGeneration(generation)) {
+                            postStartupError("configureFailed", "Failed to configure camera session.", null);
+                        }
+                    }
+                },
+                cameraHandler
+            );
+        } catch (CameraAccessException | IllegalStateException e) {
+            if(isCurrentGeneration(generation)) {
+                postStartupError("CameraAccessException", "Failed to create capture session.", e);
+            }
+        }
+    }
+
+    private Map<String, Object> createStartupResponse() {
+        HashMap<String, Object> response = new HashMap<>();
+        response.put("textureId", getTextureId());
+
+        Size res = getPreviewResolution();
+        response.put("previewWidth", res.getWidth());
+        response.put("previewHeight", res.getHeight());
+        return response;
+    }
+
+    private synchronized MethodChannel.Result takeStartupResult() {
+        MethodChannel.Result result = startupResult;
+        startupResult = null;
+        return result;
+    }
+
+    // Results have to be sent on the main thread
+
+    private void postStartupSuccess(final Map<String, Object> response) {
+        final MethodChannel.Result result = takeStartupResult();
+        if(result == null) return;
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                result.success(response);
+            }
+        });
+    }
+
+    private void postStartupError(final String errorCode, final String errorMessage, final Object errorDetails) {
+        final MethodChannel.Result result = takeStartupResult();
+        if(result == null) return;
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                result.error(errorCode, errorMessage, errorDetails);
+            }
+        });
+    }
+
+    protected void onPause() {
+        lifecycle.onPause();
+    }
+
+    protected void onResume() {
+        lifecycle.onResume();
+    }
+
+    public ScannerLifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    @Override
+    public void releaseCamera(boolean cold) {
+        CameraDevice device;
+        synchronized (this) {
+            // A camera which is still being opened is closed as soon as it opens
+            cameraGeneration++;
+            device = cameraDevice;
+            cameraDevice = null;
+        }
+
+        if(cameraCaptureSession != null) {
+            cameraCaptureSession.close();
+            cameraCaptureSession = null;
+        }
+
+        // The request belongs to the closed device, it's created again when the preview restarts
+        captureRequest = null;
+
+        // Focus locked on a code is lost with the device
+        if(captureController != null) {
+            captureSettings = captureController.reset();
+        }
+        focusTriggered = false;
+
+        if(device != null) {
+            device.close();
+        }
+
+        if(cold) {
+            imageReader.setOnImageAvailableListener(null, null);
+            stopBackgroundThread();
+
+            imageReader.close();
+            imageReader = null;
+            framePipeline.releaseFrames();
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public void reopenCamera(boolean cold) {
+        if(cold) {
+            imageReader = createImageReader(captureSize);
+        }
+
+        try {
+            cameraManager.openCamera(
+                cameraId,
+                createDeviceStateCallback(true),
+                cameraHandler
+            );
+        } catch (CameraAccessException | SecurityException e) {
+            CameraConfiguration.invalidate();
+            lifecycle.onReopenFailed();
+
+            if(stateListener != null) {
+                stateListener.onCameraError(CameraStateError.CAMERA_UNKNOWN_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Creates the session of a reopened camera with the kept preview surface and image reader.
+     */
+    private void createResumedSession(final int generation) {
+        try {
+            cameraDevice.createCaptureSession(
+                Arrays.asList(previewSurface, imageReader.getSurface()),
+                new CameraCaptureSession.StateCallback() {
+                    @Override
+                    public void onConfigured(final CameraCaptureSession session) {
+                        // Preview is controlled from the main thread
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onResumedSessionConfigured(session, generation);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onConfigureFailed(CameraCaptureSession session) {
+                        onResumeFailed(generation);
+                    }
+                },
+                cameraHandler
+            );
+        } catch (CameraAccessException | IllegalStateException e) {
+            onResumeFailed(generation);
+        }
+    }
+
+    private void onResumedSessionConfigured(CameraCaptureSession session, int generation) {
+        if(!isCurrentGeneration(generation)) {
+            session.close();
+            return;
+        }
+
+        cameraCaptureSession = session;
+
+        // Initialization may have been interrupted by the release
+        postStartupSuccess(createStartupResponse());
+
+        boolean previewRunning = false;
+        if(previewRequested) {
+            try {
+                startPreview();
+                previewRunning = true;
+            } catch (CameraAccessException | IllegalStateException e) {
+                if(stateListener != null) {
+                    stateListener.onCameraError(CameraStateError.CAMERA_UNKNOWN_ERROR);
+                }
+            }
+        }
+
+        lifecycle.onCameraReopened(previewRunning);
+    }
+
+    private void onResumeFailed(int generation) {
+        if(!isCurrentGeneration(generation)) return;
+
+        lifecycle.onReopenFailed();
+
+        if(stateListener != null) {
+            stateListener.onCameraError(CameraStateError.CAMERA_UNKNOWN_ERROR);
+        }
     }
 
     protected void stopPreview() throws CameraAccessException {
+        previewRequested = false;
+
+        // Camera is released, there is no preview to stop
+        if(cameraCaptureSession == null) return;
+
         cameraCaptureSession.stopRepeating();
         captureRequest = null;
 
@@ -290,96 +720,331 @@ public class Camera {
     }
 
     protected void startPreview() throws CameraAccessException {
+        previewRequested = true;
+
+        // Camera is released, the preview starts when it's reopened
+        if(cameraCaptureSession == null) return;
+
         if(captureRequest == null) {
             startBackgroundThread();
 
-            CaptureRequest.Builder captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            captureRequest = createCaptureRequest();
+            imageReader.setOnImageAvailableListener(imageAvailableListener, backgroundHandler);
+        }
+
+        cameraCaptureSession.setRepeatingRequest(
+            captureRequest,
+            previewCaptureCallback,
+            backgroundHandler
+        );
+    }
+
+    private CaptureRequest createCaptureRequest() throws CameraAccessException {
+        return createCaptureRequestBuilder().build();
+    }
+
+    private CaptureRequest.Builder createCaptureRequestBuilder() throws CameraAccessException {
+        CaptureRequest.Builder captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
 
+        CaptureSettings settings = captureSettings;
+        if(settings != null) {
+            setCaptureSettings(captureRequestBuilder, settings);
+        }
+        else {
             captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        }
 
-            captureRequestBuilder.addTarget(previewSurface);
-            captureRequestBuilder.addTarget(imageReader.getSurface());
+        captureRequestBuilder.addTarget(previewSurface);
+        captureRequestBuilder.addTarget(imageReader.getSurface());
 
-            captureRequest = captureRequestBuilder.build();
+        return captureRequestBuilder;
+    }
 
-            imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
-                byte[] planeBufferArray;
+    private static void setCaptureSettings(CaptureRequest.Builder builder, CaptureSettings settings) {
+        switch (settings.getFocusMode()) {
+            case CONTINUOUS:
+                builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+                break;
+            case AUTO:
+                builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_AUTO);
+                break;
+            case MACRO:
+                builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_MACRO);
+                break;
+            default:
+                // Fixed-focus cameras keep the template's mode
+        }
 
-                @Override
-                public void onImageAvailable(ImageReader reader) {
-                    Image image = reader.acquireLatestImage();
+        if(settings.getFocusRegion() != null) {
+            builder.set(CaptureRequest.CONTROL_AF_REGIONS, toMeteringRectangles(settings.getFocusRegion()));
+        }
+
+        if(settings.getMeteringRegion() != null) {
+            builder.set(CaptureRequest.CONTROL_AE_REGIONS, toMeteringRectangles(settings.getMeteringRegion()));
+        }
 
-                    if (image == null) return;
+        if(settings.hasFrameRateRange()) {
+            builder.set(
+                    CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                    new Range<>(settings.getMinFrameRate(), settings.getMaxFrameRate())
+            );
+        }
+    }
 
-                    if (!scanningEnabled || System.currentTimeMillis() - lastTimeScanned < BETWEEN_SCANS_DELAY) {
-                        image.close();
+    private static MeteringRectangle[] toMeteringRectangles(Region region) {
+        return new MeteringRectangle[] {
+                new MeteringRectangle(
+                        region.getLeft(), region.getTop(), region.getWidth(), region.getHeight(),
+                        MeteringRectangle.METERING_WEIGHT_MAX
+                )
+        };
+    }
+
+    @Override
+    public void applyCaptureSettings(final CaptureSettings settings, final boolean triggerFocus) {
+        final Handler handler = backgroundHandler;
+        if(handler == null) return;
+
+        // Requests are changed on the background thread, which also receives the frames
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                captureSettings = settings;
+
+                try {
+                    updateCaptureRequest(triggerFocus);
+                } catch (CameraAccessException | IllegalStateException e) {
+                    // The session has been closed meanwhile, the next one uses the new settings
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces the repeating request by one with the current capture settings.
+     * @param triggerFocus - Also send a single request starting a focus scan
+     */
+    private void updateCaptureRequest(boolean triggerFocus) throws CameraAccessException {
+        CameraCaptureSession session = cameraCaptureSession;
+        if(cameraDevice == null || session == null || captureRequest == null) return;
+
+        captureRequest = createCaptureRequest();
+        session.setRepeatingRequest(captureRequest, previewCaptureCallback, backgroundHandler);
+
+        if(triggerFocus) {
+            sendFocusTrigger(session, CaptureRequest.CONTROL_AF_TRIGGER_START);
+            focusTriggered = true;
+        }
+        // Back to the continuous search, the triggered scan's lock is cancelled
+        else if(focusTriggered && captureSettings.getFocusMode() == CaptureSettings.FocusMode.CONTINUOUS) {
+            sendFocusTrigger(session, CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
+            focusTriggered = false;
+        }
+    }
+
+    private void sendFocusTrigger(CameraCaptureSession session, int trigger) throws CameraAccessException {
+        CaptureRequest.Builder triggerBuilder = createCaptureRequestBuilder();
+        triggerBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, trigger);
+        session.capture(triggerBuilder.build(), null, backgroundHandler);
+    }
+
+    @Override
+    public void switchCaptureSize(final int width, final int height) {
+        final Handler handler = backgroundHandler;
+        if(handler == null) {
+            onCaptureSizeSwitchSkipped();
+            return;
+        }
+
+        // Sessions are reconfigured on the background thread, which also receives the frames
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reconfigureCaptureSession(new Size(width, height));
+                } catch (CameraAccessException | IllegalStateException e) {
+                    onCaptureSizeSwitchFailed();
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces the image reader by one of a different size. The new session keeps the preview surface, so the preview
+     * just holds its last frame while the session is being configured.
+     */
+    private void reconfigureCaptureSession(final Size newCaptureSize) throws CameraAccessException {
+        if(cameraDevice == null || captureRequest == null || newCaptureSize.equals(captureSize)) {
+            onCaptureSizeSwitchSkipped();
+            return;
+        }
+
+        final int generation;
+        synchronized (this) {
+            generation = cameraGeneration;
+        }
+
+        final ImageReader previousImageReader = imageReader;
+        final ImageReader newImageReader = createImageReader(newCaptureSize);
+        newImageReader.setOnImageAvailableListener(imageAvailableListener, backgroundHandler);
+
+        cameraDevice.createCaptureSession(
+            Arrays.asList(previewSurface, newImageReader.getSurface()),
+            new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(CameraCaptureSession session) {
+                    // The camera has been released or disposed meanwhile, its outputs are kept by the release
+                    if(!isCurrentGeneration(generation)) {
+                        session.close();
+                        newImageReader.close();
+                        onCaptureSizeSwitchSkipped();
                         return;
                     }
 
+                    cameraCaptureSession = session;
+                    imageReader = newImageReader;
+                    captureSize = newCaptureSize;
+                    framePipeline.setCrop(getCaptureCrop(newCaptureSize));
+
+                    previousImageReader.setOnImageAvailableListener(null, null);
+                    previousImageReader.close();
+
                     try {
-                        ByteBuffer firstPlaneBuffer = image.getPlanes()[0].getBuffer();
-                        if (planeBufferArray == null || planeBufferArray.length != firstPlaneBuffer.capacity()) {
-                            planeBufferArray = new byte[firstPlaneBuffer.capacity()];
+                        captureRequest = createCaptureRequest();
+                        session.setRepeatingRequest(captureRequest, previewCaptureCallback, backgroundHandler);
+                    } catch (CameraAccessException | IllegalStateException e) {
+                        if(stateListener != null) {
+                            stateListener.onCameraError(CameraStateError.CAMERA_UNKNOWN_ERROR);
                         }
+                    }
+                }
 
-                        firstPlaneBuffer.get(planeBufferArray);
-
-                        LuminanceSource source = new PlanarYUVLuminanceSource(
-                                planeBufferArray,
-                                image.getWidth(),
-                                image.getHeight(),
-                                0,
-                                0,
-                                image.getWidth(),
-                                image.getHeight(),
-                                false
-                        );
+                @Override
+                public void onConfigureFailed(CameraCaptureSession session) {
+                    newImageReader.close();
 
-                        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-                        Result rawResult = qrReader.decodeWithState(bitmap);
+                    // There is no session to restore on a released camera
+                    if(!isCurrentGeneration(generation)) {
+                        onCaptureSizeSwitchSkipped();
+                        return;
+                    }
 
-                        if(Camera.this.stateListener != null) {
-                            Camera.this.stateListener.onCodeScanned(rawResult.toString());
-                        }
+                    onCaptureSizeSwitchFailed();
 
-                        lastTimeScanned = System.currentTimeMillis();
-                    } catch (NotFoundException e) {
-                        // Ignore this :))
-                    } catch (NullPointerException e) {
-                        e.printStackTrace();
-                    } finally {
-                        qrReader.reset();
-                        image.close();
+                    // The previous session has been closed by the attempt, restore it with the previous reader
+                    try {
+                        cameraDevice.createCaptureSession(
+                            Arrays.asList(previewSurface, previousImageReader.getSurface()),
+                            new CameraCaptureSession.StateCallback() {
+                                @Override
+                                public void onConfigured(CameraCaptureSession session) {
+                                    if(!isCurrentGeneration(generation)) {
+                                        session.close();
+                                        return;
+                                    }
+
+                                    cameraCaptureSession = session;
+
+                                    try {
+                                        session.setRepeatingRequest(
+                                                captureRequest, previewCaptureCallback, backgroundHandler
+                                        );
+                                    } catch (CameraAccessException | IllegalStateException e) {
+                                        onConfigureFailed(session);
+                                    }
+                                }
+
+                                @Override
+                                public void onConfigureFailed(CameraCaptureSession session) {
+                                    if(isCurrentGeneration(generation) && stateListener != null) {
+                                        stateListener.onCameraError(CameraStateError.CAMERA_UNKNOWN_ERROR);
+                                    }
+                                }
+                            },
+                            backgroundHandler
+                        );
+                    } catch (CameraAccessException e) {
+                        if(stateListener != null) {
+                            stateListener.onCameraError(CameraStateError.CAMERA_UNKNOWN_ERROR);
+                        }
                     }
                 }
             },
-            backgroundHandler);
-        }
-
-        cameraCaptureSession.setRepeatingRequest(
-            captureRequest,
-            null,
             backgroundHandler
         );
     }
 
+    private void onCaptureSizeSwitchFailed() {
+        ResolutionController resolutionController = framePipeline.getResolutionController();
+        if(resolutionController != null) {
+            resolutionController.onSwitchFailed(System.nanoTime());
+        }
+    }
+
+    /**
+     * The preview is stopped, the camera released or the size is already used, frames keep the current capture size.
+     */
+    private void onCaptureSizeSwitchSkipped() {
+        ResolutionController resolutionController = framePipeline.getResolutionController();
+        Size size = captureSize;
+        if(resolutionController != null) {
+            resolutionController.onSwitchSkipped(System.nanoTime(), size.getWidth(), size.getHeight());
+        }
+    }
+
     protected void enableScanning() {
-        scanningEnabled = true;
+        framePipeline.setScanningEnabled(true);
     }
 
     protected void disableScanning() {
-        scanningEnabled = false;
+        framePipeline.setScanningEnabled(false);
     }
 
-    protected void dispose() {
+    /**
+     * Closes the camera and frees everything the session holds, as a cold release does, and finishes the recording.
+     * @throws IOException if the recording couldn't be finished, the session is disposed anyway
+     */
+    protected void dispose() throws IOException {
+        CameraDevice device;
+        synchronized (this) {
+            // A camera opened after this point is closed right away
+            disposed = true;
+            device = cameraDevice;
+            cameraDevice = null;
+        }
+
         if (cameraCaptureSession != null) {
             cameraCaptureSession.close();
             cameraCaptureSession = null;
         }
 
-        if (this.cameraDevice != null) {
-            cameraDevice.close();
-            cameraDevice = null;
+        if (device != null) {
+            device.close();
+        }
+
+        // A cold released camera has no image reader and no background thread left
+        if(imageReader != null) {
+            imageReader.setOnImageAvailableListener(null, null);
+        }
+
+        // The pipeline has drained and no more frames arrive, so the image reader can be closed
+        stopBackgroundThread();
+
+        if(imageReader != null) {
+            imageReader.close();
+            imageReader = null;
+        }
+        framePipeline.releaseFrames();
+
+        // Other sessions keep running, so the texture of this one is given back to Flutter
+        if (textureEntry != null) {
+            textureEntry.release();
+        }
+
+        cameraThread.quitSafely();
+
+        if(frameRecorder != null) {
+            frameRecorder.close();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,269 @@
+package cz.bcx.qrscanner;
+
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Range;
+import android.util.Size;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Camera and sizes a scanner session uses. Querying the camera service for camera IDs and characteristics takes tens
+ * of milliseconds, so configurations are computed once per process and reused by every following initialization.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class CameraConfiguration {
+    // Capture sizes with aspect ratio of the default size which the scanner may switch between, smallest first
+    private static final Size DEFAULT_CAPTURE_SIZE = new Size(800, 600);
+    private static final Size MIN_CAPTURE_SIZE = new Size(320, 240);
+    private static final Size MAX_CAPTURE_SIZE = new Size(1920, 1440);
+
+    private static final FramePipeline.Clock ELAPSED_REALTIME_CLOCK = new FramePipeline.Clock() {
+        @Override
+        public long nanoTime() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+    };
+
+    private static String[] cameraIds;
+    private static final Map<String, CameraCharacteristics> characteristicsCache = new HashMap<>();
+    // Keyed by camera ID and preview quality
+    private static final Map<String, CameraConfiguration> configurations = new HashMap<>();
+
+    private final String cameraId;
+    private final Size previewSize;
+    private final Size[] captureSizes;
+    private final int captureSizeIndex;
+    private final Rect sensorSize;
+    private final FramePipeline.Clock sensorClock;
+    private final CaptureCapabilities captureCapabilities;
+
+    private CameraConfiguration(String cameraId, Size previewSize, Size[] captureSizes, int captureSizeIndex,
+                                Rect sensorSize, FramePipeline.Clock sensorClock,
+                                CaptureCapabilities captureCapabilities) {
+        this.cameraId = cameraId;
+        this.previewSize = previewSize;
+        this.captureSizes = captureSizes;
+        this.captureSizeIndex = captureSizeIndex;
+        this.sensorSize = sensorSize;
+        this.sensorClock = sensorClock;
+        this.captureCapabilities = captureCapabilities;
+    }
+
+    /**
+     * @param cameraId - ID of the camera, null to use the first camera facing given direction
+     * @return Configuration of the camera for given preview quality, cached after the first call.
+     */
+    public static synchronized CameraConfiguration get(CameraManager cameraManager, LensFacing lensFacing,
+                                                       String cameraId, PreviewQuality previewQuality) throws CameraAccessException {
+        if(cameraId == null) {
+            cameraId = findCamera(cameraManager, lensFacing);
+        }
+
+        String key = cameraId + "/" + previewQuality;
+        CameraConfiguration configuration = configurations.get(key);
+
+        if(configuration == null) {
+            configuration = create(cameraId, getCameraCharacteristics(cameraManager, cameraId), previewQuality);
+            configurations.put(key, configuration);
+        }
+
+        return configuration;
+    }
+
+    /**
+     * Forgets all cached configurations, the next initialization queries the camera service again. Called when the
+     * cached camera can't be opened, it may have been an external camera which is gone.
+     */
+    public static synchronized void invalidate() {
+        cameraIds = null;
+        characteristicsCache.clear();
+        configurations.clear();
+    }
+
+    private static String findCamera(CameraManager cameraManager, LensFacing lensFacing) throws CameraAccessException {
+        if(cameraIds == null) {
+            cameraIds = cameraManager.getCameraIdList();
+        }
+
+        int facing = getLensFacingConstant(lensFacing);
+
+        for (String camera : cameraIds) {
+            @SuppressWarnings("ConstantConditions")
+            int lensDirection = getCameraCharacteristics(cameraManager, camera).get(CameraCharacteristics.LENS_FACING);
+
+            if (lensDirection == facing) {
+                return camera;
+            }
+        }
+
+        throw new CameraAccessException(CameraAccessException.CAMERA_ERROR, "Couldn't find any useable camera facing " + lensFacing + ".");
+    }
+
+    private static CameraCharacteristics getCameraCharacteristics(CameraManager cameraManager, String cameraId) throws CameraAccessException {
+        CameraCharacteristics characteristics = characteristicsCache.get(cameraId);
+
+        if(characteristics == null) {
+            characteristics = cameraManager.getCameraCharacteristics(cameraId);
+            characteristicsCache.put(cameraId, characteristics);
+        }
+
+        return characteristics;
+    }
+
+    private static int getLensFacingConstant(LensFacing lensFacing) {
+        switch (lensFacing) {
+            case FRONT:
+                return CameraCharacteristics.LENS_FACING_FRONT;
+            case EXTERNAL:
+                // Inlined constant, older devices just have no such camera
+                return CameraCharacteristics.LENS_FACING_EXTERNAL;
+            default:
+                return CameraCharacteristics.LENS_FACING_BACK;
+        }
+    }
+
+    private static CameraConfiguration create(String cameraId, CameraCharacteristics cameraCharacteristics,
+                                              PreviewQuality previewQuality) {
+        StreamConfigurationMap streamConfigurationMap =
+                cameraCharacteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+
+        Size[] availableTextureSizes = streamConfigurationMap.getOutputSizes(SurfaceTexture.class);
+        Size previewSize = ScannerUtils.getOptimalSize(previewQuality.getSize(), availableTextureSizes);
+
+        Size[] availableCaptureSizes = streamConfigurationMap.getOutputSizes(ImageFormat.YUV_420_888);
+        Size captureSize = ScannerUtils.getOptimalSize(DEFAULT_CAPTURE_SIZE, availableCaptureSizes);
+
+        // Sizes the scanner can switch to at runtime, the field of view must not change
+        List<Size> captureSizes = new ArrayList<>();
+        for(Size size : availableCaptureSizes) {
+            boolean sameAspectRatio = size.getWidth() * (long) captureSize.getHeight() ==
+                    size.getHeight() * (long) captureSize.getWidth();
+            boolean inRange = size.getWidth() >= MIN_CAPTURE_SIZE.getWidth() &&
+                    size.getWidth() <= MAX_CAPTURE_SIZE.getWidth();
+
+            if(size.equals(captureSize) || (sameAspectRatio && inRange)) {
+                captureSizes.add(size);
+            }
+        }
+
+        Collections.sort(captureSizes, new Comparator<Size>() {
+            @Override
+            public int compare(Size first, Size second) {
+                return Long.compare(
+                        first.getWidth() * (long) first.getHeight(),
+                        second.getWidth() * (long) second.getHeight()
+                );
+            }
+        });
+
+        Rect sensorSize = cameraCharacteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+
+        // Frame timestamps are either in the elapsed realtime base or in an unknown base, which is the uptime
+        // base of System.nanoTime() on most devices
+        FramePipeline.Clock sensorClock = FramePipeline.SYSTEM_CLOCK;
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Integer timestampSource = cameraCharacteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            if(timestampSource != null && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME) {
+                sensorClock = ELAPSED_REALTIME_CLOCK;
+            }
+        }
+
+        return new CameraConfiguration(
+                cameraId,
+                previewSize,
+                captureSizes.toArray(new Size[captureSizes.size()]),
+                captureSizes.indexOf(captureSize),
+                sensorSize,
+                sensorClock,
+                createCaptureCapabilities(cameraCharacteristics, sensorSize)
+        );
+    }
+
+    private static CaptureCapabilities createCaptureCapabilities(CameraCharacteristics cameraCharacteristics, Rect sensorSize) {
+        boolean autoFocus = false;
+        boolean continuousFocus = false;
+        boolean macroFocus = false;
+
+        // Fixed-focus cameras report the minimum focus distance as 0
+        Float minFocusDistance = cameraCharacteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+        int[] focusModes = cameraCharacteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        if(minFocusDistance != null && minFocusDistance > 0 && focusModes != null) {
+            for(int mode : focusModes) {
+                if(mode == CameraCharacteristics.CONTROL_AF_MODE_AUTO) autoFocus = true;
+                if(mode == CameraCharacteristics.CONTROL_AF_MODE_CONTINUOUS_PICTURE) continuousFocus = true;
+                if(mode == CameraCharacteristics.CONTROL_AF_MODE_MACRO) macroFocus = true;
+            }
+        }
+
+        Integer focusRegions = cameraCharacteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
+        Integer meteringRegions = cameraCharacteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE);
+
+        Range<Integer>[] ranges = cameraCharacteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        int[][] frameRateRanges = new int[ranges != null ? ranges.length : 0][];
+        for(int i = 0; i < frameRateRanges.length; i++) {
+            frameRateRanges[i] = new int[] {ranges[i].getLower(), ranges[i].getUpper()};
+        }
+
+        return new CaptureCapabilities(
+                sensorSize.width(),
+                sensorSize.height(),
+                autoFocus,
+                continuousFocus,
+                macroFocus,
+                focusRegions != null && focusRegions > 0,
+                meteringRegions != null && meteringRegions > 0,
+                frameRateRanges
+        );
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public Size getPreviewSize() {
+        return previewSize;
+    }
+
+    /**
+     * @return Capture sizes the scanner may switch between, smallest first.
+     */
+    public Size[] getCaptureSizes() {
+        return captureSizes;
+    }
+
+    /**
+     * @return Index of the initial capture size.
+     */
+    public int getCaptureSizeIndex() {
+        return captureSizeIndex;
+    }
+
+    public Rect getSensorSize() {
+        return sensorSize;
+    }
+
+    /**
+     * @return Clock of frame timestamps.
+     */
+    public FramePipeline.Clock getSensorClock() {
+        return sensorClock;
+    }
+
+    public CaptureCapabilities getCaptureCapabilities() {
+        return captureCapabilities;
+    }
+}
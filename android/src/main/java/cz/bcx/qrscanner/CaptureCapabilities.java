@@ -0,0 +1,71 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Capture controls a camera supports, as far as the scanning profile of {@link CaptureController} uses them.
+ */
+public final class CaptureCapabilities {
+    private final int sensorWidth;
+    private final int sensorHeight;
+    private final boolean autoFocus;
+    private final boolean continuousFocus;
+    private final boolean macroFocus;
+    private final boolean focusRegions;
+    private final boolean meteringRegions;
+    private final int[][] frameRateRanges;
+
+    /**
+     * @param sensorWidth - Width of the sensor's active array, which regions are relative to
+     * @param autoFocus - Focus can be triggered, false for fixed-focus cameras
+     * @param frameRateRanges - Supported auto exposure target frame rate ranges as [min, max] pairs
+     */
+    public CaptureCapabilities(int sensorWidth, int sensorHeight, boolean autoFocus, boolean continuousFocus,
+                               boolean macroFocus, boolean focusRegions, boolean meteringRegions,
+                               int[][] frameRateRanges) {
+        this.sensorWidth = sensorWidth;
+        this.sensorHeight = sensorHeight;
+        this.autoFocus = autoFocus;
+        this.continuousFocus = continuousFocus;
+        this.macroFocus = macroFocus;
+        this.focusRegions = focusRegions;
+        this.meteringRegions = meteringRegions;
+        this.frameRateRanges = frameRateRanges;
+    }
+
+    public int getSensorWidth() {
+        return sensorWidth;
+    }
+
+    public int getSensorHeight() {
+        return sensorHeight;
+    }
+
+    public boolean hasAutoFocus() {
+        return autoFocus;
+    }
+
+    public boolean hasContinuousFocus() {
+        return continuousFocus;
+    }
+
+    public boolean hasMacroFocus() {
+        return macroFocus;
+    }
+
+    /**
+     * @return True if the camera supports at least one autofocus region.
+     */
+    public boolean hasFocusRegions() {
+        return focusRegions;
+    }
+
+    /**
+     * @return True if the camera supports at least one auto exposure region.
+     */
+    public boolean hasMeteringRegions() {
+        return meteringRegions;
+    }
+
+    public int[][] getFrameRateRanges() {
+        return frameRateRanges;
+    }
+}
@@ -0,0 +1,197 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Scanning profile of the camera's capture controls with a feedback loop driven by decode outcomes.
+ *
+ * While searching for a code, focus is continuous and both focus and metering are restricted to the scan window.
+ * Auto exposure is kept at frame rates which cap the exposure time, trading noise for less motion blur. When frames
+ * keep showing finder patterns (or a located code) but don't decode, which usually means the code is out of focus,
+ * a single focus scan is triggered on the code's region and exposure is metered there. Close codes are focused with
+ * the macro mode. The locked focus is kept while the code is seen and released back to the continuous search once it
+ * has been gone for a while.
+ *
+ * The controller only decides, the {@link Target} applies settings to the camera, so the policy runs without one.
+ */
+public class CaptureController {
+    public interface Target {
+        /**
+         * Called from a decode worker thread, settings should be applied to the repeating request asynchronously.
+         * @param triggerFocus - Also start a single focus scan of the settings' focus region
+         */
+        void applyCaptureSettings(CaptureSettings settings, boolean triggerFocus);
+    }
+
+    // Consecutive frames with a located but undecodable code before focus is triggered
+    private static final int FAILURES_BEFORE_REFOCUS = 2;
+    private static final long REFOCUS_INTERVAL = 1_500_000_000L; // ns
+    // Locked focus is released when no code has been seen for this time
+    private static final long FOCUS_HOLD_TIME = 3_000_000_000L; // ns
+    // Codes larger than this part of the sensor's shorter side are close, they're focused in the macro mode
+    private static final float CLOSE_CODE_SIZE = 0.4f;
+
+    private final CaptureCapabilities capabilities;
+    private final Region scanRegion;
+    private final boolean closeFocus;
+    private final CaptureSettings searchSettings;
+    private final Target target;
+
+    private CaptureSettings settings;
+    private boolean focusLocked = false;
+    private int failures = 0;
+    private long lastTrigger = Long.MIN_VALUE;
+    private long lastSeen = Long.MIN_VALUE;
+
+    /**
+     * @param scanRegion - Scan window in sensor coordinates, null for the whole frame
+     * @param maxExposureTime - Longest exposure time in nanoseconds auto exposure should use, 0 for no limit
+     * @param closeFocus - Focus all codes in the macro mode, not only the close ones
+     */
+    public CaptureController(CaptureCapabilities capabilities, Region scanRegion, long maxExposureTime,
+                             boolean closeFocus, Target target) {
+        this.capabilities = capabilities;
+        this.scanRegion = scanRegion;
+        this.closeFocus = closeFocus;
+        this.target = target;
+
+        CaptureSettings.FocusMode focusMode;
+        if(capabilities.hasContinuousFocus()) focusMode = CaptureSettings.FocusMode.CONTINUOUS;
+        else if(capabilities.hasAutoFocus()) focusMode = CaptureSettings.FocusMode.AUTO;
+        else focusMode = CaptureSettings.FocusMode.FIXED;
+
+        int[] frameRateRange = selectFrameRateRange(capabilities.getFrameRateRanges(), maxExposureTime);
+
+        this.searchSettings = new CaptureSettings(
+                focusMode,
+                capabilities.hasFocusRegions() && focusMode != CaptureSettings.FocusMode.FIXED ? scanRegion : null,
+                capabilities.hasMeteringRegions() ? scanRegion : null,
+                frameRateRange != null ? frameRateRange[0] : 0,
+                frameRateRange != null ? frameRateRange[1] : 0
+        );
+        this.settings = searchSettings;
+    }
+
+    /**
+     * @param ranges - Supported ranges as [min, max] pairs, may be null
+     * @return Range with the lowest minimal frame rate which keeps exposures within the limit, or the range closest to
+     * it if there is none. Null if any range will do.
+     */
+    static int[] selectFrameRateRange(int[][] ranges, long maxExposureTime) {
+        if(maxExposureTime <= 0 || ranges == null || ranges.length == 0) return null;
+
+        // Frame durations are nominal, a 33 ms cap means 30 fps rather than 31 which no camera offers
+        int minFrameRate = (int) Math.round(1e9 / maxExposureTime);
+
+        int[] best = null;
+        for(int[] range : ranges) {
+            if(best == null) {
+                best = range;
+                continue;
+            }
+
+            boolean fits = range[0] >= minFrameRate;
+            boolean bestFits = best[0] >= minFrameRate;
+
+            if(fits != bestFits) {
+                if(fits) best = range;
+            }
+            // Fitting ranges allow the longest exposure, the others come closest to the limit
+            else if(fits ? range[0] < best[0] : range[0] > best[0]) {
+                best = range;
+            }
+            else if(range[0] == best[0] && range[1] > best[1]) {
+                best = range;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @return Settings the camera should use now.
+     */
+    public synchronized CaptureSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Returns to the search settings, e.g. when the camera has been reopened and lost its focus state.
+     * @return Settings the camera should use now.
+     */
+    public synchronized CaptureSettings reset() {
+        settings = searchSettings;
+        focusLocked = false;
+        failures = 0;
+        lastTrigger = Long.MIN_VALUE;
+        lastSeen = Long.MIN_VALUE;
+        return settings;
+    }
+
+    /**
+     * Called from a decode worker thread after every decode attempt.
+     * @param now - Current time in nanoseconds of a monotonic clock
+     * @param candidateRegion - Area of finder pattern candidates in frame coordinates, null if unknown
+     * @return True if a focus scan has been triggered.
+     */
+    public boolean onDecodeFinished(long now, int frameWidth, int frameHeight, DecodeStatus status,
+                                    Region candidateRegion) {
+        CaptureSettings newSettings;
+        boolean triggerFocus;
+
+        synchronized (this) {
+            if(!capabilities.hasAutoFocus()) return false;
+
+            boolean located = candidateRegion != null || status == DecodeStatus.PARTIAL;
+
+            if(status == DecodeStatus.FOUND || !located) {
+                failures = 0;
+                if(status == DecodeStatus.FOUND) lastSeen = now;
+
+                // The code is gone, search with continuous focus again
+                if(!focusLocked || status == DecodeStatus.FOUND || now - lastSeen < FOCUS_HOLD_TIME) return false;
+
+                focusLocked = false;
+                newSettings = searchSettings;
+                triggerFocus = false;
+            }
+            else {
+                lastSeen = now;
+
+                if(++failures < FAILURES_BEFORE_REFOCUS) return false;
+                if(lastTrigger != Long.MIN_VALUE && now - lastTrigger < REFOCUS_INTERVAL) return false;
+
+                Region region = candidateRegion != null ?
+                        ScanWindow.captureToSensorRegion(
+                                candidateRegion, frameWidth, frameHeight,
+                                capabilities.getSensorWidth(), capabilities.getSensorHeight()
+                        ) :
+                        scanRegion;
+
+                failures = 0;
+                lastTrigger = now;
+                focusLocked = true;
+                newSettings = searchSettings.withFocus(
+                        getTriggeredFocusMode(region),
+                        capabilities.hasFocusRegions() ? region : null,
+                        capabilities.hasMeteringRegions() ? region : searchSettings.getMeteringRegion()
+                );
+                triggerFocus = true;
+            }
+
+            settings = newSettings;
+        }
+
+        target.applyCaptureSettings(newSettings, triggerFocus);
+        return triggerFocus;
+    }
+
+    private CaptureSettings.FocusMode getTriggeredFocusMode(Region region) {
+        if(!capabilities.hasMacroFocus()) return CaptureSettings.FocusMode.AUTO;
+        if(closeFocus) return CaptureSettings.FocusMode.MACRO;
+        if(region == null) return CaptureSettings.FocusMode.AUTO;
+
+        float codeSize = Math.max(region.getWidth(), region.getHeight()) /
+                (float) Math.min(capabilities.getSensorWidth(), capabilities.getSensorHeight());
+
+        return codeSize >= CLOSE_CODE_SIZE ? CaptureSettings.FocusMode.MACRO : CaptureSettings.FocusMode.AUTO;
+    }
+}
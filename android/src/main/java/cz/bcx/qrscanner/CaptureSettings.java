@@ -0,0 +1,74 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Focus, metering and frame rate settings of the camera's repeating request. Regions are in coordinates of the
+ * sensor's active array, null leaves them to the camera.
+ */
+public final class CaptureSettings {
+    public enum FocusMode {
+        /** Lens focus isn't controlled, e.g. a fixed-focus camera. */
+        FIXED,
+        /** Focus follows the scene on its own. */
+        CONTINUOUS,
+        /** Focus moves only when triggered and stays locked after the scan. */
+        AUTO,
+        /** Triggered focus scanning close distances first. */
+        MACRO
+    }
+
+    private final FocusMode focusMode;
+    private final Region focusRegion;
+    private final Region meteringRegion;
+    private final int minFrameRate;
+    private final int maxFrameRate;
+
+    /**
+     * @param minFrameRate - Lower bound of the auto exposure target frame rate range, it limits the exposure time
+     *                     to 1 / minFrameRate; 0 leaves the range to the camera
+     */
+    public CaptureSettings(FocusMode focusMode, Region focusRegion, Region meteringRegion,
+                           int minFrameRate, int maxFrameRate) {
+        this.focusMode = focusMode;
+        this.focusRegion = focusRegion;
+        this.meteringRegion = meteringRegion;
+        this.minFrameRate = minFrameRate;
+        this.maxFrameRate = maxFrameRate;
+    }
+
+    /**
+     * @return The same settings with focus and metering on another region.
+     */
+    public CaptureSettings withFocus(FocusMode focusMode, Region focusRegion, Region meteringRegion) {
+        return new CaptureSettings(focusMode, focusRegion, meteringRegion, minFrameRate, maxFrameRate);
+    }
+
+    public FocusMode getFocusMode() {
+        return focusMode;
+    }
+
+    public Region getFocusRegion() {
+        return focusRegion;
+    }
+
+    public Region getMeteringRegion() {
+        return meteringRegion;
+    }
+
+    public int getMinFrameRate() {
+        return minFrameRate;
+    }
+
+    public int getMaxFrameRate() {
+        return maxFrameRate;
+    }
+
+    public boolean hasFrameRateRange() {
+        return minFrameRate > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureSettings(" + focusMode + ", focus " + focusRegion + ", metering " + meteringRegion + ", " +
+                minFrameRate + "-" + maxFrameRate + " fps)";
+    }
+}
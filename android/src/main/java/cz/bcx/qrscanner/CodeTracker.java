@@ -0,0 +1,158 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.List;
+
+/**
+ * Keeps location of the last decoded codes and predicts where they are in the next frames, so only a padded region
+ * around them needs to be decoded. The prediction moves with the codes' last known velocity and grows with every
+ * frame in which the codes haven't been found. After too many such frames the codes are considered lost and whole
+ * frames are decoded again. Whole frames are decoded periodically while tracking too, so codes entering the view
+ * elsewhere are found.
+ *
+ * Frames are decoded by several workers and may finish out of order, so misses are counted only for frames newer
+ * than the last frame in which the codes have been found.
+ */
+public class CodeTracker {
+    // Finder patterns lie inside the code and the code needs a quiet zone, padding is relative to the codes' size
+    private static final float PADDING = 0.5f;
+    private static final float MISS_PADDING = 0.25f;
+
+    // Velocity isn't extrapolated over longer gaps, the codes have likely stopped or changed direction
+    private static final long MAX_VELOCITY_INTERVAL = 500_000_000; // ns
+    private static final int MIN_REGION_SIZE = 64; // px
+
+    private final int maxMisses;
+    private final long rescanInterval;
+
+    private boolean tracking = false;
+    private long fullFrameTimestamp;
+    private long foundSequence = -1;
+    private long foundTimestamp;
+    private int misses = 0;
+
+    // Bounding box of the codes' result points
+    private float left, top, right, bottom;
+
+    // Velocity of the bounding box's center in px per ns
+    private float velocityX, velocityY;
+
+    /**
+     * @param maxMisses - Number of frames without the codes after which they are considered lost, 0 disables tracking
+     * @param rescanInterval - Longest time in nanoseconds between two whole frames decoded while tracking
+     */
+    public CodeTracker(int maxMisses, long rescanInterval) {
+        this.maxMisses = maxMisses;
+        this.rescanInterval = rescanInterval;
+    }
+
+    public boolean isEnabled() {
+        return maxMisses > 0;
+    }
+
+    /**
+     * @param timestamp - Timestamp of the frame to predict the region in
+     * @return Region of the frame which should contain the tracked codes, null if no codes are tracked or the whole
+     * frame should be decoded.
+     */
+    public synchronized Region predict(long timestamp, int frameWidth, int frameHeight) {
+        if(!tracking || timestamp - fullFrameTimestamp >= rescanInterval) return null;
+
+        long interval = timestamp - foundTimestamp;
+        float shiftX = 0, shiftY = 0;
+        if(interval > 0 && interval <= MAX_VELOCITY_INTERVAL) {
+            shiftX = velocityX * interval;
+            shiftY = velocityY * interval;
+        }
+
+        float size = Math.max(right - left, bottom - top);
+        float padding = Math.max(MIN_REGION_SIZE / 2f, size * (PADDING + MISS_PADDING * misses));
+
+        int regionLeft = Math.max(0, (int) (left + shiftX - padding));
+        int regionTop = Math.max(0, (int) (top + shiftY - padding));
+        int regionRight = Math.min(frameWidth, (int) Math.ceil(right + shiftX + padding));
+        int regionBottom = Math.min(frameHeight, (int) Math.ceil(bottom + shiftY + padding));
+
+        if(regionRight - regionLeft < MIN_REGION_SIZE || regionBottom - regionTop < MIN_REGION_SIZE) return null;
+
+        return new Region(regionLeft, regionTop, regionRight - regionLeft, regionBottom - regionTop);
+    }
+
+    /**
+     * @param results - Codes found in the frame, result points in frame coordinates
+     */
+    public synchronized void onFound(long sequence, long timestamp, List<Result> results) {
+        if(sequence <= foundSequence) return;
+
+        float newLeft = Float.MAX_VALUE, newTop = Float.MAX_VALUE;
+        float newRight = -Float.MAX_VALUE, newBottom = -Float.MAX_VALUE;
+
+        for(Result result : results) {
+            ResultPoint[] points = result.getResultPoints();
+            if(points == null) continue;
+
+            for(ResultPoint point : points) {
+                if(point == null) continue;
+
+                newLeft = Math.min(newLeft, point.getX());
+                newTop = Math.min(newTop, point.getY());
+                newRight = Math.max(newRight, point.getX());
+                newBottom = Math.max(newBottom, point.getY());
+            }
+        }
+
+        if(newLeft > newRight) return;
+
+        long interval = timestamp - foundTimestamp;
+        if(tracking && interval > 0 && interval <= MAX_VELOCITY_INTERVAL) {
+            velocityX = ((newLeft + newRight) - (left + right)) / 2 / interval;
+            velocityY = ((newTop + newBottom) - (top + bottom)) / 2 / interval;
+        }
+        else {
+            velocityX = 0;
+            velocityY = 0;
+        }
+
+        left = newLeft;
+        top = newTop;
+        right = newRight;
+        bottom = newBottom;
+
+        tracking = true;
+        foundSequence = sequence;
+        foundTimestamp = timestamp;
+        misses = 0;
+    }
+
+    /**
+     * Called for every whole frame handed to decoding, which restarts the rescan interval.
+     */
+    public synchronized void onFullFrame(long timestamp) {
+        fullFrameTimestamp = timestamp;
+    }
+
+    /**
+     * Called for frames in which no code has been located.
+     */
+    public synchronized void onMissed(long sequence) {
+        if(!tracking || sequence <= foundSequence) return;
+
+        if(++misses >= maxMisses) {
+            tracking = false;
+        }
+    }
+
+    /**
+     * Forgets the tracked codes, e.g. when frame size changes.
+     */
+    public synchronized void reset() {
+        tracking = false;
+        misses = 0;
+    }
+
+    public synchronized boolean isTracking() {
+        return tracking;
+    }
+}
@@ -0,0 +1,79 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * Buffers of a single decoder reused by every frame it binarizes: luminances of rotated views, the black matrix,
+ * luminance rows, histogram and block thresholds. Buffers grow to the capture resolution on the first frames and are
+ * then reset in place, so a frame without any code doesn't allocate any of them.
+ *
+ * Matrices are kept per size, so the frame pipeline aligns sizes of tracked crops, which would otherwise differ in
+ * almost every frame. A matrix handed out by {@link #obtainMatrix(int, int)} is valid until the next matrix of the
+ * same size is obtained, so the context must be used by a single thread only, like the decoder owning it.
+ */
+public class DecodeContext {
+    // Full resolution, pyramid levels and rotated views of them, older sizes are dropped once there are more
+    private static final int MAX_MATRIX_SIZES = 8;
+
+    private final BitMatrix[] matrices = new BitMatrix[MAX_MATRIX_SIZES];
+    private int nextMatrix = 0;
+
+    private byte[] luminanceMatrix = new byte[0];
+    private byte[] luminanceRow = new byte[0];
+    private int[] blackPoints = new int[0];
+    private final int[] buckets = new int[ReusableGlobalHistogramBinarizer.LUMINANCE_BUCKETS];
+
+    /**
+     * @return Cleared matrix of given size, allocated only when there is no matrix of that size yet.
+     */
+    public BitMatrix obtainMatrix(int width, int height) {
+        for(BitMatrix matrix : matrices) {
+            if(matrix != null && matrix.getWidth() == width && matrix.getHeight() == height) {
+                matrix.clear();
+                return matrix;
+            }
+        }
+
+        // Replaces the oldest size, e.g. one of the previous capture resolution
+        BitMatrix matrix = new BitMatrix(width, height);
+        matrices[nextMatrix] = matrix;
+        nextMatrix = (nextMatrix + 1) % MAX_MATRIX_SIZES;
+
+        return matrix;
+    }
+
+    /**
+     * @return Buffer of at least given length for luminances of rotated or inverted views, its content is undefined.
+     */
+    public byte[] obtainLuminanceMatrix(int size) {
+        if(luminanceMatrix.length < size) luminanceMatrix = new byte[size];
+        return luminanceMatrix;
+    }
+
+    /**
+     * @return Row buffer of at least given length, its content is undefined.
+     */
+    public byte[] obtainLuminanceRow(int width) {
+        if(luminanceRow.length < width) luminanceRow = new byte[width];
+        return luminanceRow;
+    }
+
+    /**
+     * @return Buffer of at least given length for block thresholds, its content is undefined.
+     */
+    public int[] obtainBlackPoints(int blockCount) {
+        if(blackPoints.length < blockCount) blackPoints = new int[blockCount];
+        return blackPoints;
+    }
+
+    /**
+     * @return Zeroed histogram buckets.
+     */
+    public int[] obtainBuckets() {
+        for(int i = 0; i < buckets.length; i++) {
+            buckets[i] = 0;
+        }
+
+        return buckets;
+    }
+}
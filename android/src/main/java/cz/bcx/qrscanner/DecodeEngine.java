@@ -0,0 +1,50 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Result;
+
+import java.util.List;
+
+/**
+ * Decoder of QR codes in luminance frames, which can be replaced by another implementation than the built-in ZXing
+ * one. Engines are registered by name in {@link DecodeEngines} and picked by the "decodeEngine" argument.
+ *
+ * An engine is created for every scanner session or batch of files with the options to follow (pyramid, prescreen,
+ * multiple codes, orientations...), an engine may ignore the ones it doesn't support. The engine then creates a
+ * decoder for every decode worker, decoders of one engine may share state, e.g. statistics of what works for the
+ * current scene. Codes are reported as ZXing {@link Result}s, which the rest of the pipeline works with.
+ */
+public interface DecodeEngine {
+    interface Factory {
+        /**
+         * @param options - Options of the session or batch
+         */
+        DecodeEngine create(ScannerOptions options);
+    }
+
+    /**
+     * Decodes frames on a single thread at a time, decode calls of one decoder never overlap.
+     */
+    interface Decoder {
+        /**
+         * Decodes the frame's crop, which is all its data holds.
+         * @return Decoded codes with result points in frame coordinates, empty if there is no code in the frame.
+         */
+        List<Result> decode(Frame frame);
+
+        /**
+         * @return Outcome of the last {@link #decode(Frame)} call.
+         */
+        DecodeStatus getLastStatus();
+
+        /**
+         * @return Area of the frame where the last {@link #decode(Frame)} call located a code or its parts in frame
+         * coordinates, null if there was none or the decoder doesn't tell.
+         */
+        Region getLastCandidateRegion();
+    }
+
+    /**
+     * @param stats - Statistics to record stages of decoding into, null to not record them
+     */
+    Decoder createDecoder(PipelineStats stats);
+}
@@ -0,0 +1,60 @@
+package cz.bcx.qrscanner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of {@link DecodeEngine}s by name. The built-in engines are "zxing", the tuned decoder used by default,
+ * and "zxing-plain", stock ZXing without any of the plugin's optimizations, which serves as a reference.
+ *
+ * Apps register their own engines before scanners which should use them are initialized.
+ */
+public final class DecodeEngines {
+    public static final String DEFAULT = "zxing";
+
+    private static final Map<String, DecodeEngine.Factory> factories = new LinkedHashMap<>();
+
+    static {
+        factories.put(DEFAULT, ZxingDecodeEngine.FACTORY);
+        factories.put("zxing-plain", PlainZxingDecodeEngine.FACTORY);
+    }
+
+    private DecodeEngines() {}
+
+    /**
+     * Registers an engine, replacing an engine of the same name.
+     */
+    public static synchronized void register(String name, DecodeEngine.Factory factory) {
+        factories.put(name, factory);
+    }
+
+    public static synchronized boolean isRegistered(String name) {
+        return factories.containsKey(name);
+    }
+
+    /**
+     * @return Names of all registered engines, the built-in ones first.
+     */
+    public static synchronized List<String> getNames() {
+        return new ArrayList<>(factories.keySet());
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no engine of given name
+     */
+    public static DecodeEngine create(String name, ScannerOptions options) {
+        DecodeEngine.Factory factory;
+
+        synchronized (DecodeEngines.class) {
+            factory = factories.get(name);
+        }
+
+        if(factory == null) {
+            throw new IllegalArgumentException("Unknown decode engine: " + name);
+        }
+
+        return factory.create(options);
+    }
+}
@@ -0,0 +1,154 @@
+package cz.bcx.qrscanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Threads decoding frames of one or more {@link DecodeWorkerPool}s. The number of threads is fixed, so the CPU time
+ * spent decoding stays bounded however many scanner sessions are open.
+ *
+ * Pools with a frame waiting for a decoder are served round robin, one frame at a time, so a session with a faster
+ * camera or more decoders can't starve the others. Threads are started when the first pool is registered and end
+ * when the last one is unregistered.
+ */
+public class DecodeScheduler {
+    public interface Client {
+        /**
+         * Called by a scheduler thread while holding the scheduler's lock.
+         * @return Task decoding the client's pending frame with one of its idle decoders, null if there is nothing to
+         * decode or no idle decoder.
+         */
+        Runnable pollTask();
+    }
+
+    private static final String THREAD_NAME = "cz.bcx.qr_scanner.decode_worker_";
+
+    private final int threadCount;
+
+    private final Object lock = new Object();
+    private final List<Client> clients = new ArrayList<>();
+    private int nextClient = 0;
+    private int liveThreads = 0;
+    private int createdThreads = 0;
+
+    /**
+     * @param threadCount - Maximal number of frames decoded at once over all registered pools
+     */
+    public DecodeScheduler(int threadCount) {
+        if(threadCount < 1) {
+            throw new IllegalArgumentException("Decode scheduler needs at least one thread.");
+        }
+
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void register(Client client) {
+        synchronized (lock) {
+            if(clients.contains(client)) return;
+
+            clients.add(client);
+
+            while(liveThreads < threadCount) {
+                startThread();
+            }
+
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * The client gets no more tasks, tasks which are already running are not waited for.
+     */
+    public void unregister(Client client) {
+        synchronized (lock) {
+            int index = clients.indexOf(client);
+            if(index < 0) return;
+
+            clients.remove(index);
+            if(nextClient > index) nextClient--;
+            if(nextClient >= clients.size()) nextClient = 0;
+
+            // Idle threads end once there is no client
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Wakes threads up, called by clients when a frame or a decoder becomes available.
+     */
+    public void signal() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    private void startThread() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runThread();
+            }
+        }, THREAD_NAME + createdThreads++);
+
+        thread.setDaemon(true);
+        liveThreads++;
+        thread.start();
+    }
+
+    private void runThread() {
+        boolean idle = false;
+
+        try {
+            while(true) {
+                Runnable task;
+
+                synchronized (lock) {
+                    while((task = pollTask()) == null) {
+                        if(clients.isEmpty()) {
+                            liveThreads--;
+                            idle = true;
+                            return;
+                        }
+
+                        lock.wait();
+                    }
+                }
+
+                task.run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Interrupted or thrown out by a task, another thread takes the place of this one
+            if(!idle) {
+                synchronized (lock) {
+                    liveThreads--;
+                    if(!clients.isEmpty()) startThread();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Task of the next client in round robin order which has one.
+     */
+    private Runnable pollTask() {
+        int count = clients.size();
+
+        for(int i = 0; i < count; i++) {
+            int index = (nextClient + i) % count;
+            Runnable task = clients.get(index).pollTask();
+
+            if(task != null) {
+                nextClient = (index + 1) % count;
+                return task;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,13 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Outcome of a single decode attempt.
+ */
+public enum DecodeStatus {
+    /** Code has been found and decoded. */
+    FOUND,
+    /** Code has been located, but couldn't be decoded (checksum or format error). */
+    PARTIAL,
+    /** There is no code in the frame. */
+    NOT_FOUND
+}
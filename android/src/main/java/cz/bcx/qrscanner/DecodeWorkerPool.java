@@ -0,0 +1,376 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Result;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Decodes frames with several decoders of a {@link DecodeEngine} on threads of a {@link DecodeScheduler}, which may be
+ * shared with pools of other scanner sessions. A decoder is used by one thread at a time.
+ *
+ * Frames are handed over through a single latest-frame-wins slot. When a new frame is submitted before a worker
+ * picked up the previous one, the previous frame is dropped instead of queued, so workers always decode the freshest
+ * frame available. Results are delivered in capture order: results of a frame wait in a reorder buffer until all older
+ * frames being decoded are done. The buffer holds at most one frame per decoder, when a slow frame holds back more,
+ * the frames after it are delivered and its results follow whenever it's done.
+ */
+public class DecodeWorkerPool implements DecodeScheduler.Client {
+    public interface Listener {
+        /**
+         * Called from a worker thread after every decode attempt.
+         * @param results - Decoded codes, empty if there are none
+         * @param candidateRegion - Area of finder pattern candidates in frame coordinates, null if unknown
+         * @param decodeTime - Time spent decoding the frame in nanoseconds
+         */
+        void onDecodeFinished(Frame frame, DecodeStatus status, List<Result> results, Region candidateRegion,
+                              long decodeTime);
+
+        /**
+         * Called from a worker thread for every frame with decoded codes, in capture order unless a slow frame has
+         * been skipped in the reorder buffer.
+         */
+        void onCodesDecoded(Frame frame, List<Result> results);
+
+        /**
+         * Called from a worker thread when decoding of a frame fails unexpectedly.
+         */
+        void onDecodeError(Frame frame, RuntimeException e);
+    }
+
+    /**
+     * Decodes a frame with its decoder, idle tasks wait in the pool for the next frame.
+     */
+    private final class DecodeTask implements Runnable {
+        private final DecodeEngine.Decoder decoder;
+        private Frame frame;
+
+        private DecodeTask(DecodeEngine.Decoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public void run() {
+            decodeFrame(this);
+        }
+    }
+
+    private final DecodeTask[] tasks;
+    private final DecodeEngine engine;
+    private final DecodeScheduler scheduler;
+    private final Listener listener;
+
+    private final Object lock = new Object();
+    private final Object deliveryLock = new Object();
+    private final ArrayDeque<Frame> framePool = new ArrayDeque<>();
+    private final ArrayDeque<DecodeTask> idleTasks = new ArrayDeque<>();
+
+    private Frame pendingFrame;
+    private int busyWorkers = 0;
+    private boolean running = false;
+
+    private long droppedFrames = 0;
+
+    // Guarded by deliveryLock
+    private final TreeSet<Long> decodingSequences = new TreeSet<>();
+    private final TreeMap<Long, Frame> reorderFrames = new TreeMap<>();
+    private final TreeMap<Long, List<Result>> reorderResults = new TreeMap<>();
+
+    /**
+     * Creates a pool with its own scheduler, which has a thread for every decoder.
+     * @param stats - Statistics the decoders record their stages into
+     */
+    public DecodeWorkerPool(ScannerOptions options, PipelineStats stats, Listener listener) {
+        this(options, null, stats, listener);
+    }
+
+    /**
+     * @param scheduler - Scheduler shared with other pools, null to create one with a thread for every decoder
+     * @param stats - Statistics the decoders record their stages into
+     */
+    public DecodeWorkerPool(ScannerOptions options, DecodeScheduler scheduler, PipelineStats stats, Listener listener) {
+        int workerCount = options.getDecodeWorkers();
+
+        if(workerCount < 1) {
+            throw new IllegalArgumentException("Decode worker pool needs at least one worker.");
+        }
+
+        this.listener = listener;
+        this.tasks = new DecodeTask[workerCount];
+        this.scheduler = scheduler != null ? scheduler : new DecodeScheduler(workerCount);
+
+        this.engine = DecodeEngines.create(options.getDecodeEngine(), options);
+
+        for(int i = 0; i < workerCount; i++) {
+            tasks[i] = new DecodeTask(engine.createDecoder(stats));
+            idleTasks.push(tasks[i]);
+        }
+    }
+
+    /**
+     * @return Number of workers, which is recommended for this device.
+     */
+    public static int getDefaultWorkerCount() {
+        // Leave one core for the camera and UI
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * @return Number of decoders, the number of frames decoded at once is limited by the scheduler too.
+     */
+    public int getWorkerCount() {
+        return tasks.length;
+    }
+
+    public DecodeScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public DecodeEngine getEngine() {
+        return engine;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if(running) return;
+            running = true;
+        }
+
+        scheduler.register(this);
+    }
+
+    /**
+     * Stops decoding and waits for frames which are being decoded.
+     */
+    public void stop() {
+        synchronized (lock) {
+            if(!running) return;
+
+            running = false;
+
+            if(pendingFrame != null) {
+                framePool.push(pendingFrame);
+                pendingFrame = null;
+            }
+        }
+
+        scheduler.unregister(this);
+
+        synchronized (lock) {
+            while(busyWorkers > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a frame from the pool (or a new one if the pool is empty). The frame has to be given back either
+     * by {@link #submit(Frame)} or {@link #recycle(Frame)}.
+     * @param capacity - Minimal size of frame's backing array
+     */
+    public Frame obtainFrame(int capacity) {
+        Frame frame;
+
+        synchronized (lock) {
+            frame = framePool.poll();
+        }
+
+        if(frame == null) {
+            return new Frame(capacity);
+        }
+
+        frame.ensureCapacity(capacity);
+        return frame;
+    }
+
+    /**
+     * Frees pooled frames, frames being decoded return to the pool when they're done.
+     */
+    public void releaseFrames() {
+        synchronized (lock) {
+            framePool.clear();
+        }
+    }
+
+    public void recycle(Frame frame) {
+        synchronized (lock) {
+            framePool.push(frame);
+        }
+    }
+
+    /**
+     * Hands the frame to workers. Replaces (and recycles) the frame which has not been picked up by any worker yet.
+     * @return True if a pending frame has been dropped.
+     */
+    public boolean submit(Frame frame) {
+        boolean dropped = false;
+
+        synchronized (lock) {
+            if(!running) {
+                framePool.push(frame);
+                return false;
+            }
+
+            if(pendingFrame != null) {
+                framePool.push(pendingFrame);
+                droppedFrames++;
+                dropped = true;
+            }
+
+            pendingFrame = frame;
+        }
+
+        scheduler.signal();
+        return dropped;
+    }
+
+    /**
+     * @return Number of frames replaced by a newer frame before any worker picked them up.
+     */
+    public long getDroppedFrames() {
+        synchronized (lock) {
+            return droppedFrames;
+        }
+    }
+
+    @Override
+    public Runnable pollTask() {
+        synchronized (lock) {
+            if(!running || pendingFrame == null || idleTasks.isEmpty()) return null;
+
+            DecodeTask task = idleTasks.pop();
+            task.frame = pendingFrame;
+            pendingFrame = null;
+            busyWorkers++;
+
+            synchronized (deliveryLock) {
+                decodingSequences.add(task.frame.getSequence());
+            }
+
+            return task;
+        }
+    }
+
+    /**
+     * @param finishedFrames - Frames which can return to the pool, the task's frame stays out if its results wait in
+     *                         the reorder buffer
+     */
+    private void finishFrame(DecodeTask task, List<Frame> finishedFrames) {
+        boolean framePending;
+
+        synchronized (lock) {
+            for(Frame frame : finishedFrames) {
+                framePool.push(frame);
+            }
+            task.frame = null;
+            idleTasks.push(task);
+            busyWorkers--;
+            framePending = pendingFrame != null;
+            lock.notifyAll();
+        }
+
+        // A frame which came while all decoders were busy can be decoded now
+        if(framePending) scheduler.signal();
+    }
+
+    /**
+     * Waits until there is no pending frame and all workers are idle.
+     * @return False if the timeout elapsed first.
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        synchronized (lock) {
+            while(pendingFrame != null || busyWorkers > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0) return false;
+
+                lock.wait(remaining);
+            }
+
+            return true;
+        }
+    }
+
+    private void decodeFrame(DecodeTask task) {
+        Frame frame = task.frame;
+        DecodeEngine.Decoder decoder = task.decoder;
+        List<Result> results = Collections.emptyList();
+
+        try {
+            long decodeStart = System.nanoTime();
+            results = decoder.decode(frame);
+            long decodeTime = System.nanoTime() - decodeStart;
+            listener.onDecodeFinished(
+                    frame, decoder.getLastStatus(), results, decoder.getLastCandidateRegion(), decodeTime
+            );
+        } catch (RuntimeException e) {
+            results = Collections.emptyList();
+            listener.onDecodeError(frame, e);
+        } finally {
+            finishFrame(task, deliver(frame, results));
+        }
+    }
+
+    /**
+     * Buffers results of the frame and delivers all buffered results which are no longer preceded by a frame being
+     * decoded. Results of a skipped frame are delivered as soon as it's done.
+     * @param results - Decoded codes of the frame, empty if there are none
+     * @return Frames whose decoding and delivery is finished.
+     */
+    private List<Frame> deliver(Frame frame, List<Result> results) {
+        List<Frame> finishedFrames = new ArrayList<>(1);
+
+        synchronized (deliveryLock) {
+            decodingSequences.remove(frame.getSequence());
+
+            if(results.isEmpty()) {
+                finishedFrames.add(frame);
+            }
+            else {
+                reorderFrames.put(frame.getSequence(), frame);
+                reorderResults.put(frame.getSequence(), results);
+            }
+
+            releaseReordered(finishedFrames);
+
+            // A frame still decoding while the buffer is full is skipped, it no longer holds back newer results
+            while(reorderFrames.size() > tasks.length && !decodingSequences.isEmpty()) {
+                decodingSequences.pollFirst();
+                releaseReordered(finishedFrames);
+            }
+        }
+
+        return finishedFrames;
+    }
+
+    /**
+     * Delivers buffered results which are no longer preceded by a frame being decoded, called with deliveryLock held.
+     */
+    private void releaseReordered(List<Frame> finishedFrames) {
+        long oldestDecoding = decodingSequences.isEmpty() ? Long.MAX_VALUE : decodingSequences.first();
+
+        while(!reorderFrames.isEmpty() && reorderFrames.firstKey() < oldestDecoding) {
+            Map.Entry<Long, Frame> entry = reorderFrames.pollFirstEntry();
+            List<Result> frameResults = reorderResults.remove(entry.getKey());
+
+            try {
+                listener.onCodesDecoded(entry.getValue(), frameResults);
+            } catch (RuntimeException e) {
+                listener.onDecodeError(entry.getValue(), e);
+            }
+
+            finishedFrames.add(entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package cz.bcx.qrscanner;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Collects events from any thread and delivers them to the event sink on the main thread in batches.
+ *
+ * Pending events are flushed after the flush interval passes since the first of them was dispatched, or right away
+ * when the batch is full. A single event is sent as it is, more events are wrapped into one "batch" event.
+ *
+ * Every scanner session batches its events in a dispatcher of its own with the session's settings, created by
+ * {@link #createSessionDispatcher}. Session dispatchers deliver to the sink of the plugin's dispatcher, which sends
+ * events of no session right away. Each event records its delivery into statistics of the session which dispatched it.
+ */
+public class EventDispatcher {
+    private final Handler mainHandler;
+    // Dispatcher owning the sink, null if this is the one
+    private final EventDispatcher parent;
+
+    private final Object lock = new Object();
+    private ArrayList<Object> pendingEvents = new ArrayList<>();
+    private long[] dispatchTimes = new long[16];
+    // Statistics of the session of each pending event, null for events of no session
+    private final ArrayList<PipelineStats> pendingStats = new ArrayList<>();
+    private boolean flushScheduled = false;
+
+    private final long flushInterval; // ms
+    private final int maxBatchSize;
+
+    private volatile EventChannel.EventSink eventSink;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param mainHandler - Handler of the main looper
+     */
+    public EventDispatcher(Handler mainHandler) {
+        this(mainHandler, null, 0, 1);
+    }
+
+    private EventDispatcher(Handler mainHandler, EventDispatcher parent, long flushInterval, int maxBatchSize) {
+        this.mainHandler = mainHandler;
+        this.parent = parent;
+        this.flushInterval = Math.max(0, flushInterval);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * @param flushInterval - Maximal time in milliseconds an event waits for other events, 0 sends events right away
+     * @param maxBatchSize - Maximal number of events sent in one batch
+     * @return Dispatcher batching events of one session by its own settings into the sink of this dispatcher.
+     */
+    public EventDispatcher createSessionDispatcher(long flushInterval, int maxBatchSize) {
+        return new EventDispatcher(mainHandler, this, flushInterval, maxBatchSize);
+    }
+
+    public void setEventSink(EventChannel.EventSink eventSink) {
+        if(parent != null) {
+            throw new IllegalStateException("Session dispatchers deliver to the sink of their parent.");
+        }
+
+        this.eventSink = eventSink;
+    }
+
+    private EventChannel.EventSink getEventSink() {
+        return parent != null ? parent.getEventSink() : eventSink;
+    }
+
+    public void dispatch(Map<String, Object> event) {
+        dispatchAll(Collections.singletonList(event), null);
+    }
+
+    /**
+     * @param stats - Statistics to record delivery latency of the event into, null to not record it
+     */
+    public void dispatch(Map<String, Object> event, PipelineStats stats) {
+        dispatchAll(Collections.singletonList(event), stats);
+    }
+
+    /**
+     * Dispatches events, which are delivered in the same batch regardless of the maximal batch size.
+     * @param stats - Statistics to record delivery latencies of the events into, null to not record them
+     */
+    public void dispatchAll(List<Map<String, Object>> events, PipelineStats stats) {
+        long now = System.nanoTime();
+
+        synchronized (lock) {
+            int start = pendingEvents.size();
+            pendingEvents.addAll(events);
+
+            for(int i = 0; i < events.size(); i++) {
+                pendingStats.add(stats);
+            }
+
+            if(dispatchTimes.length < pendingEvents.size()) {
+                dispatchTimes = Arrays.copyOf(dispatchTimes, Math.max(pendingEvents.size(), dispatchTimes.length * 2));
+            }
+            Arrays.fill(dispatchTimes, start, pendingEvents.size(), now);
+
+            if(pendingEvents.size() >= maxBatchSize || flushInterval == 0) {
+                mainHandler.removeCallbacks(flushTask);
+                mainHandler.post(flushTask);
+                flushScheduled = true;
+            }
+            else if(!flushScheduled) {
+                mainHandler.postDelayed(flushTask, flushInterval);
+                flushScheduled = true;
+            }
+        }
+    }
+
+    private void flush() {
+        List<Object> events;
+
+        EventChannel.EventSink sink = getEventSink();
+
+        synchronized (lock) {
+            flushScheduled = false;
+            if(pendingEvents.isEmpty()) return;
+
+            events = pendingEvents;
+            pendingEvents = new ArrayList<>(events.size());
+
+            if(sink != null) {
+                recordDelivery(events);
+            }
+            pendingStats.clear();
+        }
+
+        if(sink == null) return;
+
+        if(events.size() == 1) {
+            sink.success(events.get(0));
+        }
+        else {
+            Map<String, Object> batch = new HashMap<>();
+            batch.put("eventType", "batch");
+            batch.put("events", events);
+            sink.success(batch);
+        }
+    }
+
+    private void recordDelivery(List<Object> events) {
+        long now = System.nanoTime();
+
+        for(int i = 0; i < events.size(); i++) {
+            PipelineStats stats = pendingStats.get(i);
+            if(stats == null) continue;
+
+            stats.increment(PipelineStats.Counter.EVENTS_DELIVERED);
+            stats.record(PipelineStats.Stage.DELIVERY, now - dispatchTimes[i]);
+
+            // Only code events carry the frame's sensor timestamp
+            Object timestamp = ((Map<?, ?>) events.get(i)).get("timestamp");
+            if(timestamp instanceof Long) {
+                stats.recordSensorLatency((Long) timestamp);
+            }
+        }
+    }
+}
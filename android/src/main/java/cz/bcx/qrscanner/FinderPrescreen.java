@@ -0,0 +1,279 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Cheap check whether a frame may contain a QR code at all, run before binarization and the full detector.
+ *
+ * Scans every n-th row of the luminance for the 1:1:3:1:1 dark-light-dark-light-dark runs of a finder pattern and
+ * confirms each hit by the same ratio along the column through its center. Only when no row has any candidate,
+ * every n-th column is scanned the same way. Each line is thresholded halfway between its darkest and brightest
+ * sample with some hysteresis against noise, lines without enough contrast are skipped.
+ *
+ * The core of a finder pattern is 3 modules tall, so with a line spacing of 3 px every code with modules of at least
+ * 1 px is hit by some row. Rotation doesn't change the ratio. Candidates are kept for the decoder as a hint of where
+ * codes are and how large their modules are. Instances reuse their buffers and must be used by a single thread only.
+ */
+public class FinderPrescreen {
+    private static final int MAX_CANDIDATES = 16;
+
+    // Lines with smaller difference between the darkest and the brightest sample are plain, e.g. a wall or a table.
+    // Not above HybridBinarizer's minimal dynamic range, so no frame the binarizer would threshold gets rejected.
+    private static final int MIN_CONTRAST = 24;
+    // Patterns with modules below 1.5 px are mostly noise, codes that small rarely decode anyway
+    private static final int MIN_PATTERN_SIZE = 11; // px
+    // A run changes color only when a pixel is past the threshold by this part of the line's contrast
+    private static final int HYSTERESIS_DIVISOR = 4;
+    // Every n-th sample of a line is used to find its threshold
+    private static final int THRESHOLD_SAMPLE_STEP = 4;
+
+    private final int lineSpacing;
+    private final boolean invertedPatterns;
+
+    // Lengths of the last five runs of the scanned line, the oldest first
+    private final int[] runs = new int[5];
+    private final int[] crossRuns = new int[5];
+
+    private final float[] candidateX = new float[MAX_CANDIDATES];
+    private final float[] candidateY = new float[MAX_CANDIDATES];
+    private final float[] candidateModuleSize = new float[MAX_CANDIDATES];
+    private int candidateCount = 0;
+
+    /**
+     * @param lineSpacing - Distance between scanned rows and between scanned columns in pixels
+     * @param invertedPatterns - Look for light-on-dark patterns of inverted codes too
+     */
+    public FinderPrescreen(int lineSpacing, boolean invertedPatterns) {
+        if(lineSpacing < 1) {
+            throw new IllegalArgumentException("Line spacing has to be positive.");
+        }
+
+        this.lineSpacing = lineSpacing;
+        this.invertedPatterns = invertedPatterns;
+    }
+
+    /**
+     * Looks for finder pattern candidates in a tightly packed luminance plane.
+     * @return True if there is at least one candidate, see {@link #getCandidateCount()}.
+     */
+    public boolean scan(byte[] data, int width, int height) {
+        candidateCount = 0;
+
+        for(int y = lineSpacing / 2; y < height && candidateCount < MAX_CANDIDATES; y += lineSpacing) {
+            scanLine(data, y * width, 1, width, y, width, height, true);
+        }
+
+        if(candidateCount > 0) return true;
+
+        for(int x = lineSpacing / 2; x < width && candidateCount < MAX_CANDIDATES; x += lineSpacing) {
+            scanLine(data, x, width, height, x, width, height, false);
+        }
+
+        return candidateCount > 0;
+    }
+
+    /**
+     * @param start - Index of the first pixel of the line
+     * @param step - Distance between consecutive pixels of the line in the data
+     * @param line - Y of a row, x of a column
+     */
+    private void scanLine(byte[] data, int start, int step, int length, int line, int width, int height, boolean row) {
+        int min = 0xff;
+        int max = 0;
+        for(int i = 0, index = start; i < length; i += THRESHOLD_SAMPLE_STEP, index += step * THRESHOLD_SAMPLE_STEP) {
+            int pixel = data[index] & 0xff;
+            if(pixel < min) min = pixel;
+            if(pixel > max) max = pixel;
+        }
+
+        if(max - min < MIN_CONTRAST) return;
+
+        int threshold = (min + max + 1) / 2;
+        int hysteresis = (max - min) / HYSTERESIS_DIVISOR;
+
+        for(int i = 0; i < runs.length; i++) {
+            runs[i] = 0;
+        }
+
+        int runCount = 0;
+        boolean runDark = (data[start] & 0xff) < threshold;
+        int runLength = 0;
+
+        // Noise around the threshold doesn't split runs
+        int darkThreshold = threshold - hysteresis;
+        int lightThreshold = threshold + hysteresis;
+
+        for(int i = 0, index = start; i <= length; i++, index += step) {
+            if(i < length && ((data[index] & 0xff) < (runDark ? lightThreshold : darkThreshold)) == runDark) {
+                runLength++;
+                continue;
+            }
+
+            // The run ended at i - 1
+            System.arraycopy(runs, 1, runs, 0, runs.length - 1);
+            runs[runs.length - 1] = runLength;
+            runCount++;
+
+            // The last run is the outer ring of the pattern, so it has the pattern's color
+            if(runCount >= runs.length && (runDark || invertedPatterns) && isFinderRatio(runs)) {
+                int center = i - runs[4] - runs[3] - (runs[2] + 1) / 2;
+                int total = runs[0] + runs[1] + runs[2] + runs[3] + runs[4];
+
+                if(row) {
+                    if(crossCheck(data, center + line * width, line, height, width, threshold, runDark, total)) {
+                        addCandidate(center, line, total / 7f);
+                    }
+                }
+                else {
+                    if(crossCheck(data, line + center * width, line, width, 1, threshold, runDark, total)) {
+                        addCandidate(line, center, total / 7f);
+                    }
+                }
+
+                if(candidateCount == MAX_CANDIDATES) return;
+            }
+
+            runDark = !runDark;
+            runLength = 1;
+        }
+    }
+
+    /**
+     * Checks runs along the line perpendicular to the scanned one through the center of a candidate.
+     * @param center - Index of the candidate's center in the data
+     * @param position - Position of the center along the perpendicular line
+     * @param step - Distance between consecutive pixels of the perpendicular line in the data
+     * @param coreDark - Color of the core and the outer ring of the pattern
+     * @param expectedTotal - Length of the pattern along the scanned line
+     */
+    private boolean crossCheck(byte[] data, int center, int position, int length, int step, int threshold,
+                               boolean coreDark, int expectedTotal) {
+        int[] counts = crossRuns;
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+
+        // Runs longer than the whole pattern along the scanned line can't be a part of it
+        int maxCount = expectedTotal;
+
+        // From the center backwards: core, light ring, outer ring
+        int p = position;
+        int index = center;
+        while(p >= 0 && isColor(data[index], threshold, coreDark) && counts[2] <= maxCount) {
+            counts[2]++;
+            p--;
+            index -= step;
+        }
+        while(p >= 0 && !isColor(data[index], threshold, coreDark) && counts[1] <= maxCount) {
+            counts[1]++;
+            p--;
+            index -= step;
+        }
+        if(p < 0 || counts[1] > maxCount) return false;
+        while(p >= 0 && isColor(data[index], threshold, coreDark) && counts[0] <= maxCount) {
+            counts[0]++;
+            p--;
+            index -= step;
+        }
+        if(counts[0] > maxCount) return false;
+
+        // From the center forwards: rest of the core, light ring, outer ring
+        p = position + 1;
+        index = center + step;
+        while(p < length && isColor(data[index], threshold, coreDark) && counts[2] <= maxCount) {
+            counts[2]++;
+            p++;
+            index += step;
+        }
+        while(p < length && !isColor(data[index], threshold, coreDark) && counts[3] <= maxCount) {
+            counts[3]++;
+            p++;
+            index += step;
+        }
+        if(p == length || counts[3] > maxCount) return false;
+        while(p < length && isColor(data[index], threshold, coreDark) && counts[4] <= maxCount) {
+            counts[4]++;
+            p++;
+            index += step;
+        }
+        if(counts[4] > maxCount) return false;
+
+        // The pattern is about as large in both directions
+        int total = counts[0] + counts[1] + counts[2] + counts[3] + counts[4];
+        if(5 * Math.abs(total - expectedTotal) >= 2 * expectedTotal) return false;
+
+        return isFinderRatio(counts);
+    }
+
+    private static boolean isColor(byte pixel, int threshold, boolean dark) {
+        return ((pixel & 0xff) < threshold) == dark;
+    }
+
+    /**
+     * Same tolerance as ZXing's finder pattern finder, every run may differ from its ideal length by half a module.
+     */
+    private static boolean isFinderRatio(int[] counts) {
+        int total = 0;
+        for(int count : counts) {
+            if(count == 0) return false;
+            total += count;
+        }
+
+        if(total < MIN_PATTERN_SIZE) return false;
+
+        // Fixed point with 8 fractional bits
+        int moduleSize = (total << 8) / 7;
+        int maxVariance = moduleSize / 2;
+
+        return Math.abs(moduleSize - (counts[0] << 8)) < maxVariance &&
+                Math.abs(moduleSize - (counts[1] << 8)) < maxVariance &&
+                Math.abs(3 * moduleSize - (counts[2] << 8)) < 3 * maxVariance &&
+                Math.abs(moduleSize - (counts[3] << 8)) < maxVariance &&
+                Math.abs(moduleSize - (counts[4] << 8)) < maxVariance;
+    }
+
+    private void addCandidate(float x, float y, float moduleSize) {
+        // Adjacent lines hit the same pattern, it's kept only once
+        for(int i = 0; i < candidateCount; i++) {
+            float distance = Math.max(Math.abs(candidateX[i] - x), Math.abs(candidateY[i] - y));
+            if(distance <= 3.5f * Math.max(candidateModuleSize[i], moduleSize)) return;
+        }
+
+        candidateX[candidateCount] = x;
+        candidateY[candidateCount] = y;
+        candidateModuleSize[candidateCount] = moduleSize;
+        candidateCount++;
+    }
+
+    /**
+     * @return Number of candidates found by the last scan.
+     */
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    public float getCandidateX(int index) {
+        return candidateX[index];
+    }
+
+    public float getCandidateY(int index) {
+        return candidateY[index];
+    }
+
+    /**
+     * @return Estimated module size of the candidate's code in pixels.
+     */
+    public float getCandidateModuleSize(int index) {
+        return candidateModuleSize[index];
+    }
+
+    /**
+     * @return Module size of the largest candidate of the last scan, 0 if there is none.
+     */
+    public float getMaxModuleSize() {
+        float maxModuleSize = 0;
+        for(int i = 0; i < candidateCount; i++) {
+            maxModuleSize = Math.max(maxModuleSize, candidateModuleSize[i]);
+        }
+
+        return maxModuleSize;
+    }
+}
@@ -0,0 +1,124 @@
+package cz.bcx.qrscanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Luminance data of a single captured frame, copied out of the camera's image so the image can be closed right away.
+ * Only the cropped part of the frame is kept, tightly packed with row stride equal to the crop's width.
+ * Instances are pooled and reused by {@link DecodeWorkerPool}.
+ */
+public class Frame {
+    private byte[] data;
+
+    private int width;
+    private int height;
+
+    private Region crop;
+
+    private long sequence;
+    private long timestamp;
+    private long recordId = -1;
+
+    public Frame(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    /**
+     * Makes sure the backing array is able to hold at least given number of bytes.
+     * @param capacity - Required size of the backing array
+     * @return Backing array of this frame
+     */
+    public byte[] ensureCapacity(int capacity) {
+        if(data.length < capacity) {
+            data = new byte[capacity];
+        }
+
+        return data;
+    }
+
+    /**
+     * Copies the cropped part of a Y plane into this frame. Row and pixel strides of the plane are honored,
+     * row padding and pixels outside of the crop are never copied.
+     * @param buffer - Y plane of the image
+     * @param rowStride - Distance between the starts of two consecutive rows in bytes
+     * @param pixelStride - Distance between two consecutive pixels of a row in bytes
+     * @param crop - Part of the frame to copy, null for the whole frame
+     */
+    public void copyPlane(ByteBuffer buffer, int rowStride, int pixelStride,
+                          int width, int height, Region crop, long sequence, long timestamp) {
+        set(width, height, crop, sequence, timestamp);
+
+        int cropWidth = this.crop.getWidth();
+        int cropHeight = this.crop.getHeight();
+        byte[] data = ensureCapacity(cropWidth * cropHeight);
+
+        int bufferStart = buffer.position();
+
+        for(int y = 0; y < cropHeight; y++) {
+            int rowStart = bufferStart + (this.crop.getTop() + y) * rowStride + this.crop.getLeft() * pixelStride;
+            int dataOffset = y * cropWidth;
+
+            if(pixelStride == 1) {
+                buffer.position(rowStart);
+                buffer.get(data, dataOffset, cropWidth);
+            }
+            else {
+                for(int x = 0; x < cropWidth; x++) {
+                    data[dataOffset + x] = buffer.get(rowStart + x * pixelStride);
+                }
+            }
+        }
+
+        buffer.position(bufferStart);
+    }
+
+    /**
+     * Sets frame's metadata, data of the crop have to be already written to {@link #getData()}.
+     * @param crop - Part of the frame held in the data, null for the whole frame
+     */
+    public void set(int width, int height, Region crop, long sequence, long timestamp) {
+        this.width = width;
+        this.height = height;
+        this.crop = crop != null ? crop : Region.full(width, height);
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return Width of the whole captured frame, the data contain only {@link #getCrop()}.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Region getCrop() {
+        return crop;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @param recordId - ID of the frame given by a {@link FrameRecorder}, -1 if the frame is not recorded
+     */
+    public void setRecordId(long recordId) {
+        this.recordId = recordId;
+    }
+
+    public long getRecordId() {
+        return recordId;
+    }
+}
@@ -0,0 +1,432 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Decodes QR codes from {@link Frame}s, the decoder of the default {@link ZxingDecodeEngine}. Every instance owns its
+ * reader, so it must be used by a single thread only.
+ *
+ * With a resolution pyramid, frames are decoded at the coarsest level first and finer levels are tried only when
+ * the coarser one doesn't find a code. The level which found the last code is tried first on the next frame.
+ *
+ * With orientation retries, a full resolution frame without any code is decoded once more in the next of the retry
+ * orientations (inverted, rotated), round robin, so a miss costs at most two attempts. The orientation which found
+ * the last code is tried first on following frames, at every pyramid level.
+ *
+ * With a prescreen, frames in which sparse rows and columns show no finder pattern are not binarized at all. The size
+ * of found finder patterns then picks the pyramid level to start at, instead of the level of the last code. Without
+ * it, the scan capture profile still has frames which decode no code scanned for finder patterns afterwards, so the
+ * camera can be focused on codes which couldn't be read.
+ *
+ * Binarizers write into buffers of the decoder's {@link DecodeContext}, so once they've grown to the capture
+ * resolution, a frame allocates only a few small objects unless a code is found.
+ */
+public class FrameDecoder implements DecodeEngine.Decoder {
+    private static final int PYRAMID_PROBE_INTERVAL = 8; // frames
+    // Smallest module size in pixels a pyramid level is expected to decode reliably
+    private static final float MIN_PYRAMID_MODULE_SIZE = 2f;
+    // Line spacing of the scan locating codes which couldn't be read when the prescreen is disabled
+    private static final int LOCATE_LINE_SPACING = 4; // px
+
+    private final QRCodeReader qrReader;
+    private final MultiCodeDecoder multiCodeDecoder;
+    private final BinarizerCascade binarizerCascade;
+    private final Map<DecodeHintType, Object> hints;
+    private final LumaPyramid pyramid;
+    private final PipelineStats stats;
+    private final FinderPrescreen prescreen;
+    // False if the prescreen only locates codes after a decode, instead of filtering frames before it
+    private final boolean prescreenFilters;
+    private final DecodeContext context = new DecodeContext();
+
+    // Normal orientation followed by the retry orientations
+    private final Orientation[] orientations;
+    private int preferredOrientation = 0;
+    private int nextRetry = 0;
+
+    private int startLevel = Integer.MAX_VALUE;
+    private long frames = 0;
+    private DecodeStatus lastStatus = DecodeStatus.NOT_FOUND;
+    private Region lastCrop;
+    private boolean lastPrescreened = false;
+
+    public FrameDecoder() {
+        this(new ScannerOptions(), new BinarizerCascade(BinarizerCascade.Strategy.CASCADE), null);
+    }
+
+    /**
+     * @param binarizerCascade - Binarizers to try, may be shared with other decoders
+     * @param regionExecutor - Executor decoding regions of multiple codes in parallel, null to decode them sequentially
+     */
+    public FrameDecoder(ScannerOptions options, BinarizerCascade binarizerCascade, ExecutorService regionExecutor) {
+        this(options, binarizerCascade, regionExecutor, null);
+    }
+
+    /**
+     * @param stats - Statistics to record binarize, decode and reset stages into, null to not record them
+     */
+    public FrameDecoder(ScannerOptions options, BinarizerCascade binarizerCascade, ExecutorService regionExecutor,
+                        PipelineStats stats) {
+        // Scan QR Codes only
+        // Makes scanning much faster and lets us tell a located but undecodable code from no code at all
+        this.qrReader = new QRCodeReader();
+        this.binarizerCascade = binarizerCascade;
+
+        this.hints = new EnumMap<>(DecodeHintType.class);
+        this.hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+
+        this.multiCodeDecoder = options.isMultiCode() ?
+                new MultiCodeDecoder(regionExecutor, hints, options.getMaxCodesPerFrame(), options.getMinCodeRegionSize()) :
+                null;
+
+        this.pyramid = options.getPyramidLevels() > 0 ? new LumaPyramid(options.getPyramidLevels()) : null;
+        this.stats = stats;
+
+        List<Orientation> orientations = new ArrayList<>();
+        orientations.add(Orientation.NORMAL);
+        for(Orientation orientation : options.getOrientationRetries()) {
+            if(!orientations.contains(orientation)) orientations.add(orientation);
+        }
+        this.orientations = orientations.toArray(new Orientation[orientations.size()]);
+
+        boolean invertedPatterns = false;
+        for(Orientation orientation : this.orientations) {
+            invertedPatterns |= orientation.isInverted();
+        }
+
+        this.prescreenFilters = options.getPrescreenLineSpacing() > 0;
+        if(prescreenFilters) {
+            this.prescreen = new FinderPrescreen(options.getPrescreenLineSpacing(), invertedPatterns);
+        }
+        else if(options.isScanCaptureProfile()) {
+            this.prescreen = new FinderPrescreen(LOCATE_LINE_SPACING, invertedPatterns);
+        }
+        else {
+            this.prescreen = null;
+        }
+    }
+
+    /**
+     * @param frame - Frame to decode
+     * @return Decoded codes, empty if there is no code in the frame, see {@link #getLastStatus()}.
+     */
+    @Override
+    public List<Result> decode(Frame frame) {
+        Region crop = frame.getCrop();
+        lastCrop = crop;
+        lastPrescreened = false;
+
+        if(prescreenFilters && !prescreen(frame.getData(), crop)) {
+            lastStatus = DecodeStatus.NOT_FOUND;
+            return Collections.emptyList();
+        }
+
+        List<Result> results = decodeCrop(frame.getData(), crop);
+
+        // Finder patterns tell where to focus when no code could be read
+        if(!prescreenFilters && prescreen != null && lastStatus != DecodeStatus.FOUND) {
+            prescreen(frame.getData(), crop);
+        }
+
+        return results;
+    }
+
+    private List<Result> decodeCrop(byte[] data, Region crop) {
+
+        // Frame holds only the cropped part, so only the crop is binarized and decoded
+        if(pyramid == null) {
+            YPlaneLuminanceSource source = new YPlaneLuminanceSource(data, crop.getWidth(), crop.getHeight());
+            return toFrameCoordinates(decodeOriented(source, 1, true), crop, 1);
+        }
+
+        pyramid.build(data, crop.getWidth(), crop.getHeight());
+        int coarsestLevel = pyramid.getLevelCount() - 1;
+
+        if(prescreenFilters) {
+            startLevel = getLevelForModuleSize(prescreen.getMaxModuleSize(), coarsestLevel);
+        }
+        // Every few frames start at the coarsest level again, the code may have come closer
+        else if(++frames % PYRAMID_PROBE_INTERVAL == 0) {
+            startLevel = coarsestLevel;
+        }
+
+        DecodeStatus status = DecodeStatus.NOT_FOUND;
+
+        for(int level = Math.min(startLevel, coarsestLevel); level >= 0; level--) {
+            YPlaneLuminanceSource source = new YPlaneLuminanceSource(
+                    pyramid.getLevel(level),
+                    pyramid.getWidth(level),
+                    pyramid.getHeight(level)
+            );
+
+            int scale = 1 << level;
+            // Full resolution is the last chance, other orientations are tried only there
+            List<Result> results = decodeOriented(source, scale, level == 0);
+
+            if(lastStatus == DecodeStatus.FOUND) {
+                startLevel = level;
+                return toFrameCoordinates(results, crop, scale);
+            }
+
+            if(lastStatus == DecodeStatus.PARTIAL) status = DecodeStatus.PARTIAL;
+        }
+
+        // Nothing found at any level, the cheapest level is as good as any other
+        startLevel = coarsestLevel;
+        lastStatus = status;
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return True if the prescreen has found a finder pattern candidate in the frame.
+     */
+    private boolean prescreen(byte[] data, Region crop) {
+        long start = System.nanoTime();
+        boolean found = prescreen.scan(data, crop.getWidth(), crop.getHeight());
+        lastPrescreened = true;
+
+        if(stats != null) {
+            stats.recordSince(PipelineStats.Stage.PRESCREEN, start);
+            if(!found && prescreenFilters) stats.increment(PipelineStats.Counter.FRAMES_PRESCREENED);
+        }
+
+        return found;
+    }
+
+    /**
+     * @return Coarsest pyramid level at which modules of given size are still large enough to be decoded.
+     */
+    private static int getLevelForModuleSize(float moduleSize, int coarsestLevel) {
+        int level = 0;
+        while(level < coarsestLevel && moduleSize / (2 << level) >= MIN_PYRAMID_MODULE_SIZE) {
+            level++;
+        }
+
+        return level;
+    }
+
+    /**
+     * Decodes the source in the preferred orientation, and if there is no code, in the next retry orientation.
+     * @param retry - False to try just the preferred orientation
+     * @return Decoded codes in source coordinates, mutable unless empty.
+     */
+    private List<Result> decodeOriented(YPlaneLuminanceSource source, int scale, boolean retry) {
+        List<Result> results = decodeSource(source, orientations[preferredOrientation], scale);
+
+        if(!retry || orientations.length == 1 || lastStatus != DecodeStatus.NOT_FOUND) return results;
+
+        int retryOrientation = nextRetry();
+        if(retryOrientation == preferredOrientation) retryOrientation = nextRetry();
+
+        results = decodeSource(source, orientations[retryOrientation], scale);
+        if(lastStatus == DecodeStatus.FOUND) preferredOrientation = retryOrientation;
+
+        return results;
+    }
+
+    private int nextRetry() {
+        int retry = nextRetry;
+        nextRetry = (nextRetry + 1) % orientations.length;
+        return retry;
+    }
+
+    /**
+     * Decodes a view of the source in given orientation.
+     * @return Decoded codes in source coordinates, mutable unless empty.
+     */
+    private List<Result> decodeSource(YPlaneLuminanceSource source, Orientation orientation, int scale) {
+        if(orientation == Orientation.NORMAL) return decodeSource(source, scale);
+
+        // The view fills the context's buffer instead of allocating a rotated or inverted copy
+        byte[] matrixBuffer = context.obtainLuminanceMatrix(source.getWidth() * source.getHeight());
+        YPlaneLuminanceSource view = source.orient(orientation, matrixBuffer);
+        List<Result> results = decodeSource(view, scale);
+
+        for(int i = 0; i < results.size(); i++) {
+            results.set(i, toSourceCoordinates(results.get(i), view));
+        }
+
+        return results;
+    }
+
+    private static Result toSourceCoordinates(Result result, YPlaneLuminanceSource view) {
+        ResultPoint[] points = result.getResultPoints();
+
+        if(points == null) return result;
+
+        ResultPoint[] sourcePoints = new ResultPoint[points.length];
+        for(int i = 0; i < points.length; i++) {
+            if(points[i] != null) sourcePoints[i] = view.toDataCoordinates(points[i]);
+        }
+
+        Result sourceResult = new Result(
+                result.getText(),
+                result.getRawBytes(),
+                sourcePoints,
+                result.getBarcodeFormat(),
+                result.getTimestamp()
+        );
+        sourceResult.putAllMetadata(result.getResultMetadata());
+
+        return sourceResult;
+    }
+
+    /**
+     * Tries binarizers of the cascade until one of them decodes a code. A code located by one binarizer but not
+     * decoded may still be decoded with the next one, the frame is partial only when none of them decodes it.
+     * @param scale - Number of frame pixels per source pixel
+     * @return Decoded codes in source coordinates, mutable unless empty.
+     */
+    private List<Result> decodeSource(LuminanceSource source, int scale) {
+        lastStatus = DecodeStatus.NOT_FOUND;
+        boolean located = false;
+
+        for(BinarizerCascade.Tier tier : binarizerCascade.nextOrder()) {
+            long stageStart = System.nanoTime();
+            long binarized = 0;
+
+            try {
+                BinaryBitmap bitmap = new BinaryBitmap(tier.create(source, context));
+                BitMatrix matrix = bitmap.getBlackMatrix();
+                binarized = System.nanoTime();
+
+                // The reader gets the black matrix cached by the bitmap
+                List<Result> results;
+                if(multiCodeDecoder != null) {
+                    results = multiCodeDecoder.decode(matrix, scale);
+                }
+                else {
+                    results = new ArrayList<>(1);
+                    results.add(qrReader.decode(bitmap, hints));
+                }
+
+                binarizerCascade.onAttempt(tier, true);
+                lastStatus = DecodeStatus.FOUND;
+                return results;
+            } catch (NotFoundException e) {
+                binarizerCascade.onAttempt(tier, false);
+            } catch (ChecksumException | FormatException e) {
+                // The code has been located, but the next binarizer's matrix may still decode it
+                binarizerCascade.onAttempt(tier, false);
+                located = true;
+            } finally {
+                if(stats != null) {
+                    if(binarized == 0) {
+                        stageStart = stats.recordSince(PipelineStats.Stage.BINARIZE, stageStart);
+                    }
+                    else {
+                        stats.record(PipelineStats.Stage.BINARIZE, binarized - stageStart);
+                        stageStart = stats.recordSince(PipelineStats.Stage.DECODE, binarized);
+                    }
+                }
+
+                qrReader.reset();
+
+                if(stats != null) {
+                    stats.recordSince(PipelineStats.Stage.RESET, stageStart);
+                }
+            }
+        }
+
+        if(located) lastStatus = DecodeStatus.PARTIAL;
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return Outcome of the last {@link #decode(Frame)} call.
+     */
+    @Override
+    public DecodeStatus getLastStatus() {
+        return lastStatus;
+    }
+
+    /**
+     * Finder pattern candidates tell where a code is even when it can't be decoded, e.g. to focus the camera there.
+     * @return Bounding box of finder pattern candidates of the last {@link #decode(Frame)} call in frame coordinates,
+     * null if the frame hasn't been scanned for them or there is no candidate.
+     */
+    @Override
+    public Region getLastCandidateRegion() {
+        if(!lastPrescreened || lastCrop == null || prescreen.getCandidateCount() == 0) return null;
+
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+
+        for(int i = 0; i < prescreen.getCandidateCount(); i++) {
+            // Candidates are centers of patterns which are 7 modules wide
+            float halfSize = 3.5f * prescreen.getCandidateModuleSize(i);
+            left = Math.min(left, prescreen.getCandidateX(i) - halfSize);
+            top = Math.min(top, prescreen.getCandidateY(i) - halfSize);
+            right = Math.max(right, prescreen.getCandidateX(i) + halfSize);
+            bottom = Math.max(bottom, prescreen.getCandidateY(i) + halfSize);
+        }
+
+        Region region = new Region(
+                lastCrop.getLeft() + (int) left,
+                lastCrop.getTop() + (int) top,
+                (int) Math.ceil(right - left),
+                (int) Math.ceil(bottom - top)
+        );
+
+        return region.intersect(lastCrop);
+    }
+
+    /**
+     * Result points of a cropped or downsampled source are relative to the source, moves them back to coordinates of
+     * the whole frame.
+     */
+    static List<Result> toFrameCoordinates(List<Result> results, Region crop, int scale) {
+        if(crop.getLeft() == 0 && crop.getTop() == 0 && scale == 1) return results;
+
+        for(int i = 0; i < results.size(); i++) {
+            results.set(i, toFrameCoordinates(results.get(i), crop, scale));
+        }
+
+        return results;
+    }
+
+    private static Result toFrameCoordinates(Result result, Region crop, int scale) {
+        ResultPoint[] points = result.getResultPoints();
+
+        if(points == null) return result;
+
+        ResultPoint[] framePoints = new ResultPoint[points.length];
+        for(int i = 0; i < points.length; i++) {
+            if(points[i] == null) continue;
+            framePoints[i] = new ResultPoint(
+                    points[i].getX() * scale + crop.getLeft(),
+                    points[i].getY() * scale + crop.getTop()
+            );
+        }
+
+        Result frameResult = new Result(
+                result.getText(),
+                result.getRawBytes(),
+                framePoints,
+                result.getBarcodeFormat(),
+                result.getTimestamp()
+        );
+        frameResult.putAllMetadata(result.getResultMetadata());
+
+        return frameResult;
+    }
+}
@@ -0,0 +1,194 @@
+package cz.bcx.qrscanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap check of a frame before it's copied and decoded. Rejects frames which are too blurred to decode and frames
+ * which look the same as the last frame in which no code has been found.
+ *
+ * Both metrics are computed from a sparse grid of samples. Sharpness is the mean absolute gradient above the noise
+ * level in the weaker direction, taken from the sharpest tile of the frame, so a small code in an otherwise plain
+ * frame isn't averaged away. Difference is the mean absolute difference of samples from the last failed frame above
+ * the noise level.
+ */
+public class FrameGate {
+    public enum Verdict {
+        ADMIT,
+        BLURRED,
+        UNCHANGED
+    }
+
+    private static final int SAMPLE_STEP = 8; // px
+    private static final int TILES = 4; // per side
+
+    // Gradients and differences up to this level are mostly sensor noise
+    private static final int NOISE_FLOOR = 16;
+
+    // Skipped frames don't get decoded, so a stale verdict is re-checked by decoding a frame once in a while
+    private static final int MAX_CONSECUTIVE_SKIPS = 15;
+
+    private final float minSharpness;
+    private final float minDifference;
+
+    private final float[] tileGradientsX = new float[TILES * TILES];
+    private final float[] tileGradientsY = new float[TILES * TILES];
+    private final int[] tileSamples = new int[TILES * TILES];
+
+    private byte[] samples = new byte[0];
+    private byte[] admittedSamples = new byte[0];
+    private byte[] failedSamples = new byte[0];
+    private int sampleCount = 0;
+    private long admittedSequence = -1;
+    private boolean failedValid = false;
+
+    private int consecutiveSkips = 0;
+    private float lastSharpness = 0;
+    private float lastDifference = 0;
+
+    /**
+     * @param minSharpness - Minimal mean gradient of the sharpest tile, 0 disables the blur check
+     * @param minDifference - Minimal mean difference from the last failed frame, 0 disables the change check
+     */
+    public FrameGate(float minSharpness, float minDifference) {
+        this.minSharpness = minSharpness;
+        this.minDifference = minDifference;
+    }
+
+    public boolean isEnabled() {
+        return minSharpness > 0 || minDifference > 0;
+    }
+
+    /**
+     * Samples the Y plane in the crop and decides whether the frame is worth decoding. The plane starts at the buffer's
+     * position, as in {@link Frame#copyPlane}.
+     * If the frame is decoded in the end, {@link #onAdmitted(long)} has to be called before checking another frame.
+     */
+    public synchronized Verdict check(ByteBuffer plane, int rowStride, int pixelStride, Region crop) {
+        sample(plane, rowStride, pixelStride, crop);
+
+        Verdict verdict = Verdict.ADMIT;
+
+        if(minSharpness > 0 && lastSharpness < minSharpness) {
+            verdict = Verdict.BLURRED;
+        }
+        else if(minDifference > 0 && failedValid && lastDifference < minDifference) {
+            verdict = Verdict.UNCHANGED;
+        }
+
+        if(verdict != Verdict.ADMIT && ++consecutiveSkips <= MAX_CONSECUTIVE_SKIPS) {
+            return verdict;
+        }
+
+        consecutiveSkips = 0;
+        return Verdict.ADMIT;
+    }
+
+    /**
+     * Keeps samples of the last checked frame, which is going to be decoded.
+     * @param sequence - Sequence number of the frame
+     */
+    public synchronized void onAdmitted(long sequence) {
+        byte[] admitted = admittedSamples;
+        admittedSamples = samples;
+        samples = admitted;
+        admittedSequence = sequence;
+    }
+
+    /**
+     * Remembers samples of an admitted frame in which nothing has been found, so the same view isn't decoded again.
+     */
+    public synchronized void onDecodeFinished(long sequence, DecodeStatus status) {
+        if(status != DecodeStatus.NOT_FOUND) {
+            // A code is in the view, following frames are worth decoding even if they don't change
+            failedValid = false;
+            return;
+        }
+
+        if(sequence != admittedSequence) return;
+
+        if(failedSamples.length < sampleCount) {
+            failedSamples = new byte[admittedSamples.length];
+        }
+
+        System.arraycopy(admittedSamples, 0, failedSamples, 0, sampleCount);
+        failedValid = true;
+    }
+
+    /**
+     * @return Sharpness of the last checked frame.
+     */
+    public synchronized float getLastSharpness() {
+        return lastSharpness;
+    }
+
+    /**
+     * @return Difference of the last checked frame from the last failed frame, 0 if there is no failed frame.
+     */
+    public synchronized float getLastDifference() {
+        return lastDifference;
+    }
+
+    private void sample(ByteBuffer plane, int rowStride, int pixelStride, Region crop) {
+        int columns = Math.max(1, (crop.getWidth() - 1) / SAMPLE_STEP);
+        int rows = Math.max(1, (crop.getHeight() - 1) / SAMPLE_STEP);
+        int count = columns * rows;
+
+        // Samples of a differently sized crop can't be compared
+        if(count != sampleCount) {
+            sampleCount = count;
+            failedValid = false;
+
+            if(samples.length < count) {
+                samples = new byte[count];
+                admittedSamples = new byte[count];
+            }
+        }
+
+        for(int i = 0; i < tileSamples.length; i++) {
+            tileGradientsX[i] = 0;
+            tileGradientsY[i] = 0;
+            tileSamples[i] = 0;
+        }
+
+        long difference = 0;
+        int planeStart = plane.position();
+
+        for(int row = 0; row < rows; row++) {
+            int y = crop.getTop() + row * SAMPLE_STEP;
+            int rowOffset = planeStart + y * rowStride;
+            int tileRow = row * TILES / rows * TILES;
+
+            for(int column = 0; column < columns; column++) {
+                int offset = rowOffset + (crop.getLeft() + column * SAMPLE_STEP) * pixelStride;
+
+                int value = plane.get(offset) & 0xff;
+                int right = plane.get(offset + pixelStride) & 0xff;
+                int below = plane.get(offset + rowStride) & 0xff;
+
+                int tile = tileRow + column * TILES / columns;
+                tileGradientsX[tile] += Math.max(0, Math.abs(right - value) - NOISE_FLOOR);
+                tileGradientsY[tile] += Math.max(0, Math.abs(below - value) - NOISE_FLOOR);
+                tileSamples[tile]++;
+
+                int index = row * columns + column;
+                samples[index] = (byte) value;
+
+                if(failedValid) {
+                    difference += Math.max(0, Math.abs(value - (failedSamples[index] & 0xff)) - NOISE_FLOOR);
+                }
+            }
+        }
+
+        float sharpness = 0;
+        for(int i = 0; i < tileSamples.length; i++) {
+            if(tileSamples[i] > 0) {
+                // Motion blurs edges only across the direction of motion, a code has edges in both directions
+                float gradient = 2 * Math.min(tileGradientsX[i], tileGradientsY[i]) / tileSamples[i];
+                sharpness = Math.max(sharpness, gradient);
+            }
+        }
+
+        lastSharpness = sharpness;
+        lastDifference = failedValid ? difference / (float) count : 0;
+    }
+}
@@ -0,0 +1,399 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Result;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Native processing of camera frames: throttling, copying, decoding and filtering of results.
+ *
+ * The pipeline doesn't depend on the camera, frames can come from any source (camera's image reader, recorded or
+ * generated sequences) and time is read from a replaceable {@link Clock}.
+ */
+public class FramePipeline {
+    public interface Listener {
+        /**
+         * Called from a decode worker thread with all codes of a frame which should be reported.
+         * @param timestamp - Timestamp of the frame in which the codes have been found
+         */
+        void onCodesScanned(List<Result> results, long timestamp);
+
+        /**
+         * Called from a decode worker thread with all codes found in a frame, including already reported ones, if
+         * tracking events are enabled. Result points are in frame coordinates.
+         */
+        void onCodesTracked(List<Result> results, long timestamp);
+    }
+
+    public interface Clock {
+        /**
+         * @return Current time of a monotonic clock in nanoseconds.
+         */
+        long nanoTime();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    // Tracked crops grow to multiples of this size, which is a multiple of the coarsest pyramid level's scale too
+    private static final int TRACKED_CROP_ALIGNMENT = 64; // px
+
+    private final Clock clock;
+    private final Listener listener;
+
+    private final DecodeWorkerPool decodeWorkerPool;
+    private final ScanRateGovernor scanRateGovernor;
+    private final ResultCache resultCache;
+    private final FrameGate frameGate;
+    private final CodeTracker codeTracker;
+    private final boolean trackingEvents;
+
+    private volatile Region crop;
+    private volatile ResolutionController resolutionController;
+    private volatile CaptureController captureController;
+    private volatile FrameRecorder frameRecorder;
+    private volatile boolean scanningEnabled = false;
+    private long frameSequence = 0;
+    // Recording of the last frame handed to the decode workers, which is dropped if a newer one comes first
+    private long lastSubmittedRecordId = -1;
+    private int frameWidth = 0;
+    private int frameHeight = 0;
+
+    private final PipelineStats stats = new PipelineStats();
+
+    public FramePipeline(ScannerOptions options, Clock clock, Listener listener) {
+        this(options, null, clock, listener);
+    }
+
+    /**
+     * @param scheduler - Decode scheduler shared with pipelines of other sessions, null to decode on own threads
+     */
+    public FramePipeline(ScannerOptions options, DecodeScheduler scheduler, Clock clock, Listener listener) {
+        this.clock = clock;
+        this.listener = listener;
+
+        this.scanRateGovernor = new ScanRateGovernor(
+                options.getMinScanRate(),
+                options.getMaxScanRate(),
+                options.getScanCooldown() * 1_000_000L,
+                options.getDecodeWorkers()
+        );
+
+        this.resultCache = new ResultCache(options.getDedupCapacity(), options.getDedupTtl() * 1_000_000L);
+        this.frameGate = new FrameGate(options.getMinSharpness(), options.getMinFrameDifference());
+        // Tracking decodes only around the codes already found, which would hide further codes from multi-code mode
+        this.codeTracker = new CodeTracker(
+                options.isMultiCode() ? 0 : options.getTrackingMisses(),
+                options.getTrackingRescanInterval() * 1_000_000L
+        );
+        this.trackingEvents = options.isTrackingEvents();
+
+        this.decodeWorkerPool = new DecodeWorkerPool(options, scheduler, stats, new DecodeWorkerPool.Listener() {
+            @Override
+            public void onDecodeFinished(Frame frame, DecodeStatus status, List<Result> results,
+                                         Region candidateRegion, long decodeTime) {
+                stats.increment(PipelineStats.Counter.DECODE_ATTEMPTS);
+                finishRecord(frame.getRecordId(), FrameRecorder.Outcome.forStatus(status));
+                frameGate.onDecodeFinished(frame.getSequence(), status);
+
+                if(status == DecodeStatus.NOT_FOUND) {
+                    codeTracker.onMissed(frame.getSequence());
+                }
+
+                scanRateGovernor.onDecodeFinished(FramePipeline.this.clock.nanoTime(), status, decodeTime);
+
+                ResolutionController resolutionController = FramePipeline.this.resolutionController;
+                if(resolutionController != null) {
+                    resolutionController.onDecodeFinished(
+                            FramePipeline.this.clock.nanoTime(), frame, status, results, decodeTime
+                    );
+                }
+
+                CaptureController captureController = FramePipeline.this.captureController;
+                if(captureController != null) {
+                    boolean refocused = captureController.onDecodeFinished(
+                            FramePipeline.this.clock.nanoTime(), frame.getWidth(), frame.getHeight(), status,
+                            candidateRegion
+                    );
+                    if(refocused) stats.increment(PipelineStats.Counter.FOCUS_TRIGGERS);
+                }
+            }
+
+            @Override
+            public void onDecodeError(Frame frame, RuntimeException e) {
+                stats.increment(PipelineStats.Counter.DECODE_ERRORS);
+                finishRecord(frame.getRecordId(), FrameRecorder.Outcome.ERROR);
+            }
+
+            @Override
+            public void onCodesDecoded(Frame frame, List<Result> results) {
+                stats.add(PipelineStats.Counter.CODES_FOUND, results.size());
+                codeTracker.onFound(frame.getSequence(), frame.getTimestamp(), results);
+
+                if(trackingEvents) {
+                    FramePipeline.this.listener.onCodesTracked(results, frame.getTimestamp());
+                }
+
+                long now = FramePipeline.this.clock.nanoTime();
+                List<Result> newResults = new ArrayList<>(results.size());
+
+                for(Result result : results) {
+                    // Skip codes which are still in the view and have been already reported
+                    if(resultCache.offer(result, now)) {
+                        newResults.add(result);
+                    }
+                }
+
+                if(newResults.isEmpty()) return;
+
+                stats.add(PipelineStats.Counter.CODES_REPORTED, newResults.size());
+                FramePipeline.this.listener.onCodesScanned(newResults, frame.getTimestamp());
+            }
+        });
+    }
+
+    public void start() {
+        decodeWorkerPool.start();
+    }
+
+    public void stop() {
+        decodeWorkerPool.stop();
+
+        // Frames which were waiting for a decoder won't be decoded
+        FrameRecorder frameRecorder = this.frameRecorder;
+        if(frameRecorder != null) frameRecorder.finishPending(FrameRecorder.Outcome.NOT_DECODED);
+    }
+
+    /**
+     * Frees buffers of pooled frames, they're allocated again by following frames.
+     */
+    public void releaseFrames() {
+        decodeWorkerPool.releaseFrames();
+    }
+
+    /**
+     * Waits until all submitted frames are decoded.
+     * @return False if the timeout elapsed first.
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        return decodeWorkerPool.awaitIdle(timeoutMillis);
+    }
+
+    /**
+     * @param crop - Part of frames to decode in frame coordinates, null for whole frames
+     */
+    public void setCrop(Region crop) {
+        this.crop = crop;
+    }
+
+    /**
+     * @param resolutionController - Controller changing the capture size based on decode outcomes, null to keep
+     *                             the size
+     */
+    public void setResolutionController(ResolutionController resolutionController) {
+        this.resolutionController = resolutionController;
+    }
+
+    public ResolutionController getResolutionController() {
+        return resolutionController;
+    }
+
+    /**
+     * @param captureController - Controller of the camera's focus and exposure fed by decode outcomes, null for none
+     */
+    public void setCaptureController(CaptureController captureController) {
+        this.captureController = captureController;
+    }
+
+    public CaptureController getCaptureController() {
+        return captureController;
+    }
+
+    /**
+     * @param frameRecorder - Recorder of frames and their outcomes, null to not record. Frames are recorded only
+     *                      while scanning is enabled.
+     */
+    public void setFrameRecorder(FrameRecorder frameRecorder) {
+        this.frameRecorder = frameRecorder;
+    }
+
+    public FrameRecorder getFrameRecorder() {
+        return frameRecorder;
+    }
+
+    public void setScanningEnabled(boolean scanningEnabled) {
+        this.scanningEnabled = scanningEnabled;
+    }
+
+    /**
+     * Processes the Y plane of a frame. The plane is copied before this method returns, so the frame's image can be
+     * released right after. Frames have to be passed from a single thread.
+     * @return True if the frame has been handed to decode workers.
+     */
+    public boolean onFrame(ByteBuffer plane, int rowStride, int pixelStride, int width, int height, long timestamp) {
+        stats.increment(PipelineStats.Counter.FRAMES_RECEIVED);
+
+        if(!scanningEnabled) return false;
+
+        // Tracked location doesn't apply to frames of a different size
+        if(width != frameWidth || height != frameHeight) {
+            frameWidth = width;
+            frameHeight = height;
+            codeTracker.reset();
+        }
+
+        long recordId = -1;
+        FrameRecorder frameRecorder = this.frameRecorder;
+        if(frameRecorder != null) {
+            recordId = frameRecorder.record(plane, rowStride, pixelStride, width, height, timestamp);
+            if(recordId >= 0) stats.increment(PipelineStats.Counter.FRAMES_RECORDED);
+        }
+
+        Region crop = this.crop;
+        if(crop == null || crop.getRight() > width || crop.getBottom() > height) {
+            crop = Region.full(width, height);
+        }
+
+        // Decode only around the codes found in previous frames while they're being tracked
+        boolean tracked = false;
+        if(codeTracker.isEnabled()) {
+            Region prediction = codeTracker.predict(timestamp, width, height);
+            Region trackedCrop = prediction != null ? prediction.intersect(crop) : null;
+
+            if(trackedCrop != null) {
+                // Predictions change size every frame, aligned sizes repeat, so decoders reuse their matrices
+                crop = trackedCrop.alignSize(TRACKED_CROP_ALIGNMENT, crop);
+                tracked = true;
+            }
+        }
+
+        // Gate goes first, so frames which wouldn't decode don't take the governor's slots
+        if(frameGate.isEnabled()) {
+            long gateStart = System.nanoTime();
+            FrameGate.Verdict verdict = frameGate.check(plane, rowStride, pixelStride, crop);
+            stats.recordSince(PipelineStats.Stage.GATE, gateStart);
+
+            switch (verdict) {
+                case BLURRED:
+                    stats.increment(PipelineStats.Counter.FRAMES_BLURRED);
+                    finishRecord(recordId, FrameRecorder.Outcome.BLURRED);
+                    return false;
+                case UNCHANGED:
+                    stats.increment(PipelineStats.Counter.FRAMES_UNCHANGED);
+                    finishRecord(recordId, FrameRecorder.Outcome.UNCHANGED);
+                    return false;
+            }
+        }
+
+        if(!scanRateGovernor.shouldAdmit(clock.nanoTime())) {
+            stats.increment(PipelineStats.Counter.FRAMES_THROTTLED);
+            finishRecord(recordId, FrameRecorder.Outcome.THROTTLED);
+            return false;
+        }
+
+        if(frameGate.isEnabled()) {
+            frameGate.onAdmitted(frameSequence);
+        }
+
+        long copyStart = System.nanoTime();
+        Frame frame = decodeWorkerPool.obtainFrame(crop.getWidth() * crop.getHeight());
+        frame.copyPlane(plane, rowStride, pixelStride, width, height, crop, frameSequence++, timestamp);
+        frame.setRecordId(recordId);
+        stats.recordSince(PipelineStats.Stage.COPY, copyStart);
+
+        if(decodeWorkerPool.submit(frame)) {
+            stats.increment(PipelineStats.Counter.FRAMES_DROPPED);
+            // The dropped frame is always the previously submitted one, no worker picked it up
+            finishRecord(lastSubmittedRecordId, FrameRecorder.Outcome.DROPPED);
+        }
+        lastSubmittedRecordId = recordId;
+
+        if(tracked) {
+            stats.increment(PipelineStats.Counter.FRAMES_TRACKED);
+        }
+        else if(codeTracker.isEnabled()) {
+            codeTracker.onFullFrame(timestamp);
+        }
+
+        return true;
+    }
+
+    private void finishRecord(long recordId, FrameRecorder.Outcome outcome) {
+        FrameRecorder frameRecorder = this.frameRecorder;
+        if(frameRecorder != null) frameRecorder.finish(recordId, outcome);
+    }
+
+    /**
+     * @return Counters and latencies of all stages, shared with the decode workers.
+     */
+    public PipelineStats getStats() {
+        return stats;
+    }
+
+    public long getFramesReceived() {
+        return stats.get(PipelineStats.Counter.FRAMES_RECEIVED);
+    }
+
+    /**
+     * @return Number of frames rejected by the scan rate governor.
+     */
+    public long getFramesThrottled() {
+        return stats.get(PipelineStats.Counter.FRAMES_THROTTLED);
+    }
+
+    /**
+     * @return Number of frames skipped as too blurred to decode.
+     */
+    public long getFramesBlurred() {
+        return stats.get(PipelineStats.Counter.FRAMES_BLURRED);
+    }
+
+    /**
+     * @return Number of frames skipped as the same view as the last frame without any code.
+     */
+    public long getFramesUnchanged() {
+        return stats.get(PipelineStats.Counter.FRAMES_UNCHANGED);
+    }
+
+    /**
+     * @return Number of frames decoded only in the region predicted by the code tracker.
+     */
+    public long getFramesTracked() {
+        return stats.get(PipelineStats.Counter.FRAMES_TRACKED);
+    }
+
+    /**
+     * @return Number of frames replaced by a newer frame before any decode worker picked them up.
+     */
+    public long getFramesDropped() {
+        return stats.get(PipelineStats.Counter.FRAMES_DROPPED);
+    }
+
+    /**
+     * @return Smoothed time spent decoding a frame in nanoseconds.
+     */
+    public long getAverageDecodeTime() {
+        return scanRateGovernor.getAverageLatency();
+    }
+
+    public long getDecodeAttempts() {
+        return stats.get(PipelineStats.Counter.DECODE_ATTEMPTS);
+    }
+
+    /**
+     * @return Number of decoded codes, including the ones suppressed as repeated.
+     */
+    public long getCodesFound() {
+        return stats.get(PipelineStats.Counter.CODES_FOUND);
+    }
+
+    public long getCodesReported() {
+        return stats.get(PipelineStats.Counter.CODES_REPORTED);
+    }
+}
@@ -0,0 +1,394 @@
+package cz.bcx.qrscanner;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Records Y planes of frames together with their decode outcomes into a {@link FrameRecording} file, so scans which
+ * fail in the field can be replayed and decoded again off the device.
+ *
+ * Planes are copied into a ring of direct buffers allocated for the first frames and written to the file by a writer
+ * thread. Recording never blocks the caller, when every buffer is still waiting for its outcome or for the writer,
+ * the frame is not recorded. Records are written in capture order, each one once its outcome is known.
+ */
+public class FrameRecorder implements Closeable {
+    public enum Outcome {
+        /** Recorded frame which has not been decoded, e.g. because scanning stopped. */
+        NOT_DECODED(0),
+        FOUND(1),
+        PARTIAL(2),
+        NOT_FOUND(3),
+        /** Decoding failed unexpectedly. */
+        ERROR(4),
+        BLURRED(5),
+        UNCHANGED(6),
+        THROTTLED(7),
+        /** Replaced by a newer frame before any decoder picked it up. */
+        DROPPED(8);
+
+        private final int code;
+
+        Outcome(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public static Outcome forCode(int code) {
+            for(Outcome outcome : values()) {
+                if(outcome.code == code) return outcome;
+            }
+
+            return NOT_DECODED;
+        }
+
+        public static Outcome forStatus(DecodeStatus status) {
+            switch (status) {
+                case FOUND:
+                    return FOUND;
+                case PARTIAL:
+                    return PARTIAL;
+                default:
+                    return NOT_FOUND;
+            }
+        }
+    }
+
+    private static final String THREAD_NAME = "cz.bcx.qr_scanner.frame_recorder";
+
+    private enum SlotState {
+        FREE,
+        // Holds a frame waiting for its outcome
+        FILLED,
+        // Waits for the writer
+        READY
+    }
+
+    private static final class Slot {
+        private final ByteBuffer header = ByteBuffer.allocateDirect(FrameRecording.RECORD_HEADER_SIZE);
+        private ByteBuffer data;
+
+        private SlotState state = SlotState.FREE;
+        private long id;
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long minFrameInterval; // ns
+    private final long maxSize; // bytes
+
+    private final Object lock = new Object();
+    private final Slot[] slots;
+    private final Thread writerThread;
+
+    // Owned by the recording thread
+    private long nextId = 0;
+    private long lastRecordedTimestamp = Long.MIN_VALUE;
+    private long reservedSize = FrameRecording.FILE_HEADER_SIZE + FrameRecording.FOOTER_SIZE;
+
+    // Guarded by the lock
+    private boolean closing = false;
+    private boolean closed = false;
+    private boolean full = false;
+    private long overruns = 0;
+
+    // Owned by the writer thread
+    private long[] offsets = new long[64];
+    private int writtenFrames = 0;
+    private long position = FrameRecording.FILE_HEADER_SIZE;
+    private volatile IOException writeError;
+
+    /**
+     * @param ringSize - Number of frames waiting for their outcome or to be written at once
+     * @param maxFrameRate - Maximal number of recorded frames per second, 0 to record every frame
+     * @param maxSize - Maximal size of the file in bytes, recording stops once the next frame wouldn't fit
+     */
+    public FrameRecorder(File file, int ringSize, int maxFrameRate, long maxSize) throws IOException {
+        if(ringSize < 1) {
+            throw new IllegalArgumentException("Frame recorder needs at least one buffer.");
+        }
+
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+        this.minFrameInterval = maxFrameRate > 0 ? 1_000_000_000L / maxFrameRate : 0;
+        this.maxSize = maxSize;
+
+        this.slots = new Slot[ringSize];
+        for(int i = 0; i < ringSize; i++) {
+            slots[i] = new Slot();
+        }
+
+        try {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(FrameRecording.FILE_HEADER_SIZE);
+            header.putInt(FrameRecording.FILE_MAGIC).putInt(FrameRecording.VERSION).putLong(0);
+            header.flip();
+            writeFully(header, 0);
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, THREAD_NAME);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Copies the plane of a frame unless the frame is skipped by sampling or there is no free buffer. Frames have to
+     * be recorded from a single thread, each recorded frame has to be finished by {@link #finish(long, Outcome)} or
+     * {@link #finishPending(Outcome)}.
+     * @param rowStride - Distance between the starts of two consecutive rows in bytes
+     * @param pixelStride - Distance between two consecutive pixels of a row in bytes
+     * @return ID of the recorded frame, -1 if it has not been recorded.
+     */
+    public long record(ByteBuffer plane, int rowStride, int pixelStride, int width, int height, long timestamp) {
+        // Timestamps going back (e.g. of a reopened camera) start sampling over
+        long sinceRecorded = timestamp - lastRecordedTimestamp;
+        if(minFrameInterval > 0 && lastRecordedTimestamp != Long.MIN_VALUE &&
+                sinceRecorded >= 0 && sinceRecorded < minFrameInterval) {
+            return -1;
+        }
+
+        long id = nextId;
+        Slot slot = slots[(int) (id % slots.length)];
+        int dataLength = width * height;
+        long recordSize = FrameRecording.RECORD_HEADER_SIZE + dataLength + FrameRecording.INDEX_ENTRY_SIZE;
+
+        synchronized (lock) {
+            if(closing || full) return -1;
+
+            if(reservedSize + recordSize > maxSize) {
+                full = true;
+                return -1;
+            }
+
+            if(slot.state != SlotState.FREE) {
+                overruns++;
+                return -1;
+            }
+        }
+
+        // The slot is free, so the writer doesn't touch it until it's filled
+        if(slot.data == null || slot.data.capacity() < dataLength) {
+            slot.data = ByteBuffer.allocateDirect(dataLength);
+        }
+        copyPlane(plane, rowStride, pixelStride, width, height, slot.data);
+
+        slot.header.clear();
+        slot.header.putInt(FrameRecording.RECORD_MAGIC)
+                .putLong(id)
+                .putLong(timestamp)
+                .putInt(width)
+                .putInt(height)
+                .putInt(rowStride)
+                .putInt(pixelStride)
+                .putInt(Outcome.NOT_DECODED.getCode())
+                .putInt(dataLength);
+
+        synchronized (lock) {
+            slot.id = id;
+            slot.state = SlotState.FILLED;
+        }
+
+        nextId++;
+        lastRecordedTimestamp = timestamp;
+        reservedSize += recordSize;
+
+        return id;
+    }
+
+    /**
+     * Copies the plane tightly packed, the recording keeps the original strides only as metadata.
+     */
+    private static void copyPlane(ByteBuffer plane, int rowStride, int pixelStride, int width, int height,
+                                  ByteBuffer data) {
+        data.clear();
+        ByteBuffer source = plane.duplicate();
+        int start = source.position();
+
+        for(int y = 0; y < height; y++) {
+            int rowStart = start + y * rowStride;
+
+            if(pixelStride == 1) {
+                source.limit(rowStart + width).position(rowStart);
+                data.put(source);
+                source.limit(source.capacity());
+            }
+            else {
+                for(int x = 0; x < width; x++) {
+                    data.put(source.get(rowStart + x * pixelStride));
+                }
+            }
+        }
+
+        data.flip();
+    }
+
+    /**
+     * Sets the outcome of a recorded frame, which lets the writer write it.
+     * @param id - ID returned by {@link #record}, negative IDs are ignored
+     */
+    public void finish(long id, Outcome outcome) {
+        if(id < 0) return;
+
+        synchronized (lock) {
+            Slot slot = slots[(int) (id % slots.length)];
+            if(slot.state != SlotState.FILLED || slot.id != id) return;
+
+            setOutcome(slot, outcome);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Finishes all frames still waiting for their outcome, e.g. frames which were waiting for a decoder when scanning
+     * stopped.
+     */
+    public void finishPending(Outcome outcome) {
+        synchronized (lock) {
+            for(Slot slot : slots) {
+                if(slot.state == SlotState.FILLED) setOutcome(slot, outcome);
+            }
+
+            lock.notifyAll();
+        }
+    }
+
+    private static void setOutcome(Slot slot, Outcome outcome) {
+        slot.header.putInt(FrameRecording.RECORD_OUTCOME_OFFSET, outcome.getCode());
+        slot.state = SlotState.READY;
+    }
+
+    private void runWriter() {
+        int index = 0;
+
+        while(true) {
+            Slot slot = slots[index];
+
+            synchronized (lock) {
+                while(slot.state != SlotState.READY) {
+                    if(closing && slot.state == SlotState.FREE) return;
+
+                    if(closing) {
+                        setOutcome(slot, Outcome.NOT_DECODED);
+                        break;
+                    }
+
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+
+            try {
+                if(writeError == null) write(slot);
+            } catch (IOException e) {
+                e.printStackTrace();
+                writeError = e;
+            }
+
+            synchronized (lock) {
+                slot.state = SlotState.FREE;
+                if(writeError != null) closing = true;
+            }
+
+            index = (index + 1) % slots.length;
+        }
+    }
+
+    private void write(Slot slot) throws IOException {
+        ByteBuffer header = slot.header.duplicate();
+        header.clear();
+        ByteBuffer data = slot.data.duplicate();
+
+        long recordStart = position;
+        writeFully(header, position);
+        writeFully(data, position + FrameRecording.RECORD_HEADER_SIZE);
+        position += FrameRecording.RECORD_HEADER_SIZE + slot.data.limit();
+
+        if(writtenFrames == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[writtenFrames++] = recordStart;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * @return Number of frames not recorded, because all buffers were waiting for their outcome or for the writer.
+     */
+    public long getOverruns() {
+        synchronized (lock) {
+            return overruns;
+        }
+    }
+
+    /**
+     * @return True if recording stopped, because the file reached its maximal size.
+     */
+    public boolean isFull() {
+        synchronized (lock) {
+            return full;
+        }
+    }
+
+    /**
+     * Writes the remaining frames and the index of all frames, then closes the file. Frames still waiting for their
+     * outcome are written as {@link Outcome#NOT_DECODED}.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if(closed) return;
+
+            closed = true;
+            closing = true;
+            lock.notifyAll();
+        }
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if(writeError != null) throw writeError;
+
+            ByteBuffer index = ByteBuffer.allocate(
+                    FrameRecording.INDEX_HEADER_SIZE + writtenFrames * FrameRecording.INDEX_ENTRY_SIZE +
+                    FrameRecording.FOOTER_SIZE
+            );
+            index.putInt(FrameRecording.INDEX_MAGIC).putInt(writtenFrames);
+            for(int i = 0; i < writtenFrames; i++) {
+                index.putLong(offsets[i]);
+            }
+            index.putLong(position).putInt(FrameRecording.FOOTER_MAGIC);
+            index.flip();
+
+            writeFully(index, position);
+            channel.truncate(position + index.limit());
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package cz.bcx.qrscanner;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads frames recorded by {@link FrameRecorder}. Uses only java.nio, so recordings pulled off a device can be read
+ * on any JVM.
+ *
+ * The file starts with a header (magic, version, reserved long), which is followed by records. A record is a header
+ * (magic, id, sensor timestamp, width, height, row stride and pixel stride of the captured plane, outcome code and
+ * data length) and the plane's pixels tightly packed row by row. A closed recording ends with an index of record
+ * offsets and a footer with the index's offset. Recordings which were not closed have no index, their records are
+ * found by walking the record headers. All values are big-endian.
+ */
+public class FrameRecording implements Closeable {
+    static final int FILE_MAGIC = 0x51524652; // "QRFR"
+    static final int RECORD_MAGIC = 0x46524D45; // "FRME"
+    static final int INDEX_MAGIC = 0x494E4458; // "INDX"
+    static final int FOOTER_MAGIC = 0x51454E44; // "QEND"
+    static final int VERSION = 1;
+
+    static final int FILE_HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 44;
+    static final int RECORD_OUTCOME_OFFSET = 36;
+    static final int INDEX_HEADER_SIZE = 8;
+    static final int INDEX_ENTRY_SIZE = 8;
+    static final int FOOTER_SIZE = 12;
+
+    /**
+     * Metadata of a single recorded frame.
+     */
+    public static final class Entry {
+        private final long offset;
+        private final long id;
+        private final long timestamp;
+        private final int width;
+        private final int height;
+        private final int rowStride;
+        private final int pixelStride;
+        private final FrameRecorder.Outcome outcome;
+
+        private Entry(long offset, ByteBuffer header) {
+            this.offset = offset;
+            this.id = header.getLong(4);
+            this.timestamp = header.getLong(12);
+            this.width = header.getInt(20);
+            this.height = header.getInt(24);
+            this.rowStride = header.getInt(28);
+            this.pixelStride = header.getInt(32);
+            this.outcome = FrameRecorder.Outcome.forCode(header.getInt(RECORD_OUTCOME_OFFSET));
+        }
+
+        /**
+         * @return Order of the frame among recorded frames, IDs of frames the recorder skipped are missing.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return Sensor timestamp of the frame in nanoseconds.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return Row stride of the captured plane, recorded pixels are tightly packed with row stride equal to width.
+         */
+        public int getRowStride() {
+            return rowStride;
+        }
+
+        /**
+         * @return Pixel stride of the captured plane, recorded pixels are tightly packed with pixel stride 1.
+         */
+        public int getPixelStride() {
+            return pixelStride;
+        }
+
+        public FrameRecorder.Outcome getOutcome() {
+            return outcome;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final List<Entry> entries;
+    private final boolean indexed;
+
+    private FrameRecording(RandomAccessFile file, List<Entry> entries, boolean indexed) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.entries = Collections.unmodifiableList(entries);
+        this.indexed = indexed;
+    }
+
+    public static FrameRecording open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+
+            ByteBuffer header = read(channel, 0, FILE_HEADER_SIZE);
+            if(header.getInt(0) != FILE_MAGIC) {
+                throw new IOException("Not a frame recording: " + file);
+            }
+            if(header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported frame recording version " + header.getInt(4) + ": " + file);
+            }
+
+            List<Entry> entries = readIndex(channel);
+            boolean indexed = entries != null;
+            if(!indexed) entries = scanRecords(channel);
+
+            return new FrameRecording(randomAccessFile, entries, indexed);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Entries listed in the index, null if the recording has no valid index.
+     */
+    private static List<Entry> readIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if(size < FILE_HEADER_SIZE + INDEX_HEADER_SIZE + FOOTER_SIZE) return null;
+
+        ByteBuffer footer = read(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+        long indexOffset = footer.getLong(0);
+        if(footer.getInt(8) != FOOTER_MAGIC || indexOffset < FILE_HEADER_SIZE || indexOffset > size - FOOTER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer indexHeader = read(channel, indexOffset, INDEX_HEADER_SIZE);
+        int count = indexHeader.getInt(4);
+        if(indexHeader.getInt(0) != INDEX_MAGIC || count < 0 ||
+                indexOffset + INDEX_HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE + FOOTER_SIZE != size) {
+            return null;
+        }
+
+        ByteBuffer offsets = read(channel, indexOffset + INDEX_HEADER_SIZE, count * INDEX_ENTRY_SIZE);
+        List<Entry> entries = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++) {
+            long offset = offsets.getLong(i * INDEX_ENTRY_SIZE);
+            entries.add(new Entry(offset, readRecordHeader(channel, offset)));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Walks record headers up to the end of the file or the first incomplete record.
+     */
+    private static List<Entry> scanRecords(FileChannel channel) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long size = channel.size();
+        long offset = FILE_HEADER_SIZE;
+
+        while(offset + RECORD_HEADER_SIZE <= size) {
+            ByteBuffer header = read(channel, offset, RECORD_HEADER_SIZE);
+            int dataLength = header.getInt(40);
+
+            if(header.getInt(0) != RECORD_MAGIC || dataLength < 0 || offset + RECORD_HEADER_SIZE + dataLength > size) {
+                break;
+            }
+
+            entries.add(new Entry(offset, header));
+            offset += RECORD_HEADER_SIZE + dataLength;
+        }
+
+        return entries;
+    }
+
+    private static ByteBuffer readRecordHeader(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = read(channel, offset, RECORD_HEADER_SIZE);
+
+        if(header.getInt(0) != RECORD_MAGIC) {
+            throw new IOException("Corrupted frame recording, no record at offset " + offset);
+        }
+
+        return header;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if(read < 0) throw new EOFException("Frame recording ends at " + (position + buffer.position()));
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return Recorded frames in capture order.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return False if the recording has not been closed properly, e.g. because the app was killed while recording.
+     * Its frames are still readable up to the last complete one.
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return Pixels of the frame tightly packed, with row stride equal to the frame's width.
+     */
+    public ByteBuffer readPlane(Entry entry) throws IOException {
+        return read(channel, entry.offset + RECORD_HEADER_SIZE, entry.width * entry.height);
+    }
+
+    /**
+     * Reads pixels of the frame into the frame.
+     * @param sequence - Sequence number given to the frame
+     */
+    public void readFrame(Entry entry, Frame frame, long sequence) throws IOException {
+        int length = entry.width * entry.height;
+        ByteBuffer buffer = ByteBuffer.wrap(frame.ensureCapacity(length), 0, length);
+
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, entry.offset + RECORD_HEADER_SIZE + buffer.position());
+            if(read < 0) throw new EOFException("Frame recording ends in frame " + entry.id);
+        }
+
+        frame.set(entry.width, entry.height, null, sequence, entry.timestamp);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,22 @@
+package cz.bcx.qrscanner;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads luminance of image files for {@link BatchDecoder}. Implementations have to be thread safe, files are loaded
+ * by several workers at once.
+ */
+public interface ImageLoader {
+    /**
+     * @return True if the file looks like an image this loader can read, used to pick files of a directory.
+     */
+    boolean canLoad(File file);
+
+    /**
+     * Writes luminance of the whole image into the frame's data and sets its size, see {@link Frame#set}.
+     * @param frame - Frame of the calling worker, reused for all its files
+     * @throws IOException - If the file can't be read or isn't a supported image
+     */
+    void load(File file, Frame frame) throws IOException;
+}
@@ -0,0 +1,119 @@
+package cz.bcx.qrscanner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free and allocation-free histogram of latencies, safe to record from any thread.
+ *
+ * Latencies are kept in microseconds in buckets growing exponentially with four buckets per power of two, so
+ * percentiles are accurate to about 12 %.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 128; // up to about an hour
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong(); // us
+    private final AtomicLong max = new AtomicLong(); // us
+
+    /**
+     * @param latency - Latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long latency) {
+        long micros = Math.max(0, latency / 1000);
+
+        buckets.incrementAndGet(getBucket(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+
+        long currentMax;
+        while(micros > (currentMax = max.get())) {
+            if(max.compareAndSet(currentMax, micros)) break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return Mean latency in microseconds.
+     */
+    public long getMean() {
+        long count = this.count.get();
+        return count == 0 ? 0 : total.get() / count;
+    }
+
+    /**
+     * @return Maximal latency in microseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile - Percentile between 0 and 100
+     * @return Estimated latency in microseconds, the middle of the bucket containing the percentile.
+     */
+    public long getPercentile(double percentile) {
+        long count = this.count.get();
+        if(count == 0) return 0;
+
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += buckets.get(bucket);
+            if(seen >= rank && seen > 0) {
+                return Math.min(max.get(), (getLowerBound(bucket) + getLowerBound(bucket + 1)) / 2);
+            }
+        }
+
+        return max.get();
+    }
+
+    public void reset() {
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            buckets.set(bucket, 0);
+        }
+
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return Count and latencies in microseconds in the form sent to Flutter.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("count", getCount());
+        map.put("mean", getMean());
+        map.put("p50", getPercentile(50));
+        map.put("p90", getPercentile(90));
+        map.put("p99", getPercentile(99));
+        map.put("max", getMax());
+        return map;
+    }
+
+    private static int getBucket(long micros) {
+        if(micros < SUB_BUCKETS) return (int) micros;
+
+        // Position of the highest bit selects the power of two, the next two bits the bucket within it
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+
+        return Math.min(BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + subBucket);
+    }
+
+    private static long getLowerBound(int bucket) {
+        if(bucket < SUB_BUCKETS) return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+    }
+}
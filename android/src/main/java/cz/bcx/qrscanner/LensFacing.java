@@ -0,0 +1,26 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Direction of the camera a scanner session uses, when it doesn't request a camera by its ID.
+ */
+public enum LensFacing {
+    BACK("back"),
+    FRONT("front"),
+    EXTERNAL("external");
+
+    private static final LensFacing FALLBACK_VALUE = LensFacing.BACK;
+
+    private final String serializedName;
+
+    LensFacing(String serializedName) {
+        this.serializedName = serializedName;
+    }
+
+    public static LensFacing getLensFacingForName(String serializedName) {
+        for(LensFacing lensFacing : values()) {
+            if(lensFacing.serializedName.equals(serializedName)) return lensFacing;
+        }
+
+        return FALLBACK_VALUE;
+    }
+}
@@ -0,0 +1,95 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Downsampled copies of a luma image, every level has half the width and height of the previous one.
+ * Level 0 is the original image. Buffers are reused across frames, so an instance must be used by a single thread.
+ */
+public class LumaPyramid {
+    // Smaller images can't hold a decodable code
+    private static final int MIN_LEVEL_SIZE = 64;
+
+    private final byte[][] levels;
+    private final int[] widths;
+    private final int[] heights;
+
+    private int levelCount = 0;
+
+    /**
+     * @param maxLevels - Maximal number of downsampled levels
+     */
+    public LumaPyramid(int maxLevels) {
+        this.levels = new byte[maxLevels + 1][];
+        this.widths = new int[maxLevels + 1];
+        this.heights = new int[maxLevels + 1];
+    }
+
+    /**
+     * Builds downsampled levels of the image. Level 0 references the given data without copying.
+     * @param data - Tightly packed luma image
+     */
+    public void build(byte[] data, int width, int height) {
+        levels[0] = data;
+        widths[0] = width;
+        heights[0] = height;
+        levelCount = 1;
+
+        while(levelCount < levels.length &&
+                widths[levelCount - 1] / 2 >= MIN_LEVEL_SIZE &&
+                heights[levelCount - 1] / 2 >= MIN_LEVEL_SIZE) {
+            downsample(levelCount);
+            levelCount++;
+        }
+    }
+
+    /**
+     * @return Number of levels built for the last image, including level 0.
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    public byte[] getLevel(int level) {
+        return levels[level];
+    }
+
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * 2x2 box filter of the previous level.
+     */
+    private void downsample(int level) {
+        byte[] source = levels[level - 1];
+        int sourceWidth = widths[level - 1];
+
+        int width = sourceWidth / 2;
+        int height = heights[level - 1] / 2;
+
+        byte[] target = levels[level];
+        if(target == null || target.length < width * height) {
+            target = new byte[width * height];
+            levels[level] = target;
+        }
+
+        for(int y = 0; y < height; y++) {
+            int topRow = 2 * y * sourceWidth;
+            int bottomRow = topRow + sourceWidth;
+            int targetRow = y * width;
+
+            for(int x = 0; x < width; x++) {
+                int sum = (source[topRow + 2 * x] & 0xff) + (source[topRow + 2 * x + 1] & 0xff) +
+                        (source[bottomRow + 2 * x] & 0xff) + (source[bottomRow + 2 * x + 1] & 0xff);
+
+                target[targetRow + x] = (byte) ((sum + 2) >> 2);
+            }
+        }
+
+        widths[level] = width;
+        heights[level] = height;
+    }
+}
@@ -0,0 +1,170 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DecoderResult;
+import com.google.zxing.common.DetectorResult;
+import com.google.zxing.multi.qrcode.detector.MultiDetector;
+import com.google.zxing.qrcode.decoder.Decoder;
+import com.google.zxing.qrcode.decoder.QRCodeDecoderMetaData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Finds all QR codes in a binarized frame and decodes their regions in parallel.
+ */
+public class MultiCodeDecoder {
+    private final ExecutorService regionExecutor;
+    private final Map<DecodeHintType, Object> hints;
+    private final int maxCodes;
+    private final float minRegionSize;
+
+    /**
+     * @param regionExecutor - Executor decoding detected regions, null decodes them on the calling thread
+     * @param maxCodes - Maximal number of codes decoded in one frame
+     * @param minRegionSize - Minimal distance between finder patterns of a code in pixels, smaller codes are skipped
+     */
+    public MultiCodeDecoder(ExecutorService regionExecutor, Map<DecodeHintType, Object> hints, int maxCodes, float minRegionSize) {
+        this.regionExecutor = regionExecutor;
+        this.hints = hints;
+        this.maxCodes = maxCodes;
+        this.minRegionSize = minRegionSize;
+    }
+
+    public List<Result> decode(BitMatrix matrix) throws NotFoundException, ChecksumException, FormatException {
+        return decode(matrix, 1);
+    }
+
+    /**
+     * @param scale - Number of frame pixels per matrix pixel, used to check region size of downsampled matrices
+     * @return All decoded codes, never empty.
+     * @throws NotFoundException - There is no code in the matrix
+     * @throws ChecksumException - Codes were found, but none of them could be decoded
+     * @throws FormatException - Codes were found, but none of them could be decoded
+     */
+    public List<Result> decode(BitMatrix matrix, int scale) throws NotFoundException, ChecksumException, FormatException {
+        DetectorResult[] detectorResults = new MultiDetector(matrix).detectMulti(hints);
+
+        final List<DetectorResult> regions = new ArrayList<>(Math.min(detectorResults.length, maxCodes));
+        for(DetectorResult detectorResult : detectorResults) {
+            if(regions.size() >= maxCodes) break;
+            if(getRegionSize(detectorResult.getPoints()) * scale < minRegionSize) continue;
+
+            regions.add(detectorResult);
+        }
+
+        if(regions.isEmpty()) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        List<Result> results = new ArrayList<>(regions.size());
+        Exception failure = null;
+
+        // The calling thread decodes the first region, the rest is decoded in parallel
+        List<Future<Result>> futures = new ArrayList<>(regions.size() - 1);
+        if(regionExecutor != null) {
+            for(int i = 1; i < regions.size(); i++) {
+                final DetectorResult region = regions.get(i);
+                futures.add(regionExecutor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws Exception {
+                        return decodeRegion(region);
+                    }
+                }));
+            }
+        }
+
+        try {
+            for(int i = 0; i < regions.size(); i++) {
+                try {
+                    if(i == 0 || regionExecutor == null) {
+                        results.add(decodeRegion(regions.get(i)));
+                    }
+                    else {
+                        results.add(futures.get(i - 1).get());
+                    }
+                } catch (ChecksumException | FormatException e) {
+                    failure = e;
+                } catch (ExecutionException e) {
+                    failure = getDecodeFailure(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Regions nobody waits for anymore, e.g. after an interrupt or an unexpected error, are not decoded
+            for(Future<Result> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        if(results.isEmpty()) {
+            if(failure instanceof ChecksumException) throw (ChecksumException) failure;
+            if(failure instanceof FormatException) throw (FormatException) failure;
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        return results;
+    }
+
+    /**
+     * @return Checksum or format failure of a region, other causes are rethrown, they're bugs rather than codes which
+     * can't be read.
+     */
+    private static Exception getDecodeFailure(ExecutionException e) {
+        Throwable cause = e.getCause();
+
+        if(cause instanceof ChecksumException || cause instanceof FormatException) return (Exception) cause;
+        if(cause instanceof Error) throw (Error) cause;
+        if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+
+        throw new IllegalStateException("Unexpected failure of a region decode.", cause);
+    }
+
+    private Result decodeRegion(DetectorResult region) throws ChecksumException, FormatException {
+        DecoderResult decoderResult = new Decoder().decode(region.getBits(), hints);
+        ResultPoint[] points = region.getPoints();
+
+        if(decoderResult.getOther() instanceof QRCodeDecoderMetaData) {
+            ((QRCodeDecoderMetaData) decoderResult.getOther()).applyMirroredCorrection(points);
+        }
+
+        Result result = new Result(decoderResult.getText(), decoderResult.getRawBytes(), points, BarcodeFormat.QR_CODE);
+
+        if(decoderResult.getByteSegments() != null) {
+            result.putMetadata(ResultMetadataType.BYTE_SEGMENTS, decoderResult.getByteSegments());
+        }
+
+        if(decoderResult.getECLevel() != null) {
+            result.putMetadata(ResultMetadataType.ERROR_CORRECTION_LEVEL, decoderResult.getECLevel());
+        }
+
+        return result;
+    }
+
+    /**
+     * @return Longest distance between the top left finder pattern and the other two.
+     */
+    private static float getRegionSize(ResultPoint[] points) {
+        if(points.length < 3) return 0;
+
+        // Detector returns bottom left, top left and top right finder pattern
+        return Math.max(
+                ResultPoint.distance(points[0], points[1]),
+                ResultPoint.distance(points[1], points[2])
+        );
+    }
+}
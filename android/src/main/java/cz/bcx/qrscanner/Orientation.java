@@ -0,0 +1,45 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Orientation of a luminance view relative to the captured frame, see {@link YPlaneLuminanceSource#orient}.
+ */
+public enum Orientation {
+    NORMAL("normal", 0, false),
+    /** Light code on dark background. */
+    INVERTED("inverted", 0, true),
+    /** Rotated by 90 degrees counter-clockwise, codes are searched along the frame's columns. */
+    ROTATED("rotated", 1, false),
+    ROTATED_INVERTED("rotatedInverted", 1, true);
+
+    private final String serializedName;
+    private final int quarterTurns;
+    private final boolean inverted;
+
+    Orientation(String serializedName, int quarterTurns, boolean inverted) {
+        this.serializedName = serializedName;
+        this.quarterTurns = quarterTurns;
+        this.inverted = inverted;
+    }
+
+    /**
+     * @return Orientation of given name, null if there is none.
+     */
+    public static Orientation getOrientationForName(String serializedName) {
+        for(Orientation orientation : values()) {
+            if(orientation.serializedName.equals(serializedName)) return orientation;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Number of 90 degree counter-clockwise rotations.
+     */
+    public int getQuarterTurns() {
+        return quarterTurns;
+    }
+
+    public boolean isInverted() {
+        return inverted;
+    }
+}
@@ -0,0 +1,76 @@
+package cz.bcx.qrscanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads binary 8-bit grayscale PGM (P5) images. Files are memory-mapped, pixels are copied straight from the mapped
+ * pages into the frame without any intermediate buffer.
+ */
+public class PgmImageLoader implements ImageLoader {
+    private static final int MAX_HEADER_SIZE = 1024; // bytes
+
+    @Override
+    public boolean canLoad(File file) {
+        return file.getName().toLowerCase().endsWith(".pgm");
+    }
+
+    @Override
+    public void load(File file, Frame frame) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(buffer.remaining() < 2 || buffer.get() != 'P' || buffer.get() != '5') {
+                throw new IOException("Not a binary PGM image: " + file);
+            }
+
+            int width = readHeaderValue(buffer);
+            int height = readHeaderValue(buffer);
+            int maxValue = readHeaderValue(buffer);
+
+            if(width <= 0 || height <= 0 || maxValue <= 0 || maxValue > 255) {
+                throw new IOException("Unsupported PGM header: " + width + "x" + height + ", max value " + maxValue);
+            }
+
+            // A single whitespace separates the header from pixels
+            buffer.get();
+
+            if(buffer.remaining() < (long) width * height) {
+                throw new IOException("Truncated PGM image: " + file);
+            }
+
+            frame.copyPlane(buffer.slice(), width, 1, width, height, null, 0, 0);
+        }
+    }
+
+    private static int readHeaderValue(MappedByteBuffer buffer) throws IOException {
+        int value = 0;
+        boolean digits = false;
+
+        while(buffer.hasRemaining() && buffer.position() < MAX_HEADER_SIZE) {
+            int c = buffer.get(buffer.position());
+
+            if(c == '#' && !digits) {
+                // Comment up to the end of line
+                while(buffer.hasRemaining() && buffer.get() != '\n');
+                continue;
+            }
+
+            if(c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits = true;
+            }
+            else if(digits) {
+                return value;
+            }
+
+            buffer.get();
+        }
+
+        throw new IOException("Malformed PGM header.");
+    }
+}
@@ -0,0 +1,147 @@
+package cz.bcx.qrscanner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of all stages of the scanning pipeline. Recording doesn't allocate or lock, so it
+ * can stay enabled in production.
+ */
+public class PipelineStats {
+    public enum Stage {
+        ACQUIRE("acquire"),
+        GATE("gate"),
+        COPY("copy"),
+        PRESCREEN("prescreen"),
+        BINARIZE("binarize"),
+        DECODE("decode"),
+        RESET("reset"),
+        DELIVERY("delivery"),
+        // From the frame's sensor timestamp to sending its codes to Flutter
+        SENSOR_TO_DELIVERY("sensorToDelivery"),
+        // From resuming the activity to the first frame of the reopened camera
+        RESUME("resume");
+
+        private final String serializedName;
+
+        Stage(String serializedName) {
+            this.serializedName = serializedName;
+        }
+    }
+
+    public enum Counter {
+        FRAMES_RECEIVED("framesReceived"),
+        FRAMES_THROTTLED("framesThrottled"),
+        FRAMES_BLURRED("framesBlurred"),
+        FRAMES_UNCHANGED("framesUnchanged"),
+        FRAMES_DROPPED("framesDropped"),
+        FRAMES_TRACKED("framesTracked"),
+        // Decoded frames in which the prescreen found no finder pattern
+        FRAMES_PRESCREENED("framesPrescreened"),
+        DECODE_ATTEMPTS("decodeAttempts"),
+        DECODE_ERRORS("decodeErrors"),
+        CODES_FOUND("codesFound"),
+        CODES_REPORTED("codesReported"),
+        // Focus scans triggered on located codes which didn't decode
+        FOCUS_TRIGGERS("focusTriggers"),
+        // Frames copied by the frame recorder
+        FRAMES_RECORDED("framesRecorded"),
+        EVENTS_DELIVERED("eventsDelivered");
+
+        private final String serializedName;
+
+        Counter(String serializedName) {
+            this.serializedName = serializedName;
+        }
+    }
+
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+    private volatile FramePipeline.Clock sensorClock = FramePipeline.SYSTEM_CLOCK;
+
+    public PipelineStats() {
+        for(int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @param sensorClock - Clock of frame timestamps
+     */
+    public void setSensorClock(FramePipeline.Clock sensorClock) {
+        this.sensorClock = sensorClock;
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long value) {
+        counters.addAndGet(counter.ordinal(), value);
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    /**
+     * @param latency - Time spent in the stage in nanoseconds
+     */
+    public void record(Stage stage, long latency) {
+        histograms[stage.ordinal()].record(latency);
+    }
+
+    /**
+     * Records time in the stage which started at given time.
+     * @param start - Start of the stage from {@link System#nanoTime()}
+     * @return End of the stage, which is the start of the next one.
+     */
+    public long recordSince(Stage stage, long start) {
+        long now = System.nanoTime();
+        histograms[stage.ordinal()].record(now - start);
+        return now;
+    }
+
+    /**
+     * Records latency from capture of a frame until now.
+     * @param timestamp - Sensor timestamp of the frame
+     */
+    public void recordSensorLatency(long timestamp) {
+        histograms[Stage.SENSOR_TO_DELIVERY.ordinal()].record(sensorClock.nanoTime() - timestamp);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void reset() {
+        for(int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+
+        for(LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * @return All counters and histograms of stages in the form sent to Flutter, latencies in microseconds.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+
+        for(Counter counter : Counter.values()) {
+            map.put(counter.serializedName, get(counter));
+        }
+
+        Map<String, Object> stages = new HashMap<>();
+        for(Stage stage : Stage.values()) {
+            stages.put(stage.serializedName, getHistogram(stage).toMap());
+        }
+        map.put("stages", stages);
+
+        return map;
+    }
+}
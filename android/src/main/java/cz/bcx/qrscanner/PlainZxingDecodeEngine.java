@@ -0,0 +1,79 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stock ZXing: a new hybrid binarizer for every frame and a single QR code reader, no pyramid, prescreen, cascade or
+ * orientation retries. Ignores all options, it's the reference other engines are compared with.
+ */
+public class PlainZxingDecodeEngine implements DecodeEngine {
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public DecodeEngine create(ScannerOptions options) {
+            return new PlainZxingDecodeEngine();
+        }
+    };
+
+    private static final class PlainDecoder implements Decoder {
+        private final QRCodeReader reader = new QRCodeReader();
+        private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        private DecodeStatus lastStatus = DecodeStatus.NOT_FOUND;
+
+        private PlainDecoder() {
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+        }
+
+        @Override
+        public List<Result> decode(Frame frame) {
+            Region crop = frame.getCrop();
+            YPlaneLuminanceSource source = new YPlaneLuminanceSource(
+                    frame.getData(), crop.getWidth(), crop.getHeight()
+            );
+
+            try {
+                List<Result> results = new ArrayList<>(1);
+                results.add(reader.decode(new BinaryBitmap(new HybridBinarizer(source)), hints));
+
+                lastStatus = DecodeStatus.FOUND;
+                return FrameDecoder.toFrameCoordinates(results, crop, 1);
+            } catch (NotFoundException e) {
+                lastStatus = DecodeStatus.NOT_FOUND;
+            } catch (ChecksumException | FormatException e) {
+                lastStatus = DecodeStatus.PARTIAL;
+            } finally {
+                reader.reset();
+            }
+
+            return Collections.emptyList();
+        }
+
+        @Override
+        public DecodeStatus getLastStatus() {
+            return lastStatus;
+        }
+
+        @Override
+        public Region getLastCandidateRegion() {
+            return null;
+        }
+    }
+
+    @Override
+    public Decoder createDecoder(PipelineStats stats) {
+        return new PlainDecoder();
+    }
+}
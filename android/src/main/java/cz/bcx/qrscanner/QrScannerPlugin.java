@@ -10,9 +10,18 @@ import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 
+import com.google.zxing.ResultPoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodChannel;
@@ -27,23 +36,50 @@ import io.flutter.view.FlutterView;
 public class QrScannerPlugin implements MethodCallHandler, PluginRegistry.RequestPermissionsResultListener {
   private static final int CAMERA_REQUEST_ID = 77_1337_77;
 
-  private Camera camera;
+  // Scanner sessions by texture IDs of their previews
+  private final Map<Long, Camera> sessions = new HashMap<>();
+  // Decodes frames of all sessions, so the CPU spent decoding doesn't grow with the number of sessions
+  private DecodeScheduler decodeScheduler;
 
   private Registrar registrar;
   private FlutterView view;
   private Activity activity;
 
   private static MethodChannel methodChannel;
-  private EventChannel eventChannel;
-  private EventChannel.EventSink eventSink;
+  private final EventChannel eventChannel;
+  private final EventDispatcher eventDispatcher;
+  private final Handler mainHandler;
+
+  private BatchDecoder batchDecoder;
+  private final Map<Integer, BatchDecoder.Batch> batches = new ConcurrentHashMap<>();
 
-  private Runnable initializeTask = null;
+  // Initializations waiting for the camera permission
+  private final List<Runnable> initializeTasks = new ArrayList<>();
 
   private QrScannerPlugin(Registrar registrar, FlutterView view, Activity activity) {
     this.registrar = registrar;
     this.view = view;
     this.activity = activity;
 
+    this.mainHandler = new Handler(Looper.getMainLooper());
+    this.eventDispatcher = new EventDispatcher(mainHandler);
+
+    // Events of file decoding are sent without any camera, so the channel exists from the start
+    this.eventChannel = new EventChannel(registrar.messenger(), "cz.bcx.qr_scanner/events");
+    this.eventChannel.setStreamHandler(
+        new EventChannel.StreamHandler() {
+          @Override
+          public void onListen(Object o, EventChannel.EventSink eventSink) {
+            eventDispatcher.setEventSink(eventSink);
+          }
+
+          @Override
+          public void onCancel(Object o) {
+            eventDispatcher.setEventSink(null);
+          }
+        }
+    );
+
     this.registrar.addRequestPermissionsResultListener(this);
 
     this.activity.getApplication().registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
@@ -55,12 +91,21 @@ public class QrScannerPlugin implements MethodCallHandler, PluginRegistry.Reques
 
       @Override
       public void onActivityResumed(Activity activity) {
-        // TODO
+        if(activity == QrScannerPlugin.this.activity) {
+          for(Camera camera : sessions.values()) {
+            camera.onResume();
+          }
+        }
       }
 
       @Override
       public void onActivityPaused(Activity activity) {
-        // TODO
+        // Releases the camera for other apps, decoders and the preview texture are kept for a fast resume
+        if(activity == QrScannerPlugin.this.activity) {
+          for(Camera camera : sessions.values()) {
+            camera.onPause();
+          }
+        }
       }
 
       @Override
@@ -73,7 +118,17 @@ public class QrScannerPlugin implements MethodCallHandler, PluginRegistry.Reques
       @Override
       public void onActivityDestroyed(Activity activity) {
           if(activity == QrScannerPlugin.this.activity) {
-              if(camera != null) camera.dispose();
+              for(Camera camera : sessions.values()) {
+                try {
+                  camera.dispose();
+                } catch (IOException e) {
+                  // Nobody waits for this disposal, the session's listeners get the failure as an error event
+                  Map<String, Object> event = createErrorEvent("Frame recording failed: " + e.getMessage());
+                  event.put("textureId", camera.getTextureId());
+                  eventDispatcher.dispatch(event);
+                }
+              }
+              sessions.clear();
           }
       }
     });
@@ -85,7 +140,10 @@ public class QrScannerPlugin implements MethodCallHandler, PluginRegistry.Reques
   }
 
   /**
-   * Available methods: ["initialize", "startPreview", "stopPreview", "enableScanning", "disableScanning", "dispose"]
+   * Available methods: ["initialize", "startPreview", "stopPreview", "enableScanning", "disableScanning", "getStats",
+   * "resetStats", "decodeFile", "decodeFiles", "cancelDecodeFiles", "dispose"]
+   *
+   * Every "initialize" call opens a new session, methods of a session get its texture ID in the "textureId" argument.
    * @param call - Method call from Flutter
    * @param result - Object to let Flutter know result of the method call.
    */
@@ -101,34 +159,116 @@ public class QrScannerPlugin implements MethodCallHandler, PluginRegistry.Reques
       String quality = (String) arguments.get("previewQuality");
       PreviewQuality previewQuality = PreviewQuality.getPreviewQualityForName(quality);
 
-      onInitialize(previewQuality, result);
+      onInitialize(previewQuality, ScannerOptions.fromArguments(arguments), result);
     }
     else if(call.method.equals("startPreview")) {
-      onStartPreview();
+      Camera camera = getSession(call, result);
+      if(camera == null) return;
+
+      onStartPreview(camera);
       result.success(null);
     }
     else if(call.method.equals("stopPreview")) {
-      onStopPreview();
+      Camera camera = getSession(call, result);
+      if(camera == null) return;
+
+      onStopPreview(camera);
       result.success(null);
 
     }
     else if(call.method.equals("enableScanning")) {
-      onEnableScanning();
+      Camera camera = getSession(call, result);
+      if(camera == null) return;
+
+      onEnableScanning(camera);
       result.success(null);
     }
     else if(call.method.equals("disableScanning")) {
-      onDisableScanning();
+      Camera camera = getSession(call, result);
+      if(camera == null) return;
+
+      onDisableScanning(camera);
       result.success(null);
     }
-    else if(call.method.equals("dispose")) {
-      onDispose();
+    else if(call.method.equals("getStats")) {
+      Camera camera = getSession(call, result);
+      if(camera == null) return;
+
+      result.success(onGetStats(camera));
+    }
+    else if(call.method.equals("resetStats")) {
+      Camera camera = getSession(call, result);
+      if(camera == null) return;
+
+      onResetStats(camera);
       result.success(null);
     }
+    else if(call.method.equals("decodeFile")) {
+      Map<String, Object> arguments = (Map<String, Object>) call.arguments;
+      onDecodeFile((String) arguments.get("path"), ScannerOptions.fromArguments(arguments), result);
+    }
+    else if(call.method.equals("decodeFiles")) {
+      Map<String, Object> arguments = (Map<String, Object>) call.arguments;
+      onDecodeFiles(
+          ((Number) arguments.get("batchId")).intValue(),
+          (List<String>) arguments.get("paths"),
+          (String) arguments.get("directory"),
+          ScannerOptions.fromArguments(arguments),
+          result
+      );
+    }
+    else if(call.method.equals("cancelDecodeFiles")) {
+      BatchDecoder.Batch batch = batches.get(((Number) call.arguments).intValue());
+      if(batch != null) batch.cancel();
+      result.success(null);
+    }
+    else if(call.method.equals("dispose")) {
+      Camera camera = getSession(call, result);
+      if(camera == null) return;
+
+      try {
+        onDispose(camera);
+        result.success(null);
+      } catch (IOException e) {
+        result.error("IOException", "Frame recording failed: " + e.getMessage(), null);
+      }
+    }
     else {
       result.notImplemented();
     }
   }
 
+  /**
+   * Finds the session of the call's "textureId" argument. Calls without it are meant for the only session, as sent
+   * by clients from before sessions were introduced.
+   * @return Session of the call, null if there is none, the result then gets an error.
+   */
+  private Camera getSession(MethodCall call, Result result) {
+    Object textureId = call.arguments instanceof Map ? ((Map<?, ?>) call.arguments).get("textureId") : null;
+
+    Camera camera = null;
+    if(textureId instanceof Number) {
+      camera = sessions.get(((Number) textureId).longValue());
+    }
+    else if(sessions.size() == 1) {
+      camera = sessions.values().iterator().next();
+    }
+
+    if(camera == null) {
+      result.error("unknownSession", "There is no scanner session with texture ID " + textureId + ".", null);
+    }
+
+    return camera;
+  }
+
+  private DecodeScheduler getDecodeScheduler() {
+    if(decodeScheduler == null) {
+      decodeScheduler = new DecodeScheduler(DecodeWorkerPool.getDefaultWorkerCount());
+    }
+
+    return decodeScheduler;
+  }
+
   private boolean hasCameraPermissions() {
     return Build.VERSION.SDK_INT < Build.VERSION_CODES.M ||
             activity.checkSelfPermission(Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
@@ -137,93 +277,144 @@ public class QrScannerPlugin implements MethodCallHandler, PluginRegistry.Reques
   @Override
   public boolean onRequestPermissionsResult(int id, String[] strings, int[] ints) {
     if (id == CAMERA_REQUEST_ID) {
-      initializeTask.run();
+      List<Runnable> tasks = new ArrayList<>(initializeTasks);
+      initializeTasks.clear();
+
+      for(Runnable task : tasks) {
+        task.run();
+      }
       return true;
     }
     return false;
   }
 
-  private void onInitialize(final PreviewQuality previewQuality, final Result result) {
-    if(initializeTask != null) {
-      result.success(null); //TODO - We are waiting for permissions
-      return;
-    }
-
-    initializeTask = new Runnable() {
+  private void onInitialize(final PreviewQuality previewQuality, final ScannerOptions options, final Result result) {
+    Runnable initializeTask = new Runnable() {
       @Override
       public void run() {
-        try {
-          // Initialize eventChannel and eventSink.
-          if(QrScannerPlugin.this.eventChannel == null) {
-            QrScannerPlugin.this.eventChannel = new EventChannel(
-                    registrar.messenger(),
-                    "cz.bcx.qr_scanner/events"
-            );
-
-            QrScannerPlugin.this.eventChannel.setStreamHandler(
-                new EventChannel.StreamHandler() {
-                  @Override
-                  public void onListen(Object o, EventChannel.EventSink eventSink) {
-                    QrScannerPlugin.this.eventSink = eventSink;
-                  }
-
-                  @Override
-                  public void onCancel(Object o) {
-                    QrScannerPlugin.this.eventSink = null;
-                  }
-                }
-            );
-          }
+        // Starts after permissions are granted, waiting for the user isn't part of the startup
+        StartupTimeline startupTimeline = new StartupTimeline(FramePipeline.SYSTEM_CLOCK);
 
+        try {
           CameraManager cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
 
-          Camera camera =  Camera.createCameraInstance(cameraManager, view, previewQuality);
-          camera.openCamera(cameraManager, result, new Camera.CameraStateListener() {
-            @Override
-            public void onCameraDisconnected() {
-              if(eventSink != null) {
-                Map<String, String> event = new HashMap<>();
-                event.put("eventType", "error");
-                event.put("errorMessage", "The camera has been disconnected.");
-                eventSink.success(event);
-              }
-            }
-
-            @Override
-            public void onCameraError(Camera.CameraStateError cameraStateError) {
-              Map<String, String> event = new HashMap<>();
-              event.put("eventType", "error");
-              event.put("errorMessage", cameraStateError.getMessage());
-              eventSink.success(event);
-            }
-
-            @Override
-            public void onCodeScanned(String code) {
-              Map<String, String> event = new HashMap<>();
-              event.put("eventType", "codeScanned");
-              event.put("code", code);
-              eventSink.success(event);
-            }
-          });
-
-          QrScannerPlugin.this.camera = camera;
-
-          initializeTask = null;
+          Camera camera = Camera.createCameraInstance(
+              cameraManager, previewQuality, options, getDecodeScheduler(), startupTimeline
+          );
+          // Events of the session are batched by its own settings
+          SessionListener listener = new SessionListener(eventDispatcher.createSessionDispatcher(
+              options.getEventFlushInterval(), options.getEventBatchSize()
+          ));
+          camera.openCamera(cameraManager, view, result, listener);
+
+          // The texture exists once the camera is being opened, events sent before are not tagged
+          listener.setSession(camera.getTextureId(), camera.getStats());
+          sessions.put(camera.getTextureId(), camera);
         } catch (CameraAccessException e) {
           result.error("CameraAccessException", "Exception raised when initializing qr scanner plugin.", e);
+        } catch (IOException e) {
+          result.error("IOException", "Frame recording couldn't be started: " + e.getMessage(), null);
         }
       }
     };
 
     if(!hasCameraPermissions()) {
-      activity.requestPermissions(new String[] {Manifest.permission.CAMERA}, CAMERA_REQUEST_ID);
+      // A single request covers all initializations waiting for it
+      initializeTasks.add(initializeTask);
+      if(initializeTasks.size() == 1) {
+        activity.requestPermissions(new String[] {Manifest.permission.CAMERA}, CAMERA_REQUEST_ID);
+      }
     }
     else {
       initializeTask.run();
     }
   }
 
-  private void onStartPreview() {
+  /**
+   * Sends events of one session, each tagged by the session's texture ID.
+   */
+  private class SessionListener implements Camera.CameraStateListener {
+    private final EventDispatcher eventDispatcher;
+    private volatile long textureId = -1;
+    private volatile PipelineStats stats;
+
+    private SessionListener(EventDispatcher eventDispatcher) {
+      this.eventDispatcher = eventDispatcher;
+    }
+
+    private void setSession(long textureId, PipelineStats stats) {
+      this.textureId = textureId;
+      this.stats = stats;
+    }
+
+    private Map<String, Object> tag(Map<String, Object> event) {
+      if(textureId >= 0) event.put("textureId", textureId);
+      return event;
+    }
+
+    @Override
+    public void onCameraDisconnected() {
+      eventDispatcher.dispatch(tag(createErrorEvent("The camera has been disconnected.")), stats);
+    }
+
+    @Override
+    public void onCameraError(Camera.CameraStateError cameraStateError) {
+      eventDispatcher.dispatch(tag(createErrorEvent(cameraStateError.getMessage())), stats);
+    }
+
+    @Override
+    public void onCodesScanned(List<com.google.zxing.Result> results, long timestamp) {
+      // Codes found in the same frame are delivered together
+      List<Map<String, Object>> events = new ArrayList<>(results.size());
+      for(com.google.zxing.Result result : results) {
+        events.add(tag(createCodeEvent("codeScanned", result, timestamp)));
+      }
+      eventDispatcher.dispatchAll(events, stats);
+    }
+
+    @Override
+    public void onCodesTracked(List<com.google.zxing.Result> results, long timestamp) {
+      List<Map<String, Object>> events = new ArrayList<>(results.size());
+      for(com.google.zxing.Result result : results) {
+        events.add(tag(createCodeEvent("codeTracked", result, timestamp)));
+      }
+      eventDispatcher.dispatchAll(events, stats);
+    }
+  }
+
+  private static Map<String, Object> createErrorEvent(String message) {
+    Map<String, Object> event = new HashMap<>();
+    event.put("eventType", "error");
+    event.put("errorMessage", message);
+    return event;
+  }
+
+  /**
+   * Raw bytes are sent as Uint8List and corner points as Float64List [x0, y0, x1, y1, ...] in capture coordinates.
+   */
+  private static Map<String, Object> createCodeEvent(String eventType, com.google.zxing.Result result, long timestamp) {
+    Map<String, Object> event = new HashMap<>();
+    event.put("eventType", eventType);
+    event.put("code", result.getText());
+    event.put("format", result.getBarcodeFormat().name());
+    event.put("rawBytes", result.getRawBytes());
+    event.put("timestamp", timestamp);
+
+    ResultPoint[] resultPoints = result.getResultPoints();
+    if(resultPoints != null) {
+      double[] points = new double[resultPoints.length * 2];
+      for(int i = 0; i < resultPoints.length; i++) {
+        if(resultPoints[i] == null) continue;
+        points[i * 2] = resultPoints[i].getX();
+        points[i * 2 + 1] = resultPoints[i].getY();
+      }
+      event.put("points", points);
+    }
+
+    return event;
+  }
+
+  private void onStartPreview(Camera camera) {
     // TODO - Error Handling
     try {
       camera.startPreview();
@@ -232,7 +423,7 @@ public class QrScannerPlugin implements MethodCallHandler, PluginRegistry.Reques
     }
   }
 
-  private void onStopPreview() {
+  private void onStopPreview(Camera camera) {
     // TODO - Error Handling
     try {
       camera.stopPreview();
@@ -241,18 +432,145 @@ public class QrScannerPlugin implements MethodCallHandler, PluginRegistry.Reques
     }
   }
 
-  private void onEnableScanning() {
-    // TODO - Error Handling
+  private void onEnableScanning(Camera camera) {
     camera.enableScanning();
   }
 
-  private void onDisableScanning() {
-    // TODO - Error Handling
+  private void onDisableScanning(Camera camera) {
     camera.disableScanning();
   }
 
-  private void onDispose() {
-    // TODO - Error handling
+  private Map<String, Object> onGetStats(Camera camera) {
+    Map<String, Object> stats = camera.getStats().toMap();
+    stats.put("startup", camera.getStartupTimeline().toMap());
+    return stats;
+  }
+
+  private void onResetStats(Camera camera) {
+    camera.getStats().reset();
+  }
+
+  private BatchDecoder getBatchDecoder() {
+    if(batchDecoder == null) {
+      batchDecoder = new BatchDecoder(new BitmapImageLoader(), DecodeWorkerPool.getDefaultWorkerCount());
+    }
+
+    return batchDecoder;
+  }
+
+  /**
+   * Decodes a single file on a file decoder thread, the result gets a list of code maps.
+   */
+  private void onDecodeFile(final String path, final ScannerOptions options, final Result result) {
+    final List<File> files = new ArrayList<>(1);
+    files.add(new File(path));
+
+    getBatchDecoder().decode(files, options, new BatchDecoder.Listener() {
+      @Override
+      public void onFileDecoded(int index, File file, List<com.google.zxing.Result> results) {
+        final List<Map<String, Object>> codes = createFileCodes(results);
+
+        mainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            result.success(codes);
+          }
+        });
+      }
+
+      @Override
+      public void onFileFailed(int index, File file, final Exception e) {
+        mainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            result.error("decodeFailed", e.getMessage(), null);
+          }
+        });
+      }
+
+      @Override
+      public void onBatchFinished(int decoded, int failed, boolean cancelled) {}
+    });
+  }
+
+  /**
+   * Decodes files in the background. Results are streamed as "fileDecoded" and "fileFailed" events tagged by the
+   * batch ID, a "batchFinished" event closes the batch.
+   * @param paths - Files to decode, or null to decode images of the directory
+   */
+  private void onDecodeFiles(final int batchId, List<String> paths, String directory, ScannerOptions options, Result result) {
+    List<File> files = new ArrayList<>();
+
+    if(paths != null) {
+      for(String path : paths) {
+        files.add(new File(path));
+      }
+    }
+    else if(directory != null) {
+      try {
+        files = getBatchDecoder().listImages(new File(directory));
+      } catch (IOException e) {
+        result.error("IOException", e.getMessage(), null);
+        return;
+      }
+    }
+
+    // Events may come before the result, Dart side listens by the batch ID it has chosen
+    result.success(files.size());
+
+    BatchDecoder.Batch batch = getBatchDecoder().decode(files, options, new BatchDecoder.Listener() {
+      @Override
+      public void onFileDecoded(int index, File file, List<com.google.zxing.Result> results) {
+        Map<String, Object> event = createFileEvent("fileDecoded", batchId, index, file);
+        event.put("codes", createFileCodes(results));
+        eventDispatcher.dispatch(event);
+      }
+
+      @Override
+      public void onFileFailed(int index, File file, Exception e) {
+        Map<String, Object> event = createFileEvent("fileFailed", batchId, index, file);
+        event.put("errorMessage", e.getMessage());
+        eventDispatcher.dispatch(event);
+      }
+
+      @Override
+      public void onBatchFinished(int decoded, int failed, boolean cancelled) {
+        batches.remove(batchId);
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("eventType", "batchFinished");
+        event.put("batchId", batchId);
+        event.put("decoded", decoded);
+        event.put("failed", failed);
+        event.put("cancelled", cancelled);
+        eventDispatcher.dispatch(event);
+      }
+    });
+
+    // Small batches may be over before they're registered
+    batches.put(batchId, batch);
+    if(batch.isFinished()) batches.remove(batchId);
+  }
+
+  private static Map<String, Object> createFileEvent(String eventType, int batchId, int index, File file) {
+    Map<String, Object> event = new HashMap<>();
+    event.put("eventType", eventType);
+    event.put("batchId", batchId);
+    event.put("index", index);
+    event.put("path", file.getPath());
+    return event;
+  }
+
+  private static List<Map<String, Object>> createFileCodes(List<com.google.zxing.Result> results) {
+    List<Map<String, Object>> codes = new ArrayList<>(results.size());
+    for(com.google.zxing.Result result : results) {
+      codes.add(createCodeEvent("fileCode", result, 0));
+    }
+    return codes;
+  }
+
+  private void onDispose(Camera camera) throws IOException {
+    sessions.remove(camera.getTextureId());
     camera.dispose();
   }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Rectangular area of a frame in pixels.
+ */
+public final class Region {
+    private final int left;
+    private final int top;
+    private final int width;
+    private final int height;
+
+    public Region(int left, int top, int width, int height) {
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+    }
+
+    public static Region full(int width, int height) {
+        return new Region(0, 0, width, height);
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRight() {
+        return left + width;
+    }
+
+    public int getBottom() {
+        return top + height;
+    }
+
+    /**
+     * @return Common part of both regions, null if they don't overlap.
+     */
+    public Region intersect(Region other) {
+        int left = Math.max(this.left, other.left);
+        int top = Math.max(this.top, other.top);
+        int right = Math.min(getRight(), other.getRight());
+        int bottom = Math.min(getBottom(), other.getBottom());
+
+        if(right <= left || bottom <= top) return null;
+
+        return new Region(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * Grows the region around its center to a multiple of the step in both dimensions, moved to stay within bounds.
+     * A dimension which doesn't fit the bounds that way takes the bounds' one.
+     * @param bounds - Region this region lies in
+     */
+    public Region alignSize(int step, Region bounds) {
+        int alignedWidth = Math.min(bounds.width, (width + step - 1) / step * step);
+        int alignedHeight = Math.min(bounds.height, (height + step - 1) / step * step);
+
+        int alignedLeft = left - (alignedWidth - width) / 2;
+        alignedLeft = Math.max(bounds.left, Math.min(bounds.getRight() - alignedWidth, alignedLeft));
+        int alignedTop = top - (alignedHeight - height) / 2;
+        alignedTop = Math.max(bounds.top, Math.min(bounds.getBottom() - alignedHeight, alignedTop));
+
+        return new Region(alignedLeft, alignedTop, alignedWidth, alignedHeight);
+    }
+
+    public boolean isFull(int frameWidth, int frameHeight) {
+        return left == 0 && top == 0 && width == frameWidth && height == frameHeight;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof Region)) return false;
+
+        Region region = (Region) o;
+        return left == region.left && top == region.top && width == region.width && height == region.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((left * 31 + top) * 31 + width) * 31 + height;
+    }
+
+    @Override
+    public String toString() {
+        return "Region(" + left + ", " + top + ", " + width + "x" + height + ")";
+    }
+}
@@ -0,0 +1,123 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.List;
+
+/**
+ * Switches the capture size while scanning, as decided by a {@link ResolutionPolicy}.
+ *
+ * Frames captured before a switch keep being decoded for a while after it, their outcomes are ignored.
+ */
+public class ResolutionController {
+    public interface Target {
+        /**
+         * Called from a decode worker thread, the capture size should be changed asynchronously. The target calls
+         * {@link #onSwitchFailed(long)} if the size can't be used and {@link #onSwitchSkipped(long, int, int)} if it
+         * doesn't switch, e.g. because it isn't capturing right now.
+         */
+        void switchCaptureSize(int width, int height);
+    }
+
+    private final int[] widths;
+    private final int[] heights;
+    private final ResolutionPolicy policy;
+    private final Target target;
+
+    private int level;
+    private boolean enabled = true;
+    private int previousLevel;
+
+    /**
+     * @param widths - Widths of supported capture sizes ordered from the smallest size
+     * @param heights - Heights of supported capture sizes in the same order
+     * @param level - Level of the size used when scanning starts
+     */
+    public ResolutionController(int[] widths, int[] heights, int level, ResolutionPolicy policy, Target target) {
+        if(widths.length != heights.length || level < 0 || level >= widths.length) {
+            throw new IllegalArgumentException("Invalid capture sizes.");
+        }
+
+        this.widths = widths;
+        this.heights = heights;
+        this.level = level;
+        this.previousLevel = level;
+        this.policy = policy;
+        this.target = target;
+    }
+
+    public void onDecodeFinished(long now, Frame frame, DecodeStatus status, List<Result> results, long decodeTime) {
+        int newLevel;
+
+        synchronized (this) {
+            if(!enabled || frame.getWidth() != widths[level] || frame.getHeight() != heights[level]) return;
+
+            float codeSize = 0;
+            for(Result result : results) {
+                codeSize = Math.max(codeSize, getCodeSize(result));
+            }
+            codeSize /= Math.min(frame.getWidth(), frame.getHeight());
+
+            newLevel = policy.onDecodeFinished(now, level, widths.length, status, decodeTime, codeSize);
+            newLevel = Math.max(0, Math.min(widths.length - 1, newLevel));
+
+            if(newLevel == level) return;
+
+            previousLevel = level;
+            level = newLevel;
+            policy.onLevelChanged(now, level);
+        }
+
+        target.switchCaptureSize(widths[newLevel], heights[newLevel]);
+    }
+
+    /**
+     * Returns to the previous size and stops switching, the target can't change its capture size.
+     */
+    public synchronized void onSwitchFailed(long now) {
+        level = previousLevel;
+        enabled = false;
+        policy.onLevelChanged(now, level);
+    }
+
+    /**
+     * Keeps the size the target still captures after a switch it didn't do, switching goes on from that size.
+     * Stops switching if the size isn't one of the supported sizes.
+     */
+    public synchronized void onSwitchSkipped(long now, int width, int height) {
+        for(int i = 0; i < widths.length; i++) {
+            if(widths[i] == width && heights[i] == height) {
+                if(level != i) {
+                    level = i;
+                    policy.onLevelChanged(now, level);
+                }
+                return;
+            }
+        }
+
+        onSwitchFailed(now);
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    public synchronized int getWidth() {
+        return widths[level];
+    }
+
+    public synchronized int getHeight() {
+        return heights[level];
+    }
+
+    /**
+     * @return Longest distance between the top left finder pattern and the other two.
+     */
+    private static float getCodeSize(Result result) {
+        ResultPoint[] points = result.getResultPoints();
+        if(points == null || points.length < 3 || points[0] == null || points[1] == null || points[2] == null) return 0;
+
+        return Math.max(ResultPoint.distance(points[0], points[1]), ResultPoint.distance(points[1], points[2]));
+    }
+}
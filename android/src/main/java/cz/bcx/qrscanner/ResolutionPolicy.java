@@ -0,0 +1,21 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Decides which of the supported capture sizes should be used, based on outcomes of decoded frames.
+ * Sizes are indexed by level, level 0 is the smallest size.
+ */
+public interface ResolutionPolicy {
+    /**
+     * Called from a decode worker thread after every decode attempt of a frame captured at the current size.
+     * @param now - Current time in nanoseconds of a monotonic clock
+     * @param decodeTime - Time spent decoding the frame in nanoseconds
+     * @param codeSize - Size of the largest found code relative to the shorter side of the frame, 0 if none was found
+     * @return Level which should be used, the current level to keep the size.
+     */
+    int onDecodeFinished(long now, int level, int levelCount, DecodeStatus status, long decodeTime, float codeSize);
+
+    /**
+     * Called when the capture size has been changed, statistics gathered at the previous size no longer apply.
+     */
+    void onLevelChanged(long now, int level);
+}
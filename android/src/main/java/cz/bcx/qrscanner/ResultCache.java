@@ -0,0 +1,121 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of recently reported codes used to suppress repeated scans of the same code.
+ *
+ * Codes are keyed by their raw bytes and format. An entry expires when its code has not been seen for the TTL,
+ * so a code held in front of the camera is reported only once. When the cache is full, the least recently seen
+ * code is evicted. All times are in nanoseconds of a monotonic clock.
+ */
+public class ResultCache {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int capacity;
+    private final long ttl;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private long suppressedCount = 0;
+
+    /**
+     * @param capacity - Maximal number of remembered codes, 0 disables the cache
+     * @param ttl - Time in nanoseconds after which a code which hasn't been seen is reported again
+     */
+    public ResultCache(final int capacity, long ttl) {
+        this.capacity = capacity;
+        this.ttl = ttl;
+
+        // Access ordered map evicts the least recently seen code first
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Records a sighting of the code.
+     * @return True if the code should be reported, false if it has been reported recently and is still visible.
+     */
+    public synchronized boolean offer(Result result, long now) {
+        if(capacity <= 0 || ttl <= 0) return true;
+
+        Key key = new Key(result);
+        Entry entry = entries.get(key);
+
+        if(entry != null && now - entry.lastSeen < ttl) {
+            entry.lastSeen = now;
+            entry.repeats++;
+            suppressedCount++;
+            return false;
+        }
+
+        if(entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+
+        entry.lastSeen = now;
+        entry.repeats = 0;
+        return true;
+    }
+
+    /**
+     * @return How many times the code has been seen since it was last reported, 0 if it is not in the cache.
+     */
+    public synchronized int getRepeats(Result result) {
+        Entry entry = entries.get(new Key(result));
+        return entry != null ? entry.repeats : 0;
+    }
+
+    /**
+     * @return Total number of suppressed repeated scans.
+     */
+    public synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        long lastSeen;
+        int repeats;
+    }
+
+    private static final class Key {
+        private final byte[] bytes;
+        private final BarcodeFormat format;
+        private final int hash;
+
+        Key(Result result) {
+            // Some results don't carry raw bytes, fall back to the decoded text
+            this.bytes = result.getRawBytes() != null ? result.getRawBytes() : result.getText().getBytes(UTF_8);
+            this.format = result.getBarcodeFormat();
+            this.hash = 31 * Arrays.hashCode(bytes) + (format != null ? format.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return format == key.format && Arrays.equals(bytes, key.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
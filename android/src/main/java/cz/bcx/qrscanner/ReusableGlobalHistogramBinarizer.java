@@ -0,0 +1,153 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * ZXing's {@link com.google.zxing.common.GlobalHistogramBinarizer} writing into buffers of a {@link DecodeContext}
+ * instead of allocating them for every frame. Produces the same black matrix as the original.
+ */
+public class ReusableGlobalHistogramBinarizer extends Binarizer {
+    private static final int LUMINANCE_BITS = 5;
+    private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+    static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+
+    protected final DecodeContext context;
+
+    public ReusableGlobalHistogramBinarizer(LuminanceSource source, DecodeContext context) {
+        super(source);
+        this.context = context;
+    }
+
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+
+        if(row == null || row.getSize() < width) {
+            row = new BitArray(width);
+        }
+        else {
+            row.clear();
+        }
+
+        byte[] luminances = source.getRow(y, context.obtainLuminanceRow(width));
+        int[] buckets = context.obtainBuckets();
+
+        for(int x = 0; x < width; x++) {
+            buckets[(luminances[x] & 0xff) >> LUMINANCE_SHIFT]++;
+        }
+
+        int blackPoint = estimateBlackPoint(buckets);
+
+        // Simple -1 4 -1 sharpening of the row
+        int left = luminances[0] & 0xff;
+        int center = luminances[1] & 0xff;
+        for(int x = 1; x < width - 1; x++) {
+            int right = luminances[x + 1] & 0xff;
+            if(((center * 4) - left - right) / 2 < blackPoint) {
+                row.set(x);
+            }
+            left = center;
+            center = right;
+        }
+
+        return row;
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        // Histogram of the middle three fifths of four rows is enough to find the black point
+        int[] buckets = context.obtainBuckets();
+        byte[] row = context.obtainLuminanceRow(width);
+        for(int y = 1; y < 5; y++) {
+            byte[] luminances = source.getRow(height * y / 5, row);
+            int right = (width * 4) / 5;
+            for(int x = width / 5; x < right; x++) {
+                buckets[(luminances[x] & 0xff) >> LUMINANCE_SHIFT]++;
+            }
+        }
+
+        int blackPoint = estimateBlackPoint(buckets);
+
+        // The matrix is obtained only after the black point, a frame without contrast doesn't touch it at all
+        BitMatrix matrix = context.obtainMatrix(width, height);
+        byte[] luminances = source.getMatrix();
+        for(int y = 0; y < height; y++) {
+            int offset = y * width;
+            for(int x = 0; x < width; x++) {
+                if((luminances[offset + x] & 0xff) < blackPoint) {
+                    matrix.set(x, y);
+                }
+            }
+        }
+
+        return matrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new ReusableGlobalHistogramBinarizer(source, context);
+    }
+
+    private static int estimateBlackPoint(int[] buckets) throws NotFoundException {
+        // Find the tallest peak in the histogram
+        int numBuckets = buckets.length;
+        int maxBucketCount = 0;
+        int firstPeak = 0;
+        int firstPeakSize = 0;
+        for(int x = 0; x < numBuckets; x++) {
+            if(buckets[x] > firstPeakSize) {
+                firstPeak = x;
+                firstPeakSize = buckets[x];
+            }
+            if(buckets[x] > maxBucketCount) {
+                maxBucketCount = buckets[x];
+            }
+        }
+
+        // Find the second-tallest peak which is somewhat far from the tallest peak
+        int secondPeak = 0;
+        int secondPeakScore = 0;
+        for(int x = 0; x < numBuckets; x++) {
+            int distanceToBiggest = x - firstPeak;
+            int score = buckets[x] * distanceToBiggest * distanceToBiggest;
+            if(score > secondPeakScore) {
+                secondPeak = x;
+                secondPeakScore = score;
+            }
+        }
+
+        if(firstPeak > secondPeak) {
+            int temp = firstPeak;
+            firstPeak = secondPeak;
+            secondPeak = temp;
+        }
+
+        // Peaks too close to each other mean there is too little contrast for a code
+        if(secondPeak - firstPeak <= numBuckets / 16) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        // Find the valley between the peaks, biased towards the white peak
+        int bestValley = secondPeak - 1;
+        int bestValleyScore = -1;
+        for(int x = secondPeak - 1; x > firstPeak; x--) {
+            int fromFirst = x - firstPeak;
+            int score = fromFirst * fromFirst * (secondPeak - x) * (maxBucketCount - buckets[x]);
+            if(score > bestValleyScore) {
+                bestValley = x;
+                bestValleyScore = score;
+            }
+        }
+
+        return bestValley << LUMINANCE_SHIFT;
+    }
+}
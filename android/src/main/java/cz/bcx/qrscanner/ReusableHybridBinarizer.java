@@ -0,0 +1,155 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * ZXing's {@link com.google.zxing.common.HybridBinarizer} writing into buffers of a {@link DecodeContext} instead of
+ * allocating them for every frame. Block thresholds are kept in a single flat array instead of an array per block
+ * row. Produces the same black matrix as the original.
+ */
+public class ReusableHybridBinarizer extends ReusableGlobalHistogramBinarizer {
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    private BitMatrix matrix;
+
+    public ReusableHybridBinarizer(LuminanceSource source, DecodeContext context) {
+        super(source, context);
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        if(matrix != null) return matrix;
+
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        // Too small for blocks, the global histogram is used instead
+        if(width < MINIMUM_DIMENSION || height < MINIMUM_DIMENSION) {
+            matrix = super.getBlackMatrix();
+            return matrix;
+        }
+
+        byte[] luminances = source.getMatrix();
+
+        int subWidth = width >> BLOCK_SIZE_POWER;
+        if((width & BLOCK_SIZE_MASK) != 0) subWidth++;
+        int subHeight = height >> BLOCK_SIZE_POWER;
+        if((height & BLOCK_SIZE_MASK) != 0) subHeight++;
+
+        int[] blackPoints = context.obtainBlackPoints(subWidth * subHeight);
+        calculateBlackPoints(luminances, subWidth, subHeight, width, height, blackPoints);
+
+        BitMatrix newMatrix = context.obtainMatrix(width, height);
+        calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints, newMatrix);
+
+        matrix = newMatrix;
+        return matrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new ReusableHybridBinarizer(source, context);
+    }
+
+    /**
+     * Thresholds every block by the average black point of the 5x5 blocks around it.
+     */
+    private static void calculateThresholdForBlock(byte[] luminances, int subWidth, int subHeight, int width,
+                                                   int height, int[] blackPoints, BitMatrix matrix) {
+        for(int y = 0; y < subHeight; y++) {
+            int yOffset = Math.min(y << BLOCK_SIZE_POWER, height - BLOCK_SIZE);
+            int top = cap(y, 2, subHeight - 3);
+
+            for(int x = 0; x < subWidth; x++) {
+                int xOffset = Math.min(x << BLOCK_SIZE_POWER, width - BLOCK_SIZE);
+                int left = cap(x, 2, subWidth - 3);
+
+                int sum = 0;
+                for(int z = -2; z <= 2; z++) {
+                    int row = (top + z) * subWidth + left;
+                    sum += blackPoints[row - 2] + blackPoints[row - 1] + blackPoints[row] +
+                            blackPoints[row + 1] + blackPoints[row + 2];
+                }
+
+                thresholdBlock(luminances, xOffset, yOffset, sum / 25, width, matrix);
+            }
+        }
+    }
+
+    private static int cap(int value, int min, int max) {
+        return value < min ? min : value > max ? max : value;
+    }
+
+    private static void thresholdBlock(byte[] luminances, int xOffset, int yOffset, int threshold, int stride,
+                                       BitMatrix matrix) {
+        for(int y = 0, offset = yOffset * stride + xOffset; y < BLOCK_SIZE; y++, offset += stride) {
+            for(int x = 0; x < BLOCK_SIZE; x++) {
+                // Comparison needs to be <= so that black == 0 pixels are black even if the threshold is 0
+                if((luminances[offset + x] & 0xff) <= threshold) {
+                    matrix.set(xOffset + x, yOffset + y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates a single black point for each block of pixels, blocks without enough contrast take the black point
+     * of their neighbours, so they don't turn into noise.
+     */
+    private static void calculateBlackPoints(byte[] luminances, int subWidth, int subHeight, int width, int height,
+                                             int[] blackPoints) {
+        for(int y = 0; y < subHeight; y++) {
+            int yOffset = Math.min(y << BLOCK_SIZE_POWER, height - BLOCK_SIZE);
+
+            for(int x = 0; x < subWidth; x++) {
+                int xOffset = Math.min(x << BLOCK_SIZE_POWER, width - BLOCK_SIZE);
+
+                int sum = 0;
+                int min = 0xff;
+                int max = 0;
+                for(int yy = 0, offset = yOffset * width + xOffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for(int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        int pixel = luminances[offset + xx] & 0xff;
+                        sum += pixel;
+                        if(pixel < min) min = pixel;
+                        if(pixel > max) max = pixel;
+                    }
+
+                    // Once the dynamic range is met, the rest of the block needs just the sum
+                    if(max - min > MIN_DYNAMIC_RANGE) {
+                        for(yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+                            for(int xx = 0; xx < BLOCK_SIZE; xx++) {
+                                sum += luminances[offset + xx] & 0xff;
+                            }
+                        }
+                    }
+                }
+
+                int average = sum >> (BLOCK_SIZE_POWER * 2);
+                if(max - min <= MIN_DYNAMIC_RANGE) {
+                    // Low contrast block is assumed to be white, unless its neighbours say it's darker
+                    average = min / 2;
+
+                    if(y > 0 && x > 0) {
+                        int index = y * subWidth + x;
+                        int averageNeighborBlackPoint = (blackPoints[index - subWidth] + (2 * blackPoints[index - 1]) +
+                                blackPoints[index - subWidth - 1]) / 4;
+                        if(min < averageNeighborBlackPoint) {
+                            average = averageNeighborBlackPoint;
+                        }
+                    }
+                }
+
+                blackPoints[y * subWidth + x] = average;
+            }
+        }
+    }
+}
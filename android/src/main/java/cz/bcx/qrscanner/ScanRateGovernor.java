@@ -0,0 +1,109 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Decides how many frames per second are handed to the decoder.
+ *
+ * The rate drops when decodes keep failing or when decoding is slower than the rate, and jumps back up when a code
+ * is partly detected. After a successful scan no frames are admitted until the cooldown passes.
+ * All times are in nanoseconds of a monotonic clock.
+ */
+public class ScanRateGovernor {
+    private static final int MISSES_BEFORE_BACKOFF = 5;
+    private static final float BACKOFF_FACTOR = 0.9f;
+    private static final float SPEEDUP_FACTOR = 2f;
+    private static final float LATENCY_SMOOTHING = 0.2f;
+
+    private final float minRate;
+    private final float maxRate;
+    private final long successCooldown;
+    private final int workerCount;
+
+    private float targetRate;
+    private long interval;
+    private long averageLatency = 0;
+    private int consecutiveMisses = 0;
+
+    private long lastAdmitted = Long.MIN_VALUE;
+    private long cooldownUntil = Long.MIN_VALUE;
+
+    /**
+     * @param minRate - Minimal number of frames per second handed to the decoder
+     * @param maxRate - Maximal number of frames per second handed to the decoder
+     * @param successCooldown - Pause after a successful scan in nanoseconds
+     * @param workerCount - Number of frames which can be decoded in parallel
+     */
+    public ScanRateGovernor(float minRate, float maxRate, long successCooldown, int workerCount) {
+        if(minRate <= 0 || maxRate < minRate) {
+            throw new IllegalArgumentException("Scan rates have to be positive and max rate can't be lower than min rate.");
+        }
+
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.successCooldown = successCooldown;
+        this.workerCount = workerCount;
+
+        this.targetRate = maxRate;
+        this.interval = toInterval(maxRate);
+    }
+
+    /**
+     * @return True if the frame captured at given time should be decoded. The frame is counted as admitted.
+     */
+    public synchronized boolean shouldAdmit(long now) {
+        if(now < cooldownUntil) return false;
+        if(lastAdmitted != Long.MIN_VALUE && now - lastAdmitted < interval) return false;
+
+        lastAdmitted = now;
+        return true;
+    }
+
+    public synchronized void onDecodeFinished(long now, DecodeStatus status, long latency) {
+        averageLatency = averageLatency == 0 ?
+                latency :
+                (long) (averageLatency + LATENCY_SMOOTHING * (latency - averageLatency));
+
+        switch (status) {
+            case FOUND:
+                consecutiveMisses = 0;
+                targetRate = maxRate;
+                cooldownUntil = now + successCooldown;
+                break;
+
+            case PARTIAL:
+                // Code is in the view, try to get another frame as soon as possible
+                consecutiveMisses = 0;
+                targetRate = Math.min(maxRate, targetRate * SPEEDUP_FACTOR);
+                break;
+
+            case NOT_FOUND:
+                if(++consecutiveMisses >= MISSES_BEFORE_BACKOFF) {
+                    targetRate = Math.max(minRate, targetRate * BACKOFF_FACTOR);
+                }
+                break;
+        }
+
+        interval = toInterval(getRate());
+    }
+
+    /**
+     * @return Current number of frames per second handed to the decoder.
+     */
+    public synchronized float getRate() {
+        float rate = targetRate;
+
+        // Don't admit frames faster than workers are able to decode them
+        if(averageLatency > 0) {
+            rate = Math.min(rate, workerCount * 1_000_000_000f / averageLatency);
+        }
+
+        return Math.max(minRate, Math.min(maxRate, rate));
+    }
+
+    public synchronized long getAverageLatency() {
+        return averageLatency;
+    }
+
+    private static long toInterval(float rate) {
+        return (long) (1_000_000_000f / rate);
+    }
+}
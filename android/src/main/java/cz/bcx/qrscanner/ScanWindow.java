@@ -0,0 +1,154 @@
+package cz.bcx.qrscanner;
+
+import java.util.Map;
+
+/**
+ * Part of the preview in which codes are searched for. Coordinates are normalized (0.0 - 1.0) and relative
+ * to the preview texture as reported by "previewWidth" and "previewHeight".
+ */
+public final class ScanWindow {
+    public static final ScanWindow FULL = new ScanWindow(0, 0, 1, 1);
+
+    private final float left;
+    private final float top;
+    private final float width;
+    private final float height;
+
+    public ScanWindow(float left, float top, float width, float height) {
+        this.left = clamp(left);
+        this.top = clamp(top);
+        this.width = Math.min(clamp(width), 1 - this.left);
+        this.height = Math.min(clamp(height), 1 - this.top);
+    }
+
+    /**
+     * @param arguments - Map with "left", "top", "width" and "height" keys, null for the whole preview
+     */
+    public static ScanWindow fromArguments(Map<String, Object> arguments) {
+        if(arguments == null) return FULL;
+
+        return new ScanWindow(
+                getFloat(arguments, "left", 0),
+                getFloat(arguments, "top", 0),
+                getFloat(arguments, "width", 1),
+                getFloat(arguments, "height", 1)
+        );
+    }
+
+    /**
+     * Maps the window to capture coordinates. Both preview and capture streams are center crops of the sensor's
+     * active array with their own aspect ratio, so the window is mapped through the sensor's coordinates.
+     */
+    public Region toCaptureRegion(int previewWidth, int previewHeight,
+                                  int captureWidth, int captureHeight,
+                                  int sensorWidth, int sensorHeight) {
+        float[] previewCrop = getSensorCrop(previewWidth, previewHeight, sensorWidth, sensorHeight);
+        float[] captureCrop = getSensorCrop(captureWidth, captureHeight, sensorWidth, sensorHeight);
+
+        // Window in sensor coordinates
+        float sensorLeft   = previewCrop[0] + left * previewCrop[2];
+        float sensorTop    = previewCrop[1] + top * previewCrop[3];
+        float sensorRight  = sensorLeft + width * previewCrop[2];
+        float sensorBottom = sensorTop + height * previewCrop[3];
+
+        float scaleX = captureWidth / captureCrop[2];
+        float scaleY = captureHeight / captureCrop[3];
+
+        int regionLeft   = clamp(Math.round((sensorLeft - captureCrop[0]) * scaleX), 0, captureWidth - 1);
+        int regionTop    = clamp(Math.round((sensorTop - captureCrop[1]) * scaleY), 0, captureHeight - 1);
+        int regionRight  = clamp(Math.round((sensorRight - captureCrop[0]) * scaleX), regionLeft + 1, captureWidth);
+        int regionBottom = clamp(Math.round((sensorBottom - captureCrop[1]) * scaleY), regionTop + 1, captureHeight);
+
+        return new Region(regionLeft, regionTop, regionRight - regionLeft, regionBottom - regionTop);
+    }
+
+    /**
+     * Maps the window to the sensor's active array, which camera metering regions are relative to.
+     */
+    public Region toSensorRegion(int previewWidth, int previewHeight, int sensorWidth, int sensorHeight) {
+        float[] previewCrop = getSensorCrop(previewWidth, previewHeight, sensorWidth, sensorHeight);
+
+        return toSensorRegion(
+                previewCrop[0] + left * previewCrop[2],
+                previewCrop[1] + top * previewCrop[3],
+                width * previewCrop[2],
+                height * previewCrop[3],
+                sensorWidth, sensorHeight
+        );
+    }
+
+    /**
+     * Maps a region of a capture frame to the sensor's active array, e.g. a located code to focus on.
+     */
+    public static Region captureToSensorRegion(Region region, int captureWidth, int captureHeight,
+                                               int sensorWidth, int sensorHeight) {
+        float[] captureCrop = getSensorCrop(captureWidth, captureHeight, sensorWidth, sensorHeight);
+        float scaleX = captureCrop[2] / captureWidth;
+        float scaleY = captureCrop[3] / captureHeight;
+
+        return toSensorRegion(
+                captureCrop[0] + region.getLeft() * scaleX,
+                captureCrop[1] + region.getTop() * scaleY,
+                region.getWidth() * scaleX,
+                region.getHeight() * scaleY,
+                sensorWidth, sensorHeight
+        );
+    }
+
+    private static Region toSensorRegion(float left, float top, float width, float height,
+                                         int sensorWidth, int sensorHeight) {
+        int regionLeft   = clamp(Math.round(left), 0, sensorWidth - 1);
+        int regionTop    = clamp(Math.round(top), 0, sensorHeight - 1);
+        int regionRight  = clamp(Math.round(left + width), regionLeft + 1, sensorWidth);
+        int regionBottom = clamp(Math.round(top + height), regionTop + 1, sensorHeight);
+
+        return new Region(regionLeft, regionTop, regionRight - regionLeft, regionBottom - regionTop);
+    }
+
+    public boolean isFull() {
+        return left == 0 && top == 0 && width == 1 && height == 1;
+    }
+
+    private static float[] getSensorCrop(int streamWidth, int streamHeight, int sensorWidth, int sensorHeight) {
+        float streamAspect = streamWidth / (float) streamHeight;
+        float sensorAspect = sensorWidth / (float) sensorHeight;
+
+        if(streamAspect > sensorAspect) {
+            float cropHeight = sensorWidth / streamAspect;
+            return new float[] {0, (sensorHeight - cropHeight) / 2, sensorWidth, cropHeight};
+        }
+        else {
+            float cropWidth = sensorHeight * streamAspect;
+            return new float[] {(sensorWidth - cropWidth) / 2, 0, cropWidth, sensorHeight};
+        }
+    }
+
+    private static float getFloat(Map<String, Object> arguments, String key, float defaultValue) {
+        Object value = arguments.get(key);
+        return value instanceof Number ? ((Number) value).floatValue() : defaultValue;
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(1, value));
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,152 @@
+package cz.bcx.qrscanner;
+
+/**
+ * Releases the camera when the activity is paused and reopens it when it's resumed, measuring how long the resume
+ * takes until the first frame arrives.
+ *
+ * Hot release closes just the camera device, cold release also stops decode workers and frees frame buffers. Both
+ * keep the decoders, the cached camera configuration and the preview texture, whose ID Flutter keeps using.
+ */
+public class ScannerLifecycle {
+    public enum ReleaseMode {
+        // Camera stays open while the activity is paused
+        NONE("none"),
+        HOT("hot"),
+        COLD("cold");
+
+        private static final ReleaseMode FALLBACK_VALUE = HOT;
+
+        private final String serializedName;
+
+        ReleaseMode(String serializedName) {
+            this.serializedName = serializedName;
+        }
+
+        public static ReleaseMode getModeForName(String serializedName) {
+            for(ReleaseMode mode : values()) {
+                if(mode.serializedName.equals(serializedName)) return mode;
+            }
+
+            return FALLBACK_VALUE;
+        }
+    }
+
+    public interface Target {
+        /**
+         * Closes the capture session and the camera device.
+         * @param cold - Release decode workers and buffers too
+         */
+        void releaseCamera(boolean cold);
+
+        /**
+         * Opens the camera again and restores the preview if it was running. Has to call
+         * {@link #onCameraReopened(boolean)} or {@link #onReopenFailed()} when done.
+         * @param cold - Buffers and workers have been released and have to be created again
+         */
+        void reopenCamera(boolean cold);
+    }
+
+    private enum State {
+        ACTIVE,
+        PAUSED,
+        RESUMING
+    }
+
+    private static final long NOT_RESUMING = -1;
+
+    private final ReleaseMode releaseMode;
+    private final Target target;
+    private final FramePipeline.Clock clock;
+    private final PipelineStats stats;
+
+    private State state = State.ACTIVE;
+    private long resumeStart;
+
+    // Start of a resume waiting for its first frame, read for every frame
+    private volatile long awaitedFrameStart = NOT_RESUMING;
+    private volatile long lastResumeLatency = -1;
+
+    /**
+     * @param stats - Statistics to record resume latencies into
+     */
+    public ScannerLifecycle(ReleaseMode releaseMode, Target target, FramePipeline.Clock clock, PipelineStats stats) {
+        this.releaseMode = releaseMode;
+        this.target = target;
+        this.clock = clock;
+        this.stats = stats;
+    }
+
+    public ReleaseMode getReleaseMode() {
+        return releaseMode;
+    }
+
+    public synchronized boolean isReleased() {
+        return state != State.ACTIVE;
+    }
+
+    public synchronized void onPause() {
+        if(releaseMode == ReleaseMode.NONE || state == State.PAUSED) return;
+
+        // Pausing in the middle of a resume releases whatever the resume has opened so far
+        state = State.PAUSED;
+        awaitedFrameStart = NOT_RESUMING;
+        target.releaseCamera(releaseMode == ReleaseMode.COLD);
+    }
+
+    public synchronized void onResume() {
+        if(state != State.PAUSED) return;
+
+        state = State.RESUMING;
+        resumeStart = clock.nanoTime();
+        target.reopenCamera(releaseMode == ReleaseMode.COLD);
+    }
+
+    /**
+     * @param previewRunning - True if the preview has been restarted, the resume is finished by its first frame
+     */
+    public synchronized void onCameraReopened(boolean previewRunning) {
+        if(state != State.RESUMING) return;
+
+        state = State.ACTIVE;
+
+        if(previewRunning) {
+            awaitedFrameStart = resumeStart;
+        }
+        else {
+            recordResume(resumeStart);
+        }
+    }
+
+    /**
+     * The camera stays released, the next resume tries to open it again.
+     */
+    public synchronized void onReopenFailed() {
+        if(state == State.RESUMING) state = State.PAUSED;
+    }
+
+    /**
+     * Called for every frame from the camera.
+     */
+    public void onFrame() {
+        if(awaitedFrameStart == NOT_RESUMING) return;
+
+        synchronized (this) {
+            if(awaitedFrameStart == NOT_RESUMING) return;
+
+            recordResume(awaitedFrameStart);
+            awaitedFrameStart = NOT_RESUMING;
+        }
+    }
+
+    private void recordResume(long start) {
+        lastResumeLatency = clock.nanoTime() - start;
+        stats.record(PipelineStats.Stage.RESUME, lastResumeLatency);
+    }
+
+    /**
+     * @return Nanoseconds from the last resume to its first frame, -1 if there has been no resume yet.
+     */
+    public long getLastResumeLatency() {
+        return lastResumeLatency;
+    }
+}
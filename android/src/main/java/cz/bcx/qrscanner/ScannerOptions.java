@@ -0,0 +1,439 @@
+package cz.bcx.qrscanner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scanner configuration passed from Flutter as arguments of the "initialize" method call.
+ */
+public class ScannerOptions {
+    private LensFacing lensFacing = LensFacing.BACK;
+    private String cameraId = null;
+
+    private int decodeWorkers = DecodeWorkerPool.getDefaultWorkerCount();
+    private String decodeEngine = DecodeEngines.DEFAULT;
+    private ScanWindow scanWindow = ScanWindow.FULL;
+
+    private float minScanRate = 2;  // frames per second
+    private float maxScanRate = 30; // frames per second
+    private long scanCooldown = 333; // ms
+
+    private int dedupCapacity = 16;
+    private long dedupTtl = 2000; // ms
+
+    private long eventFlushInterval = 50; // ms
+    private int eventBatchSize = 16;
+
+    private boolean multiCode = false;
+    private int maxCodesPerFrame = 4;
+    private float minCodeRegionSize = 0; // px
+
+    private BinarizerCascade.Strategy binarizerStrategy = BinarizerCascade.Strategy.CASCADE;
+
+    private int pyramidLevels = 0;
+
+    private int prescreenLineSpacing = 0; // px
+
+    private float minSharpness = 0;
+    private float minFrameDifference = 0;
+
+    private int trackingMisses = 0;
+    private long trackingRescanInterval = 500; // ms
+    private boolean trackingEvents = false;
+
+    private boolean adaptiveResolution = false;
+    private long targetDecodeTime = 50; // ms
+
+    private List<Orientation> orientationRetries = Collections.emptyList();
+
+    private ScannerLifecycle.ReleaseMode releaseMode = ScannerLifecycle.ReleaseMode.HOT;
+
+    private boolean scanCaptureProfile = false;
+    private long maxExposureTime = 33; // ms
+    private boolean closeFocus = false;
+
+    private String recordFile = null;
+    private int recordBuffers = 8;
+    private int recordFrameRate = 10;
+    private long recordMaxSize = 100 * 1024 * 1024; // bytes
+
+    @SuppressWarnings("unchecked")
+    public static ScannerOptions fromArguments(Map<String, Object> arguments) {
+        ScannerOptions options = new ScannerOptions();
+
+        if(arguments.get("lensFacing") instanceof String) {
+            options.lensFacing = LensFacing.getLensFacingForName((String) arguments.get("lensFacing"));
+        }
+
+        if(arguments.get("cameraId") instanceof String) {
+            options.cameraId = (String) arguments.get("cameraId");
+        }
+
+        if(arguments.get("decodeEngine") instanceof String) {
+            options.decodeEngine = (String) arguments.get("decodeEngine");
+
+            if(!DecodeEngines.isRegistered(options.decodeEngine)) {
+                throw new IllegalArgumentException("Unknown decode engine: " + options.decodeEngine);
+            }
+        }
+
+        if(arguments.get("decodeWorkers") instanceof Number) {
+            options.decodeWorkers = Math.max(1, ((Number) arguments.get("decodeWorkers")).intValue());
+        }
+
+        if(arguments.get("scanWindow") instanceof Map) {
+            options.scanWindow = ScanWindow.fromArguments((Map<String, Object>) arguments.get("scanWindow"));
+        }
+
+        if(arguments.get("minScanRate") instanceof Number) {
+            options.minScanRate = ((Number) arguments.get("minScanRate")).floatValue();
+        }
+
+        if(arguments.get("maxScanRate") instanceof Number) {
+            options.maxScanRate = ((Number) arguments.get("maxScanRate")).floatValue();
+        }
+
+        if(arguments.get("scanCooldown") instanceof Number) {
+            options.scanCooldown = Math.max(0, ((Number) arguments.get("scanCooldown")).longValue());
+        }
+
+        if(arguments.get("dedupCapacity") instanceof Number) {
+            options.dedupCapacity = Math.max(0, ((Number) arguments.get("dedupCapacity")).intValue());
+        }
+
+        if(arguments.get("dedupTtl") instanceof Number) {
+            options.dedupTtl = Math.max(0, ((Number) arguments.get("dedupTtl")).longValue());
+        }
+
+        if(arguments.get("eventFlushInterval") instanceof Number) {
+            options.eventFlushInterval = Math.max(0, ((Number) arguments.get("eventFlushInterval")).longValue());
+        }
+
+        if(arguments.get("eventBatchSize") instanceof Number) {
+            options.eventBatchSize = Math.max(1, ((Number) arguments.get("eventBatchSize")).intValue());
+        }
+
+        if(arguments.get("multiCode") instanceof Boolean) {
+            options.multiCode = (Boolean) arguments.get("multiCode");
+        }
+
+        if(arguments.get("maxCodesPerFrame") instanceof Number) {
+            options.maxCodesPerFrame = Math.max(1, ((Number) arguments.get("maxCodesPerFrame")).intValue());
+        }
+
+        if(arguments.get("minCodeRegionSize") instanceof Number) {
+            options.minCodeRegionSize = Math.max(0, ((Number) arguments.get("minCodeRegionSize")).floatValue());
+        }
+
+        if(arguments.get("binarizer") instanceof String) {
+            options.binarizerStrategy = BinarizerCascade.Strategy.getStrategyForName((String) arguments.get("binarizer"));
+        }
+
+        if(arguments.get("pyramidLevels") instanceof Number) {
+            options.pyramidLevels = Math.max(0, Math.min(3, ((Number) arguments.get("pyramidLevels")).intValue()));
+        }
+
+        if(arguments.get("prescreenLineSpacing") instanceof Number) {
+            options.prescreenLineSpacing = Math.max(0, ((Number) arguments.get("prescreenLineSpacing")).intValue());
+        }
+
+        if(arguments.get("minSharpness") instanceof Number) {
+            options.minSharpness = Math.max(0, ((Number) arguments.get("minSharpness")).floatValue());
+        }
+
+        if(arguments.get("minFrameDifference") instanceof Number) {
+            options.minFrameDifference = Math.max(0, ((Number) arguments.get("minFrameDifference")).floatValue());
+        }
+
+        if(arguments.get("trackingMisses") instanceof Number) {
+            options.trackingMisses = Math.max(0, ((Number) arguments.get("trackingMisses")).intValue());
+        }
+
+        if(arguments.get("trackingRescanInterval") instanceof Number) {
+            options.trackingRescanInterval = Math.max(0, ((Number) arguments.get("trackingRescanInterval")).longValue());
+        }
+
+        if(arguments.get("trackingEvents") instanceof Boolean) {
+            options.trackingEvents = (Boolean) arguments.get("trackingEvents");
+        }
+
+        if(arguments.get("adaptiveResolution") instanceof Boolean) {
+            options.adaptiveResolution = (Boolean) arguments.get("adaptiveResolution");
+        }
+
+        if(arguments.get("targetDecodeTime") instanceof Number) {
+            options.targetDecodeTime = Math.max(1, ((Number) arguments.get("targetDecodeTime")).longValue());
+        }
+
+        if(arguments.get("orientationRetries") instanceof List) {
+            List<Orientation> orientationRetries = new ArrayList<>();
+            for(Object name : (List<Object>) arguments.get("orientationRetries")) {
+                Orientation orientation = Orientation.getOrientationForName(String.valueOf(name));
+                if(orientation != null && orientation != Orientation.NORMAL) orientationRetries.add(orientation);
+            }
+            options.orientationRetries = orientationRetries;
+        }
+
+        if(arguments.get("releaseMode") instanceof String) {
+            options.releaseMode = ScannerLifecycle.ReleaseMode.getModeForName((String) arguments.get("releaseMode"));
+        }
+
+        if(arguments.get("captureProfile") instanceof String) {
+            options.scanCaptureProfile = "scan".equals(arguments.get("captureProfile"));
+        }
+
+        if(arguments.get("maxExposureTime") instanceof Number) {
+            options.maxExposureTime = Math.max(0, ((Number) arguments.get("maxExposureTime")).longValue());
+        }
+
+        if(arguments.get("closeFocus") instanceof Boolean) {
+            options.closeFocus = (Boolean) arguments.get("closeFocus");
+        }
+
+        if(arguments.get("recordFile") instanceof String) {
+            options.recordFile = (String) arguments.get("recordFile");
+        }
+
+        if(arguments.get("recordBuffers") instanceof Number) {
+            options.recordBuffers = Math.max(1, ((Number) arguments.get("recordBuffers")).intValue());
+        }
+
+        if(arguments.get("recordFrameRate") instanceof Number) {
+            options.recordFrameRate = Math.max(0, ((Number) arguments.get("recordFrameRate")).intValue());
+        }
+
+        if(arguments.get("recordMaxSize") instanceof Number) {
+            options.recordMaxSize = Math.max(0, ((Number) arguments.get("recordMaxSize")).longValue());
+        }
+
+        if(options.minScanRate <= 0 || options.maxScanRate < options.minScanRate) {
+            throw new IllegalArgumentException("Scan rates have to be positive and max rate can't be lower than min rate.");
+        }
+
+        return options;
+    }
+
+    public LensFacing getLensFacing() {
+        return lensFacing;
+    }
+
+    /**
+     * @return ID of the camera to scan with, null to use the first camera facing {@link #getLensFacing()}.
+     */
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    /**
+     * @return Number of decoders of the session, the plugin decodes frames of all sessions on one shared set of
+     * threads.
+     */
+    public int getDecodeWorkers() {
+        return decodeWorkers;
+    }
+
+    /**
+     * @return Name of the {@link DecodeEngine} decoding frames, see {@link DecodeEngines}.
+     */
+    public String getDecodeEngine() {
+        return decodeEngine;
+    }
+
+    public ScanWindow getScanWindow() {
+        return scanWindow;
+    }
+
+    public float getMinScanRate() {
+        return minScanRate;
+    }
+
+    public float getMaxScanRate() {
+        return maxScanRate;
+    }
+
+    /**
+     * @return Pause after a successful scan in milliseconds.
+     */
+    public long getScanCooldown() {
+        return scanCooldown;
+    }
+
+    /**
+     * @return Number of recently reported codes remembered to suppress repeated scans, 0 disables suppression.
+     */
+    public int getDedupCapacity() {
+        return dedupCapacity;
+    }
+
+    /**
+     * @return Time in milliseconds after which a code which is no longer visible is reported again.
+     */
+    public long getDedupTtl() {
+        return dedupTtl;
+    }
+
+    /**
+     * @return Maximal time in milliseconds an event waits to be sent together with other events.
+     */
+    public long getEventFlushInterval() {
+        return eventFlushInterval;
+    }
+
+    public int getEventBatchSize() {
+        return eventBatchSize;
+    }
+
+    /**
+     * @return True if all codes in a frame should be decoded, not just the first one.
+     */
+    public boolean isMultiCode() {
+        return multiCode;
+    }
+
+    public int getMaxCodesPerFrame() {
+        return maxCodesPerFrame;
+    }
+
+    /**
+     * @return Minimal distance between finder patterns of a code in capture pixels, smaller codes are skipped.
+     */
+    public float getMinCodeRegionSize() {
+        return minCodeRegionSize;
+    }
+
+    public BinarizerCascade.Strategy getBinarizerStrategy() {
+        return binarizerStrategy;
+    }
+
+    /**
+     * @return Number of downsampled levels decoded before the full resolution, 0 decodes only the full resolution.
+     */
+    public int getPyramidLevels() {
+        return pyramidLevels;
+    }
+
+    /**
+     * @return Distance in capture pixels between rows (and columns) scanned for finder patterns before a frame is
+     * decoded, frames without any finder pattern are not decoded. 0 (default) decodes every frame.
+     */
+    public int getPrescreenLineSpacing() {
+        return prescreenLineSpacing;
+    }
+
+    /**
+     * @return Minimal sharpness of a frame to be decoded, 0 (default) decodes blurred frames too.
+     */
+    public float getMinSharpness() {
+        return minSharpness;
+    }
+
+    /**
+     * @return Minimal difference from the last frame without any code, 0 (default) decodes unchanged frames too.
+     */
+    public float getMinFrameDifference() {
+        return minFrameDifference;
+    }
+
+    /**
+     * @return Number of frames without tracked codes after which whole frames are decoded again, 0 (default)
+     * disables tracking. Tracking is always disabled in multi-code mode.
+     */
+    public int getTrackingMisses() {
+        return trackingMisses;
+    }
+
+    /**
+     * @return Longest time in milliseconds between two whole frames decoded while a code is tracked, so other codes
+     * entering the view are found.
+     */
+    public long getTrackingRescanInterval() {
+        return trackingRescanInterval;
+    }
+
+    /**
+     * @return True if locations of all found codes should be reported, not only of the newly scanned ones.
+     */
+    public boolean isTrackingEvents() {
+        return trackingEvents;
+    }
+
+    /**
+     * @return True if the capture size should be changed while scanning based on decode outcomes.
+     */
+    public boolean isAdaptiveResolution() {
+        return adaptiveResolution;
+    }
+
+    /**
+     * @return Decode time per frame in milliseconds above which a smaller capture size is used.
+     */
+    public long getTargetDecodeTime() {
+        return targetDecodeTime;
+    }
+
+    /**
+     * @return Orientations a frame without any code is decoded in once more, one of them per frame.
+     */
+    public List<Orientation> getOrientationRetries() {
+        return orientationRetries;
+    }
+
+    /**
+     * @return What is released while the activity is paused.
+     */
+    public ScannerLifecycle.ReleaseMode getReleaseMode() {
+        return releaseMode;
+    }
+
+    /**
+     * @return True if focus, metering and exposure are controlled for scanning and refocused by decode outcomes,
+     * false (default) to keep the camera's preview defaults with continuous focus.
+     */
+    public boolean isScanCaptureProfile() {
+        return scanCaptureProfile;
+    }
+
+    /**
+     * @return Longest exposure time in milliseconds auto exposure should use while scanning, 0 for no limit.
+     */
+    public long getMaxExposureTime() {
+        return maxExposureTime;
+    }
+
+    /**
+     * @return True if codes should always be focused in the macro mode, not only the close ones.
+     */
+    public boolean isCloseFocus() {
+        return closeFocus;
+    }
+
+    /**
+     * @return Path of the file to record scanned frames and their decode outcomes into, null to not record.
+     */
+    public String getRecordFile() {
+        return recordFile;
+    }
+
+    /**
+     * @return Number of recorded frames buffered while they wait for their outcome or to be written.
+     */
+    public int getRecordBuffers() {
+        return recordBuffers;
+    }
+
+    /**
+     * @return Maximal number of frames recorded per second, 0 to record every scanned frame.
+     */
+    public int getRecordFrameRate() {
+        return recordFrameRate;
+    }
+
+    /**
+     * @return Maximal size of the recording in bytes, recording stops once it's reached.
+     */
+    public long getRecordMaxSize() {
+        return recordMaxSize;
+    }
+}
@@ -0,0 +1,82 @@
+package cz.bcx.qrscanner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times of startup milestones relative to the start of initialization. Every milestone is recorded only the first
+ * time it's reached, so marks can be placed on paths which run for every frame.
+ */
+public class StartupTimeline {
+    public enum Mark {
+        // Camera selected and sizes chosen, from the cache after the first initialization
+        CONFIGURATION_READY("configurationReady"),
+        // Surface texture, image reader and decoders created while the camera is being opened
+        SETUP_DONE("setupDone"),
+        CAMERA_OPENED("cameraOpened"),
+        SESSION_CONFIGURED("sessionConfigured"),
+        FIRST_PREVIEW_FRAME("firstPreviewFrame"),
+        FIRST_IMAGE("firstImage"),
+        // First frame handed to decoders
+        FIRST_SCAN_FRAME("firstScanFrame");
+
+        private final String serializedName;
+
+        Mark(String serializedName) {
+            this.serializedName = serializedName;
+        }
+    }
+
+    private static final long NOT_REACHED = -1;
+
+    private final FramePipeline.Clock clock;
+    private final long start;
+    private final AtomicLongArray marks = new AtomicLongArray(Mark.values().length);
+
+    /**
+     * Starts the timeline at the current time of the clock.
+     */
+    public StartupTimeline(FramePipeline.Clock clock) {
+        this.clock = clock;
+        this.start = clock.nanoTime();
+
+        for(int i = 0; i < marks.length(); i++) {
+            marks.set(i, NOT_REACHED);
+        }
+    }
+
+    /**
+     * @return True if the milestone has been reached for the first time.
+     */
+    public boolean mark(Mark mark) {
+        if(marks.get(mark.ordinal()) != NOT_REACHED) return false;
+
+        return marks.compareAndSet(mark.ordinal(), NOT_REACHED, clock.nanoTime() - start);
+    }
+
+    public boolean isReached(Mark mark) {
+        return marks.get(mark.ordinal()) != NOT_REACHED;
+    }
+
+    /**
+     * @return Nanoseconds from the start to the milestone, -1 if it hasn't been reached yet.
+     */
+    public long get(Mark mark) {
+        return marks.get(mark.ordinal());
+    }
+
+    /**
+     * @return Reached milestones in microseconds from the start.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+
+        for(Mark mark : Mark.values()) {
+            long time = get(mark);
+            if(time != NOT_REACHED) map.put(mark.serializedName, time / 1000);
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,242 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ResultPoint;
+
+/**
+ * Luminance source over a tightly packed (row stride equal to width) copy of the Y plane, see
+ * {@link Frame#copyPlane}. Cropping, rotating and inverting create views into the same array, nothing is copied.
+ *
+ * Rotated and inverted views can't hand out the backing array as their matrix. They fill a matrix buffer instead,
+ * which may be reused by consecutive views decoded on the same thread.
+ */
+public class YPlaneLuminanceSource extends LuminanceSource {
+    private final byte[] data;
+    private final int dataWidth;
+    private final int dataHeight;
+
+    // Part of the data seen by this view, before rotation
+    private final int left;
+    private final int top;
+    private final int regionWidth;
+    private final int regionHeight;
+
+    private final int quarterTurns; // counter-clockwise
+    private final boolean inverted;
+    private final byte[] matrixBuffer;
+
+    public YPlaneLuminanceSource(byte[] data, int dataWidth, int dataHeight) {
+        this(data, dataWidth, dataHeight, 0, 0, dataWidth, dataHeight);
+    }
+
+    public YPlaneLuminanceSource(byte[] data, int dataWidth, int dataHeight, int left, int top, int width, int height) {
+        this(data, dataWidth, dataHeight, left, top, width, height, 0, false, null);
+    }
+
+    private YPlaneLuminanceSource(byte[] data, int dataWidth, int dataHeight, int left, int top,
+                                  int regionWidth, int regionHeight, int quarterTurns, boolean inverted,
+                                  byte[] matrixBuffer) {
+        super(quarterTurns % 2 == 0 ? regionWidth : regionHeight, quarterTurns % 2 == 0 ? regionHeight : regionWidth);
+
+        if(left + regionWidth > dataWidth || top + regionHeight > dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+
+        if(data.length < dataWidth * dataHeight) {
+            throw new IllegalArgumentException("Image data is smaller than its dimensions.");
+        }
+
+        this.data = data;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+        this.regionWidth = regionWidth;
+        this.regionHeight = regionHeight;
+        this.quarterTurns = quarterTurns;
+        this.inverted = inverted;
+        this.matrixBuffer = matrixBuffer;
+    }
+
+    /**
+     * @param orientation - Orientation relative to this view
+     * @param matrixBuffer - Array to fill by {@link #getMatrix()} if it's large enough, null to allocate the matrix
+     * @return View of the same data in given orientation.
+     */
+    public YPlaneLuminanceSource orient(Orientation orientation, byte[] matrixBuffer) {
+        return new YPlaneLuminanceSource(
+                data, dataWidth, dataHeight, left, top, regionWidth, regionHeight,
+                (quarterTurns + orientation.getQuarterTurns()) % 4,
+                inverted != orientation.isInverted(),
+                matrixBuffer
+        );
+    }
+
+    private boolean isIdentity() {
+        return quarterTurns == 0 && !inverted;
+    }
+
+    /**
+     * Index of pixel (0, y) of this view in the data, see {@link #getPixelStep()}.
+     */
+    private int getRowStart(int y) {
+        switch (quarterTurns) {
+            case 1:
+                return top * dataWidth + left + regionWidth - 1 - y;
+            case 2:
+                return (top + regionHeight - 1 - y) * dataWidth + left + regionWidth - 1;
+            case 3:
+                return (top + regionHeight - 1) * dataWidth + left + y;
+            default:
+                return (top + y) * dataWidth + left;
+        }
+    }
+
+    /**
+     * Distance in the data between two consecutive pixels of a row of this view.
+     */
+    private int getPixelStep() {
+        switch (quarterTurns) {
+            case 1:
+                return dataWidth;
+            case 2:
+                return -1;
+            case 3:
+                return -dataWidth;
+            default:
+                return 1;
+        }
+    }
+
+    private void copyRow(int y, byte[] row, int offset) {
+        int width = getWidth();
+        int index = getRowStart(y);
+        int step = getPixelStep();
+
+        if(step == 1 && !inverted) {
+            System.arraycopy(data, index, row, offset, width);
+            return;
+        }
+
+        if(inverted) {
+            for(int x = 0; x < width; x++) {
+                row[offset + x] = (byte) ~data[index];
+                index += step;
+            }
+        }
+        else {
+            for(int x = 0; x < width; x++) {
+                row[offset + x] = data[index];
+                index += step;
+            }
+        }
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if(y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+
+        int width = getWidth();
+        if(row == null || row.length < width) {
+            row = new byte[width];
+        }
+
+        copyRow(y, row, 0);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+
+        // The backing array can be returned without copying, the matrix is allowed to be longer than width * height
+        if(isIdentity() && width == dataWidth && left == 0 && top == 0) {
+            return data;
+        }
+
+        byte[] matrix = matrixBuffer != null && matrixBuffer.length >= width * height ?
+                matrixBuffer :
+                new byte[width * height];
+
+        if(isIdentity() && width == dataWidth) {
+            System.arraycopy(data, top * dataWidth + left, matrix, 0, width * height);
+            return matrix;
+        }
+
+        for(int y = 0; y < height; y++) {
+            copyRow(y, matrix, y * width);
+        }
+
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        // Opposite corners of the crop in region coordinates
+        ResultPoint first = toRegion(left, top);
+        ResultPoint second = toRegion(left + width, top + height);
+
+        int regionLeft = (int) Math.min(first.getX(), second.getX());
+        int regionTop = (int) Math.min(first.getY(), second.getY());
+
+        return new YPlaneLuminanceSource(
+                data,
+                dataWidth,
+                dataHeight,
+                this.left + regionLeft,
+                this.top + regionTop,
+                quarterTurns % 2 == 0 ? width : height,
+                quarterTurns % 2 == 0 ? height : width,
+                quarterTurns,
+                inverted,
+                matrixBuffer
+        );
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        return orient(Orientation.ROTATED, matrixBuffer);
+    }
+
+    @Override
+    public LuminanceSource invert() {
+        return orient(Orientation.INVERTED, matrixBuffer);
+    }
+
+    /**
+     * Maps a point of this view into the region before rotation, without the region's offset.
+     */
+    private ResultPoint toRegion(float x, float y) {
+        switch (quarterTurns) {
+            case 1:
+                return new ResultPoint(regionWidth - y, x);
+            case 2:
+                return new ResultPoint(regionWidth - x, regionHeight - y);
+            case 3:
+                return new ResultPoint(y, regionHeight - x);
+            default:
+                return new ResultPoint(x, y);
+        }
+    }
+
+    /**
+     * @return Point of this view in coordinates of the data.
+     */
+    public ResultPoint toDataCoordinates(ResultPoint point) {
+        ResultPoint regionPoint = toRegion(point.getX(), point.getY());
+        return new ResultPoint(regionPoint.getX() + left, regionPoint.getY() + top);
+    }
+}
@@ -0,0 +1,81 @@
+package cz.bcx.qrscanner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default engine, decodes with {@link FrameDecoder}s. Decoders of the engine share the binarizer cascade, so they
+ * learn together which binarizer works for the scene. Regions of multiple codes are decoded by one executor shared by
+ * all engines of the process, so however many sessions decode multiple codes, their region threads stay bounded.
+ */
+public class ZxingDecodeEngine implements DecodeEngine {
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public DecodeEngine create(ScannerOptions options) {
+            return new ZxingDecodeEngine(options);
+        }
+    };
+
+    private static final String REGION_THREAD_NAME = "cz.bcx.qr_scanner.region_decoder_";
+
+    private static ExecutorService regionExecutor;
+
+    private final ScannerOptions options;
+    private final BinarizerCascade binarizerCascade;
+
+    public ZxingDecodeEngine(ScannerOptions options) {
+        this.options = options;
+        this.binarizerCascade = new BinarizerCascade(options.getBinarizerStrategy());
+    }
+
+    /**
+     * Executor shared by all decoders of all engines for decoding regions of multiple codes found in a single frame.
+     * Idle threads time out, so the executor doesn't have to be shut down.
+     */
+    private static synchronized ExecutorService getRegionExecutor() {
+        if(regionExecutor == null) {
+            regionExecutor = createRegionExecutor();
+        }
+
+        return regionExecutor;
+    }
+
+    private static ExecutorService createRegionExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                5,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private int count = 0;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, REGION_THREAD_NAME + count++);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    public BinarizerCascade getBinarizerCascade() {
+        return binarizerCascade;
+    }
+
+    @Override
+    public FrameDecoder createDecoder(PipelineStats stats) {
+        return new FrameDecoder(
+                options, binarizerCascade, options.isMultiCode() ? getRegionExecutor() : null, stats
+        );
+    }
+}
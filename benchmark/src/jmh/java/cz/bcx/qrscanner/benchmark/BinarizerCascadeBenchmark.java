@@ -0,0 +1,84 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cz.bcx.qrscanner.BinarizerCascade;
+import cz.bcx.qrscanner.Frame;
+import cz.bcx.qrscanner.FrameDecoder;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Mean decode time per frame of binarizer strategies for evenly lit codes, codes in a shadow and frames without
+ * any code.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BinarizerCascadeBenchmark {
+    @Param({"hybrid", "cascade"})
+    public String strategy;
+
+    @Param({"even", "shadow", "empty"})
+    public String scene;
+
+    private Frame frame;
+    private FrameDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticFrame.Builder builder = SyntheticFrame.builder(800, 600)
+                .codeSize(0.6f)
+                .rotation(10)
+                .noise(3);
+
+        if(!scene.equals("empty")) {
+            builder.version(4);
+        }
+
+        if(scene.equals("shadow")) {
+            builder.shadow(0.6f);
+        }
+
+        SyntheticFrame syntheticFrame = builder.build();
+
+        frame = new Frame(syntheticFrame.getWidth() * syntheticFrame.getHeight());
+        frame.copyPlane(
+                syntheticFrame.getPlane(),
+                syntheticFrame.getRowStride(),
+                1,
+                syntheticFrame.getWidth(),
+                syntheticFrame.getHeight(),
+                null,
+                0,
+                0
+        );
+
+        decoder = new FrameDecoder(
+                new ScannerOptions(),
+                new BinarizerCascade(BinarizerCascade.Strategy.getStrategyForName(strategy)),
+                null
+        );
+
+        if(decode().isEmpty() != scene.equals("empty")) {
+            throw new IllegalStateException("Unexpected decode result, scenario is not representative.");
+        }
+    }
+
+    @Benchmark
+    public List<Result> decode() {
+        return decoder.decode(frame);
+    }
+}
@@ -0,0 +1,111 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cz.bcx.qrscanner.BinarizerCascade;
+import cz.bcx.qrscanner.DecodeContext;
+import cz.bcx.qrscanner.Frame;
+import cz.bcx.qrscanner.YPlaneLuminanceSource;
+
+/**
+ * Garbage produced per frame by binarizers reusing buffers of a {@link DecodeContext} against ZXing's binarizers
+ * allocating them for every frame. Run with -prof gc and compare gc.alloc.rate.norm (bytes per frame), frames
+ * without a code are the common case the reusing path is meant for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecodeAllocationBenchmark {
+    @Param({"reused", "allocated"})
+    public String buffers;
+
+    @Param({"empty", "code"})
+    public String scene;
+
+    @Param({"800x600"})
+    public String captureSize;
+
+    private Frame frame;
+    private int width;
+    private int height;
+
+    private final DecodeContext context = new DecodeContext();
+    private final QRCodeReader reader = new QRCodeReader();
+    private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = captureSize.split("x");
+
+        SyntheticFrame.Builder builder = SyntheticFrame.builder(Integer.parseInt(size[0]), Integer.parseInt(size[1]))
+                .noise(3);
+        if(scene.equals("code")) {
+            builder.version(4).rotation(10);
+        }
+        SyntheticFrame syntheticFrame = builder.build();
+
+        width = syntheticFrame.getWidth();
+        height = syntheticFrame.getHeight();
+
+        frame = new Frame(width * height);
+        frame.copyPlane(syntheticFrame.getPlane(), syntheticFrame.getRowStride(), 1, width, height, null, 0, 0);
+
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+
+        if((decodeFrame() != null) != scene.equals("code")) {
+            throw new IllegalStateException("Unexpected decode result, scenario is not representative.");
+        }
+    }
+
+    private Binarizer createBinarizer(BinarizerCascade.Tier tier) {
+        YPlaneLuminanceSource source = new YPlaneLuminanceSource(frame.getData(), width, height);
+        return buffers.equals("reused") ? tier.create(source, context) : tier.create(source);
+    }
+
+    @Benchmark
+    public BitMatrix binarize() throws NotFoundException {
+        return createBinarizer(BinarizerCascade.Tier.HYBRID).getBlackMatrix();
+    }
+
+    /**
+     * Both tiers of the cascade in cost order, as a decode worker tries them on a frame.
+     * @return Decoded code, null if there is none.
+     */
+    @Benchmark
+    public Result decodeFrame() {
+        for(BinarizerCascade.Tier tier : BinarizerCascade.Tier.values()) {
+            try {
+                return reader.decode(new BinaryBitmap(createBinarizer(tier)), hints);
+            } catch (ReaderException e) {
+                // Next tier
+            } finally {
+                reader.reset();
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cz.bcx.qrscanner.DecodeEngine;
+import cz.bcx.qrscanner.DecodeEngines;
+import cz.bcx.qrscanner.Frame;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Plane copy, binarization and decoding of a single frame, the same path decode workers run for every camera frame.
+ * Run with "gradle jmh", single scenarios can be picked with JMH's -p option. Every built-in decode engine is
+ * measured, engines registered by an app can be added with -p engine=name.
+ * Throughput mode reports ops/s, sample mode latency percentiles and the gc profiler allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DecodePipelineBenchmark {
+    @Param({"zxing", "zxing-plain"})
+    public String engine;
+
+    // 800x600 is requested by Camera.createCameraInstance, the rest are PreviewQuality sizes
+    @Param({"800x600", "480x320", "640x480", "1024x768"})
+    public String captureSize;
+
+    @Param({"2", "10"})
+    public int version;
+
+    @Param({"0.6"})
+    public float codeSize;
+
+    @Param({"0", "20"})
+    public double rotation;
+
+    @Param({"0", "4"})
+    public double noise;
+
+    @Param({"0", "64"})
+    public int rowPadding;
+
+    private SyntheticFrame syntheticFrame;
+    private Frame frame;
+    private DecodeEngine.Decoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = captureSize.split("x");
+
+        syntheticFrame = SyntheticFrame.builder(Integer.parseInt(size[0]), Integer.parseInt(size[1]))
+                .version(version)
+                .codeSize(codeSize)
+                .rotation(rotation)
+                .noise(noise)
+                .rowPadding(rowPadding)
+                .build();
+
+        frame = new Frame(syntheticFrame.getWidth() * syntheticFrame.getHeight());
+        decoder = DecodeEngines.create(engine, new ScannerOptions()).createDecoder(null);
+
+        if(decodeFrame().isEmpty()) {
+            throw new IllegalStateException("Synthetic frame can't be decoded, scenario is not representative.");
+        }
+    }
+
+    @Benchmark
+    public List<Result> decodeFrame() {
+        frame.copyPlane(
+                syntheticFrame.getPlane(),
+                syntheticFrame.getRowStride(),
+                1,
+                syntheticFrame.getWidth(),
+                syntheticFrame.getHeight(),
+                null,
+                0,
+                0
+        );
+
+        return decoder.decode(frame);
+    }
+}
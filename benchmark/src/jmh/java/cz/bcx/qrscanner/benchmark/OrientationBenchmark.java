@@ -0,0 +1,120 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.InvertedLuminanceSource;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cz.bcx.qrscanner.Frame;
+import cz.bcx.qrscanner.Orientation;
+import cz.bcx.qrscanner.YPlaneLuminanceSource;
+
+/**
+ * Rotated and inverted views of a frame against the copying approach (ZXing's InvertedLuminanceSource, a rotated
+ * copy of the frame). Run with -prof gc to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrientationBenchmark {
+    @Param({"view", "copy"})
+    public String approach;
+
+    @Param({"inverted", "rotated"})
+    public String orientation;
+
+    private Frame frame;
+    private int width;
+    private int height;
+    private byte[] matrixBuffer;
+
+    private final QRCodeReader reader = new QRCodeReader();
+    private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReaderException {
+        SyntheticFrame syntheticFrame = SyntheticFrame.builder(800, 600)
+                .version(4)
+                .rotation(10)
+                .noise(3)
+                .inverted(orientation.equals("inverted"))
+                .build();
+
+        width = syntheticFrame.getWidth();
+        height = syntheticFrame.getHeight();
+        matrixBuffer = new byte[width * height];
+
+        frame = new Frame(width * height);
+        frame.copyPlane(syntheticFrame.getPlane(), syntheticFrame.getRowStride(), 1, width, height, null, 0, 0);
+
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+
+        if(decode() == null) {
+            throw new IllegalStateException("Code hasn't been decoded, scenario is not representative.");
+        }
+    }
+
+    private LuminanceSource createSource() {
+        YPlaneLuminanceSource source = new YPlaneLuminanceSource(frame.getData(), width, height);
+
+        if(approach.equals("view")) {
+            return source.orient(
+                    orientation.equals("inverted") ? Orientation.INVERTED : Orientation.ROTATED,
+                    matrixBuffer
+            );
+        }
+
+        if(orientation.equals("inverted")) {
+            return new InvertedLuminanceSource(source);
+        }
+
+        // Counter-clockwise rotated copy of the frame
+        byte[] data = frame.getData();
+        byte[] rotated = new byte[width * height];
+        for(int y = 0; y < width; y++) {
+            int row = y * height;
+            int column = width - 1 - y;
+            for(int x = 0; x < height; x++) {
+                rotated[row + x] = data[x * width + column];
+            }
+        }
+
+        return new YPlaneLuminanceSource(rotated, height, width);
+    }
+
+    @Benchmark
+    public BitMatrix binarize() throws NotFoundException {
+        return new HybridBinarizer(createSource()).getBlackMatrix();
+    }
+
+    @Benchmark
+    public Result decode() throws ReaderException {
+        try {
+            return reader.decode(new BinaryBitmap(new HybridBinarizer(createSource())), hints);
+        } finally {
+            reader.reset();
+        }
+    }
+}
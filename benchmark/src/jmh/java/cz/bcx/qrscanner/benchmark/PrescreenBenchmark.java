@@ -0,0 +1,80 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cz.bcx.qrscanner.BinarizerCascade;
+import cz.bcx.qrscanner.Frame;
+import cz.bcx.qrscanner.FrameDecoder;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Decoding of a frame with and without the finder pattern prescreen. Frames without a code are the ones the
+ * prescreen is meant for, frames with a code show what it adds to a successful decode. False negative rates are
+ * measured by the prescreenCorpus task instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrescreenBenchmark {
+    // Line spacing in pixels, 0 disables the prescreen
+    @Param({"0", "4"})
+    public int prescreenLineSpacing;
+
+    @Param({"empty", "clutter", "code"})
+    public String scene;
+
+    @Param({"0", "2"})
+    public int pyramidLevels;
+
+    private Frame frame;
+    private FrameDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticFrame.Builder builder = SyntheticFrame.builder(800, 600).noise(3);
+
+        if(scene.equals("clutter")) {
+            builder.clutter(40);
+        }
+        else if(scene.equals("code")) {
+            builder.version(4).codeSize(0.4f).rotation(20);
+        }
+
+        SyntheticFrame syntheticFrame = builder.build();
+        int width = syntheticFrame.getWidth();
+        int height = syntheticFrame.getHeight();
+
+        frame = new Frame(width * height);
+        frame.copyPlane(syntheticFrame.getPlane(), syntheticFrame.getRowStride(), 1, width, height, null, 0, 0);
+
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("prescreenLineSpacing", prescreenLineSpacing);
+        arguments.put("pyramidLevels", pyramidLevels);
+        ScannerOptions options = ScannerOptions.fromArguments(arguments);
+        decoder = new FrameDecoder(options, new BinarizerCascade(options.getBinarizerStrategy()), null);
+
+        if(decode().isEmpty() == scene.equals("code")) {
+            throw new IllegalStateException("Unexpected decode result, scenario is not representative.");
+        }
+    }
+
+    @Benchmark
+    public List<Result> decode() {
+        return decoder.decode(frame);
+    }
+}
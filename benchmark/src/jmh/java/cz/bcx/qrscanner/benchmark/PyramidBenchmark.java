@@ -0,0 +1,82 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cz.bcx.qrscanner.BinarizerCascade;
+import cz.bcx.qrscanner.Frame;
+import cz.bcx.qrscanner.FrameDecoder;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Mean decode time per frame with a resolution pyramid for close codes, distant codes and frames without any code.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PyramidBenchmark {
+    @Param({"0", "1", "2"})
+    public int pyramidLevels;
+
+    @Param({"close", "distant", "empty"})
+    public String scene;
+
+    private Frame frame;
+    private FrameDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticFrame.Builder builder = SyntheticFrame.builder(1024, 768)
+                .rotation(10)
+                .noise(3);
+
+        if(scene.equals("close")) {
+            builder.version(4).codeSize(0.7f);
+        }
+        else if(scene.equals("distant")) {
+            builder.version(4).codeSize(0.25f);
+        }
+
+        SyntheticFrame syntheticFrame = builder.build();
+
+        frame = new Frame(syntheticFrame.getWidth() * syntheticFrame.getHeight());
+        frame.copyPlane(
+                syntheticFrame.getPlane(),
+                syntheticFrame.getRowStride(),
+                1,
+                syntheticFrame.getWidth(),
+                syntheticFrame.getHeight(),
+                null,
+                0,
+                0
+        );
+
+        ScannerOptions options = ScannerOptions.fromArguments(
+                Collections.<String, Object>singletonMap("pyramidLevels", pyramidLevels)
+        );
+
+        decoder = new FrameDecoder(options, new BinarizerCascade(options.getBinarizerStrategy()), null);
+
+        if(decode().isEmpty() != scene.equals("empty")) {
+            throw new IllegalStateException("Unexpected decode result, scenario is not representative.");
+        }
+    }
+
+    @Benchmark
+    public List<Result> decode() {
+        return decoder.decode(frame);
+    }
+}
@@ -0,0 +1,147 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cz.bcx.qrscanner.BatchDecoder;
+import cz.bcx.qrscanner.DecodeWorkerPool;
+import cz.bcx.qrscanner.PgmImageLoader;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Decodes a directory of PGM images with {@link BatchDecoder} on a plain JVM, printing results as they come.
+ *
+ * Usage: gradle batchDecode -Pargs="[--generate 100] [--size 2048x1536] [--workers 4] [--quiet]
+ * [--option name=value]... directory"
+ * With --generate, the directory is first filled with synthetic images, every fourth of them without a code.
+ */
+public class BatchDecode {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int generate = 0;
+        int width = 2048;
+        int height = 1536;
+        int workers = DecodeWorkerPool.getDefaultWorkerCount();
+        boolean quiet = false;
+        Map<String, Object> options = new HashMap<>();
+        String directory = null;
+
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--generate":
+                    generate = Integer.parseInt(args[++i]);
+                    break;
+                case "--size":
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                case "--quiet":
+                    quiet = true;
+                    break;
+                case "--option":
+                    String[] option = args[++i].split("=", 2);
+                    options.put(option[0], FrameReplay.parseOptionValue(option[1]));
+                    break;
+                default:
+                    directory = args[i];
+            }
+        }
+
+        if(directory == null) {
+            throw new IllegalArgumentException("Directory of images is missing.");
+        }
+
+        File imageDirectory = new File(directory);
+        if(generate > 0) {
+            generateImages(imageDirectory, generate, width, height);
+        }
+
+        BatchDecoder decoder = new BatchDecoder(new PgmImageLoader(), workers);
+        List<File> files = decoder.listImages(imageDirectory);
+
+        final boolean printResults = !quiet;
+        final AtomicInteger codes = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final long start = System.nanoTime();
+
+        decoder.decode(files, ScannerOptions.fromArguments(options), new BatchDecoder.Listener() {
+            @Override
+            public void onFileDecoded(int index, File file, List<Result> results) {
+                codes.addAndGet(results.size());
+
+                if(printResults) {
+                    System.out.printf(Locale.US, "%8.1f ms  %s: %d code(s)%n",
+                            (System.nanoTime() - start) / 1e6, file.getName(), results.size());
+                }
+            }
+
+            @Override
+            public void onFileFailed(int index, File file, Exception e) {
+                System.out.println(file.getName() + ": " + e.getMessage());
+            }
+
+            @Override
+            public void onBatchFinished(int decoded, int failed, boolean cancelled) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf(Locale.US, "%d files decoded, %d failed, %d codes in %.2f s (%.1f files/s)%n",
+                        decoded, failed, codes.get(), seconds, decoded / seconds);
+                finished.countDown();
+            }
+        });
+
+        finished.await();
+        decoder.shutdown(1000);
+    }
+
+    private static void generateImages(File directory, int count, int width, int height) throws IOException {
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory: " + directory);
+        }
+
+        for(int i = 0; i < count; i++) {
+            SyntheticFrame.Builder builder = SyntheticFrame.builder(width, height)
+                    .noise(3)
+                    .seed(i)
+                    .direct(false);
+
+            if(i % 4 != 3) {
+                builder.version(1 + i % 10)
+                        .codeSize(0.15f + 0.05f * (i % 8))
+                        .center(0.3f + 0.05f * (i % 9), 0.35f + 0.05f * (i % 7))
+                        .rotation(i * 13 % 360);
+            }
+
+            writePgm(new File(directory, String.format(Locale.US, "image_%04d.pgm", i)), builder.build());
+        }
+    }
+
+    private static void writePgm(File file, SyntheticFrame frame) throws IOException {
+        try (OutputStream output = new FileOutputStream(file)) {
+            String header = "P5\n" + frame.getWidth() + " " + frame.getHeight() + "\n255\n";
+            output.write(header.getBytes(StandardCharsets.US_ASCII));
+
+            ByteBuffer plane = frame.getPlane();
+            byte[] row = new byte[frame.getWidth()];
+            for(int y = 0; y < frame.getHeight(); y++) {
+                plane.position(y * frame.getRowStride());
+                plane.get(row);
+                output.write(row);
+            }
+        }
+    }
+}
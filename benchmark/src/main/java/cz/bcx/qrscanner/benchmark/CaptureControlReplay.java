@@ -0,0 +1,258 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import cz.bcx.qrscanner.CaptureCapabilities;
+import cz.bcx.qrscanner.CaptureController;
+import cz.bcx.qrscanner.CaptureSettings;
+import cz.bcx.qrscanner.FramePipeline;
+import cz.bcx.qrscanner.PipelineStats;
+import cz.bcx.qrscanner.Region;
+import cz.bcx.qrscanner.ScanWindow;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Runs the {@link CaptureController} feedback loop against a simulated capture session instead of a camera. The
+ * simulated lens decides how blurred each generated frame is, the controller's settings move the lens.
+ *
+ * The scene is a code off the frame's center in front of a distant background, the app's scan window is around the
+ * code. Continuous focus slowly settles on the subject of its focus region, which is the background for the
+ * camera's default region. A triggered focus scan moves the lens to the subject of its region several times faster
+ * and locks it there. Defocus is rendered as a horizontal blur proportional to the distance of the lens from the
+ * code. Every trial starts with the lens at a random position. The model is made up to exercise the loop end to end,
+ * times it reports show how the policy reacts, not how a particular camera behaves.
+ *
+ * Usage: gradle captureControlReplay -Pargs="[--trials 10] [--frames 90] [--size 800x600] [--full-window]
+ * [--option name=value]..."
+ */
+public class CaptureControlReplay {
+    private static final long FRAME_INTERVAL = 33_333_333L; // ns
+
+    // Lens positions, 0 is far and 1 is the closest focus
+    private static final float BACKGROUND_DISTANCE = 0.1f;
+    private static final float CODE_DISTANCE = 0.75f;
+    // Lens movement per frame
+    private static final float CONTINUOUS_SPEED = 0.02f;
+    private static final float TRIGGERED_SPEED = 0.08f;
+    // Horizontal blur in pixels per unit of lens distance from the code
+    private static final float BLUR_PER_DISTANCE = 60;
+
+    // Code position in normalized frame coordinates, away from the center the camera focuses on by default
+    private static final float CODE_X = 0.3f;
+    private static final float CODE_Y = 0.35f;
+    private static final float CODE_SIZE = 0.3f;
+    // Dense enough to be located at a blur which is too strong to decode it
+    private static final int CODE_VERSION = 10;
+    private static final ScanWindow SCAN_WINDOW = new ScanWindow(0.125f, 0.125f, 0.35f, 0.45f);
+
+    /**
+     * Capture session stand-in with a lens moving towards what its focus settings point at.
+     */
+    private static final class SimulatedSession implements CaptureController.Target {
+        private final int sensorWidth;
+        private final int sensorHeight;
+
+        private CaptureSettings settings;
+        private float position;
+        private boolean scanning = false;
+
+        private SimulatedSession(int sensorWidth, int sensorHeight, float position) {
+            this.sensorWidth = sensorWidth;
+            this.sensorHeight = sensorHeight;
+            this.position = position;
+        }
+
+        @Override
+        public synchronized void applyCaptureSettings(CaptureSettings settings, boolean triggerFocus) {
+            this.settings = settings;
+            if(triggerFocus) scanning = true;
+        }
+
+        /**
+         * Moves the lens by one frame.
+         */
+        private synchronized void step() {
+            CaptureSettings.FocusMode mode = settings == null ?
+                    CaptureSettings.FocusMode.CONTINUOUS : settings.getFocusMode();
+
+            if(mode == CaptureSettings.FocusMode.CONTINUOUS) {
+                Region region = settings != null ? settings.getFocusRegion() : null;
+                position = moveTowards(position, getSubjectDistance(region), CONTINUOUS_SPEED);
+            }
+            else if(scanning) {
+                float subject = getSubjectDistance(settings.getFocusRegion());
+                position = moveTowards(position, subject, TRIGGERED_SPEED);
+                if(position == subject) scanning = false;
+            }
+        }
+
+        /**
+         * @return Distance of what is mostly in the region, the code if the region's center is on it. The default
+         * region is the whole frame, which is mostly background.
+         */
+        private float getSubjectDistance(Region region) {
+            if(region == null) return BACKGROUND_DISTANCE;
+
+            float centerX = (region.getLeft() + region.getWidth() / 2f) / sensorWidth;
+            float centerY = (region.getTop() + region.getHeight() / 2f) / sensorHeight;
+
+            boolean onCode = Math.abs(centerX - CODE_X) < CODE_SIZE / 2 && Math.abs(centerY - CODE_Y) < CODE_SIZE / 2;
+            return onCode ? CODE_DISTANCE : BACKGROUND_DISTANCE;
+        }
+
+        private synchronized int getBlur() {
+            return Math.round(Math.abs(position - CODE_DISTANCE) * BLUR_PER_DISTANCE);
+        }
+
+        private static float moveTowards(float position, float target, float speed) {
+            if(Math.abs(target - position) <= speed) return target;
+            return position + Math.signum(target - position) * speed;
+        }
+    }
+
+    private static final class Run {
+        long firstDecode = -1; // frame index
+        long focusTriggers;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int trials = 10;
+        int frames = 90;
+        int width = 800;
+        int height = 600;
+        boolean fullWindow = false;
+        Map<String, Object> options = new HashMap<>();
+
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--trials":
+                    trials = Integer.parseInt(args[++i]);
+                    break;
+                case "--frames":
+                    frames = Integer.parseInt(args[++i]);
+                    break;
+                case "--size":
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--full-window":
+                    // No scan window, focus on the code relies on the decode feedback alone
+                    fullWindow = true;
+                    break;
+                case "--option":
+                    String[] option = args[++i].split("=", 2);
+                    options.put(option[0], FrameReplay.parseOptionValue(option[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        for(String profile : new String[] {"preview", "scan"}) {
+            Map<String, Object> profileOptions = new HashMap<>(options);
+            profileOptions.put("captureProfile", profile);
+            ScannerOptions scannerOptions = ScannerOptions.fromArguments(profileOptions);
+
+            // Frames until the first decode, trials without any decode count as the whole length
+            long[] firstDecodes = new long[trials];
+            int decoded = 0;
+            long focusTriggers = 0;
+
+            // Both profiles start from the same positions
+            Random random = new Random(1);
+
+            for(int trial = 0; trial < trials; trial++) {
+                float startPosition = random.nextFloat();
+                Run run = replay(scannerOptions, fullWindow ? null : SCAN_WINDOW, startPosition, frames, width, height);
+
+                firstDecodes[trial] = run.firstDecode < 0 ? frames : run.firstDecode;
+                if(run.firstDecode >= 0) decoded++;
+                focusTriggers += run.focusTriggers;
+            }
+
+            Arrays.sort(firstDecodes);
+            System.out.printf(Locale.US,
+                    "%-7s: decoded in %d of %d trials, first decode median %.0f ms, max %.0f ms, focus triggers %d%n",
+                    profile, decoded, trials,
+                    firstDecodes[trials / 2] * FRAME_INTERVAL / 1e6,
+                    firstDecodes[trials - 1] * FRAME_INTERVAL / 1e6,
+                    focusTriggers);
+        }
+    }
+
+    private static Run replay(ScannerOptions options, ScanWindow scanWindow, float startPosition, int frames,
+                              int width, int height) throws InterruptedException {
+        final Run run = new Run();
+        final FrameReplay.ReplayClock clock = new FrameReplay.ReplayClock();
+        final long[] frameIndex = {0};
+
+        FramePipeline pipeline = new FramePipeline(options, clock, new FramePipeline.Listener() {
+            @Override
+            public void onCodesScanned(List<Result> results, long timestamp) {
+                if(run.firstDecode < 0) run.firstDecode = frameIndex[0];
+            }
+
+            @Override
+            public void onCodesTracked(List<Result> results, long timestamp) {}
+        });
+
+        // Sensor of the same aspect ratio as frames, with everything a phone's main camera supports
+        CaptureCapabilities capabilities = new CaptureCapabilities(
+                width * 4, height * 4, true, true, true, true, true,
+                new int[][] {{15, 30}, {30, 30}}
+        );
+
+        // Without the scan profile, the session keeps continuous focus with default regions
+        SimulatedSession session = new SimulatedSession(
+                capabilities.getSensorWidth(), capabilities.getSensorHeight(), startPosition
+        );
+        if(options.isScanCaptureProfile()) {
+            Region scanRegion = scanWindow == null ? null : scanWindow.toSensorRegion(
+                    width, height, capabilities.getSensorWidth(), capabilities.getSensorHeight()
+            );
+
+            CaptureController controller = new CaptureController(
+                    capabilities, scanRegion, options.getMaxExposureTime() * 1_000_000L, options.isCloseFocus(), session
+            );
+            session.applyCaptureSettings(controller.getSettings(), false);
+            pipeline.setCaptureController(controller);
+        }
+
+        pipeline.setScanningEnabled(true);
+        pipeline.start();
+
+        for(int i = 0; i < frames && run.firstDecode < 0; i++) {
+            frameIndex[0] = i;
+            session.step();
+
+            SyntheticFrame frame = SyntheticFrame.builder(width, height)
+                    .version(CODE_VERSION)
+                    .codeSize(CODE_SIZE)
+                    .center(CODE_X, CODE_Y)
+                    .noise(3)
+                    .motionBlur(session.getBlur())
+                    .seed(i)
+                    .build();
+
+            long timestamp = i * FRAME_INTERVAL;
+            clock.set(timestamp);
+            pipeline.onFrame(frame.getPlane(), frame.getRowStride(), 1, width, height, timestamp);
+
+            // Outcomes of a frame move the lens before the next one, as with a fast decoder
+            pipeline.awaitIdle(10_000);
+        }
+
+        pipeline.stop();
+
+        run.focusTriggers = pipeline.getStats().get(PipelineStats.Counter.FOCUS_TRIGGERS);
+        return run;
+    }
+}
@@ -0,0 +1,260 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import cz.bcx.qrscanner.DecodeEngine;
+import cz.bcx.qrscanner.DecodeEngines;
+import cz.bcx.qrscanner.Frame;
+import cz.bcx.qrscanner.LatencyHistogram;
+import cz.bcx.qrscanner.PgmImageLoader;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Decodes the same corpus with every registered {@link DecodeEngine} and compares their accuracy and decode times.
+ *
+ * The corpus is the synthetic one of {@link PrescreenCorpus}, every other frame without a code, optionally extended
+ * by a label set: a directory of binary PGM images, each with the expected content in a text file of the same name
+ * (code.pgm, code.txt). Images without a text file are expected to hold no code. The synthetic frames' noise is
+ * bounded by --noise, stock ZXing's hybrid binarizer reads hardly any code of the prescreen corpus' noisier frames.
+ *
+ * Every result is checked against the sample's known content. An engine conforms when it never reports a wrong
+ * content or a code in a frame without one, and reads every code the stock "zxing-plain" engine reads. The run fails
+ * if the reference reads no code at all, there would be nothing to compare with. The fastest conforming engine is
+ * recommended.
+ *
+ * Usage: gradle engineConformance -Pargs="[--frames 500] [--size 800x600] [--noise 4] [--labels directory]
+ * [--engines zxing,zxing-plain] [--option name=value]..."
+ */
+public class EngineConformance {
+    private static final String REFERENCE_ENGINE = "zxing-plain";
+    private static final int WARMUP_FRAMES = 20;
+
+    private static final class Sample {
+        private final String name;
+        private final String expected; // null if there is no code
+
+        private Sample(String name, String expected) {
+            this.name = name;
+            this.expected = expected;
+        }
+    }
+
+    private static final class EngineReport {
+        private final String engine;
+        private final boolean[] correctAt;
+        private int correct;
+        private int misread;
+        private int falsePositives;
+        private final LatencyHistogram decodeTimes = new LatencyHistogram();
+
+        private EngineReport(String engine, int samples) {
+            this.engine = engine;
+            this.correctAt = new boolean[samples];
+        }
+    }
+
+    private final int frames;
+    private final int width;
+    private final int height;
+    private final float maxNoise;
+    private final List<Sample> samples = new ArrayList<>();
+    private final List<File> labelImages = new ArrayList<>();
+    private final PgmImageLoader imageLoader = new PgmImageLoader();
+
+    private EngineConformance(int frames, int width, int height, float maxNoise, File labels) throws IOException {
+        this.frames = frames;
+        this.width = width;
+        this.height = height;
+        this.maxNoise = maxNoise;
+
+        for(int i = 0; i < frames; i++) {
+            SyntheticFrame frame = i % 2 == 0 ? createFrame(i) : null;
+            samples.add(new Sample("synthetic #" + i, frame != null ? frame.getContent() : null));
+        }
+
+        if(labels != null) {
+            File[] files = labels.listFiles();
+            if(files == null) {
+                throw new IOException("Not a directory: " + labels);
+            }
+            Arrays.sort(files);
+
+            for(File file : files) {
+                if(!imageLoader.canLoad(file)) continue;
+
+                File label = new File(file.getParentFile(), file.getName().replaceFirst("\\.[^.]*$", ".txt"));
+                String expected = label.isFile() ?
+                        new String(Files.readAllBytes(label.toPath()), StandardCharsets.UTF_8).trim() :
+                        null;
+
+                labelImages.add(file);
+                samples.add(new Sample(file.getName(), expected));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int frames = 500;
+        int width = 800;
+        int height = 600;
+        float maxNoise = 4;
+        File labels = null;
+        List<String> engines = DecodeEngines.getNames();
+        Map<String, Object> options = new HashMap<>();
+
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--frames":
+                    frames = Integer.parseInt(args[++i]);
+                    break;
+                case "--size":
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--noise":
+                    maxNoise = Float.parseFloat(args[++i]);
+                    break;
+                case "--labels":
+                    labels = new File(args[++i]);
+                    break;
+                case "--engines":
+                    engines = Arrays.asList(args[++i].split(","));
+                    break;
+                case "--option":
+                    String[] option = args[++i].split("=", 2);
+                    options.put(option[0], FrameReplay.parseOptionValue(option[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        // Conformance is relative to the reference, which is decoded even if it's not listed
+        if(!engines.contains(REFERENCE_ENGINE)) {
+            engines = new ArrayList<>(engines);
+            engines.add(0, REFERENCE_ENGINE);
+        }
+
+        EngineConformance conformance = new EngineConformance(frames, width, height, maxNoise, labels);
+        System.out.printf(Locale.US, "%d samples: %d synthetic %dx%d (noise up to %.1f), %d labeled images%n",
+                conformance.samples.size(), frames, width, height, maxNoise, conformance.labelImages.size());
+
+        List<EngineReport> reports = new ArrayList<>();
+        for(String engine : engines) {
+            Map<String, Object> engineOptions = new HashMap<>(options);
+            engineOptions.put("decodeEngine", engine);
+            reports.add(conformance.run(engine, ScannerOptions.fromArguments(engineOptions)));
+        }
+
+        conformance.printReports(reports);
+    }
+
+    private EngineReport run(String engine, ScannerOptions options) throws IOException {
+        DecodeEngine.Decoder decoder = DecodeEngines.create(engine, options).createDecoder(null);
+        EngineReport report = new EngineReport(engine, samples.size());
+        Frame frame = new Frame(width * height);
+
+        for(int i = 0; i < Math.min(WARMUP_FRAMES, samples.size()); i++) {
+            load(i, frame);
+            decoder.decode(frame);
+        }
+
+        for(int i = 0; i < samples.size(); i++) {
+            load(i, frame);
+
+            long start = System.nanoTime();
+            List<Result> results = decoder.decode(frame);
+            report.decodeTimes.record(System.nanoTime() - start);
+
+            String expected = samples.get(i).expected;
+            if(results.isEmpty()) continue;
+
+            if(expected == null) {
+                report.falsePositives++;
+                System.out.printf("%s: code in %s without any%n", engine, samples.get(i).name);
+            }
+            else if(expected.equals(results.get(0).getText())) {
+                report.correct++;
+                report.correctAt[i] = true;
+            }
+            else {
+                report.misread++;
+                System.out.printf("%s: wrong content in %s%n", engine, samples.get(i).name);
+            }
+        }
+
+        return report;
+    }
+
+    private void load(int index, Frame frame) throws IOException {
+        if(index < frames) {
+            SyntheticFrame syntheticFrame = index % 2 == 0 ?
+                    createFrame(index) :
+                    PrescreenCorpus.createFrame(width, height, index, false, 1, maxNoise);
+            frame.copyPlane(
+                    syntheticFrame.getPlane(), syntheticFrame.getRowStride(), 1, width, height, null, index, 0
+            );
+        }
+        else {
+            imageLoader.load(labelImages.get(index - frames), frame);
+        }
+    }
+
+    private SyntheticFrame createFrame(int index) {
+        return PrescreenCorpus.createFrame(width, height, index, true, 1, maxNoise);
+    }
+
+    private void printReports(List<EngineReport> reports) {
+        EngineReport reference = null;
+        for(EngineReport report : reports) {
+            if(report.engine.equals(REFERENCE_ENGINE)) reference = report;
+        }
+
+        int withCode = 0;
+        for(Sample sample : samples) {
+            if(sample.expected != null) withCode++;
+        }
+
+        System.out.println("engine          correct  misread  false pos.  missed vs. reference  mean us  p50 us  p90 us");
+
+        EngineReport fastest = null;
+        for(EngineReport report : reports) {
+            int missed = 0;
+            for(int i = 0; i < samples.size(); i++) {
+                if(reference.correctAt[i] && !report.correctAt[i]) missed++;
+            }
+
+            boolean conforms = report.misread == 0 && report.falsePositives == 0 && missed == 0;
+            if(conforms && (fastest == null || report.decodeTimes.getMean() < fastest.decodeTimes.getMean())) {
+                fastest = report;
+            }
+
+            System.out.printf(Locale.US, "%-14s %4d/%-4d %8d %11d %21d %8d %7d %7d%s%n",
+                    report.engine, report.correct, withCode, report.misread, report.falsePositives,
+                    missed,
+                    report.decodeTimes.getMean(), report.decodeTimes.getPercentile(50),
+                    report.decodeTimes.getPercentile(90), conforms ? "" : "  (doesn't conform)");
+        }
+
+        if(reference.correct == 0) {
+            throw new IllegalStateException("Reference engine " + REFERENCE_ENGINE + " reads none of the " + withCode +
+                    " codes, conformance can't be checked. Use a corpus it reads, e.g. lower --noise.");
+        }
+
+        System.out.println(fastest != null ?
+                "Fastest conforming engine: " + fastest.engine :
+                "No engine conforms.");
+    }
+}
@@ -0,0 +1,272 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cz.bcx.qrscanner.FramePipeline;
+import cz.bcx.qrscanner.FrameRecorder;
+import cz.bcx.qrscanner.LatencyHistogram;
+import cz.bcx.qrscanner.PipelineStats;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Replays frame sequences through {@link FramePipeline} (throttling, decoding and result filtering) on a plain JVM,
+ * without any camera. Frames are fed at the sequence's frame rate multiplied by the speed, the pipeline's clock
+ * follows frame timestamps.
+ *
+ * Usage: gradle replay -Pargs="[--fps 30] [--speed 1] [--size 800x600] [--length 90] [--stats]
+ * [--record file.qrrec] [--option name=value]... sequence..."
+ * Sequences are described in {@link FrameSequences#load}, options are the "initialize" method call arguments.
+ * Frames of all sequences can be recorded the same way the plugin records them, with the record* options.
+ */
+public class FrameReplay {
+    public static final class Report {
+        public String sequence;
+        public long framesProcessed;
+        public long framesThrottled;
+        public long framesBlurred;
+        public long framesUnchanged;
+        public long framesTracked;
+        public long framesDropped;
+        public long decodeAttempts;
+        public long codesFound;
+        public long codesReported;
+        public long timeToFirstDecode = -1; // ns
+        public long averageDecodeTime; // ns
+        public PipelineStats stats;
+
+        /**
+         * @return Latency percentiles of all pipeline stages, one stage per line.
+         */
+        public String formatStages() {
+            StringBuilder builder = new StringBuilder();
+
+            for(PipelineStats.Stage stage : PipelineStats.Stage.values()) {
+                LatencyHistogram histogram = stats.getHistogram(stage);
+                if(histogram.getCount() == 0) continue;
+
+                builder.append(String.format(Locale.US,
+                        "  %-18s count %6d, mean %8d us, p50 %8d us, p90 %8d us, p99 %8d us, max %8d us%n",
+                        stage, histogram.getCount(), histogram.getMean(), histogram.getPercentile(50),
+                        histogram.getPercentile(90), histogram.getPercentile(99), histogram.getMax()));
+            }
+
+            return builder.toString();
+        }
+
+        public double getHitRate() {
+            return decodeAttempts == 0 ? 0 : codesFound / (double) decodeAttempts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: processed %d, throttled %d, blurred %d, unchanged %d, dropped %d, decoded %d " +
+                    "(tracked %d, avg %.2f ms), found %d (hit rate %.1f %%), reported %d, time to first decode %s",
+                    sequence, framesProcessed, framesThrottled, framesBlurred, framesUnchanged, framesDropped,
+                    decodeAttempts, framesTracked, averageDecodeTime / 1e6, codesFound, getHitRate() * 100,
+                    codesReported,
+                    timeToFirstDecode < 0 ? "-" : String.format(Locale.US, "%.1f ms", timeToFirstDecode / 1e6));
+        }
+    }
+
+    /**
+     * Clock following timestamps of replayed frames.
+     */
+    static final class ReplayClock implements FramePipeline.Clock {
+        private final AtomicLong now = new AtomicLong();
+
+        @Override
+        public long nanoTime() {
+            return now.get();
+        }
+
+        void set(long time) {
+            now.set(time);
+        }
+    }
+
+    private final Map<String, Object> options;
+    private final double speed;
+    private FrameRecorder frameRecorder;
+
+    public FrameReplay(Map<String, Object> options, double speed) {
+        this.options = options;
+        this.speed = speed;
+    }
+
+    /**
+     * @param frameRecorder - Recorder of replayed frames and their outcomes, null to not record
+     */
+    public void setFrameRecorder(FrameRecorder frameRecorder) {
+        this.frameRecorder = frameRecorder;
+    }
+
+    public Report replay(String name, List<ReplayFrame> frames) throws InterruptedException {
+        final Report report = new Report();
+        report.sequence = name;
+
+        if(frames.isEmpty()) return report;
+
+        final ReplayClock clock = new ReplayClock();
+        final long firstTimestamp = frames.get(0).getTimestamp();
+        final AtomicLong firstDecode = new AtomicLong(-1);
+
+        // In-memory stand-in for the camera's state listener and the event sink
+        FramePipeline pipeline = new FramePipeline(
+                ScannerOptions.fromArguments(options),
+                clock,
+                new FramePipeline.Listener() {
+                    @Override
+                    public void onCodesScanned(List<Result> results, long timestamp) {
+                        firstDecode.compareAndSet(-1, clock.nanoTime() - firstTimestamp);
+                    }
+
+                    @Override
+                    public void onCodesTracked(List<Result> results, long timestamp) {}
+                }
+        );
+
+        pipeline.setFrameRecorder(frameRecorder);
+        pipeline.setScanningEnabled(true);
+        pipeline.start();
+
+        long replayStart = System.nanoTime();
+
+        for(ReplayFrame frame : frames) {
+            long frameTime = frame.getTimestamp() - firstTimestamp;
+
+            // Feed frames at the sequence's pace, so workers get as much time as on a device
+            long sleep = (long) (frameTime / speed) - (System.nanoTime() - replayStart);
+            if(sleep > 0) {
+                Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+            }
+
+            clock.set(frame.getTimestamp());
+            pipeline.onFrame(
+                    frame.getPlane().duplicate(),
+                    frame.getRowStride(),
+                    frame.getPixelStride(),
+                    frame.getWidth(),
+                    frame.getHeight(),
+                    frame.getTimestamp()
+            );
+        }
+
+        pipeline.awaitIdle(10_000);
+        pipeline.stop();
+
+        report.framesProcessed = pipeline.getFramesReceived();
+        report.framesThrottled = pipeline.getFramesThrottled();
+        report.framesBlurred = pipeline.getFramesBlurred();
+        report.framesUnchanged = pipeline.getFramesUnchanged();
+        report.framesTracked = pipeline.getFramesTracked();
+        report.framesDropped = pipeline.getFramesDropped();
+        report.decodeAttempts = pipeline.getDecodeAttempts();
+        report.codesFound = pipeline.getCodesFound();
+        report.codesReported = pipeline.getCodesReported();
+        report.timeToFirstDecode = firstDecode.get();
+        report.averageDecodeTime = pipeline.getAverageDecodeTime();
+        report.stats = pipeline.getStats();
+
+        return report;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int fps = 30;
+        double speed = 1;
+        boolean printStats = false;
+        int width = 800;
+        int height = 600;
+        int length = 90;
+        String recordFile = null;
+        Map<String, Object> options = new HashMap<>();
+        List<String> sequences = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fps":
+                    fps = Integer.parseInt(args[++i]);
+                    break;
+                case "--speed":
+                    speed = Double.parseDouble(args[++i]);
+                    break;
+                case "--size":
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--stats":
+                    printStats = true;
+                    break;
+                case "--length":
+                    length = Integer.parseInt(args[++i]);
+                    break;
+                case "--record":
+                    recordFile = args[++i];
+                    break;
+                case "--option":
+                    String[] option = args[++i].split("=", 2);
+                    options.put(option[0], parseOptionValue(option[1]));
+                    break;
+                default:
+                    sequences.add(args[i]);
+            }
+        }
+
+        if(sequences.isEmpty()) {
+            sequences.add("synthetic:approach");
+            sequences.add("synthetic:aiming");
+            sequences.add("synthetic:steady");
+            sequences.add("synthetic:empty");
+        }
+
+        FrameReplay replay = new FrameReplay(options, speed);
+
+        FrameRecorder frameRecorder = null;
+        if(recordFile != null) {
+            ScannerOptions scannerOptions = ScannerOptions.fromArguments(options);
+            frameRecorder = new FrameRecorder(
+                    new File(recordFile),
+                    scannerOptions.getRecordBuffers(),
+                    scannerOptions.getRecordFrameRate(),
+                    scannerOptions.getRecordMaxSize()
+            );
+            replay.setFrameRecorder(frameRecorder);
+        }
+
+        for(String sequence : sequences) {
+            List<ReplayFrame> frames = FrameSequences.load(sequence, fps, width, height, length);
+            Report report = replay.replay(sequence, frames);
+
+            System.out.println(report);
+            if(printStats) {
+                System.out.print(report.formatStages());
+            }
+        }
+
+        if(frameRecorder != null) {
+            frameRecorder.close();
+            System.out.printf(Locale.US, "Recorded into %s, %d frames not recorded for lack of buffers%s%n",
+                    recordFile, frameRecorder.getOverruns(), frameRecorder.isFull() ? ", size limit reached" : "");
+        }
+    }
+
+    static Object parseOptionValue(String value) {
+        if(value.equals("true") || value.equals("false")) return Boolean.parseBoolean(value);
+
+        try {
+            return value.contains(".") ? (Object) Double.parseDouble(value) : (Object) Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package cz.bcx.qrscanner.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cz.bcx.qrscanner.FrameRecording;
+
+/**
+ * Frame sequences for {@link FrameReplay}: generated ones and recorded ones loaded from disk.
+ */
+public final class FrameSequences {
+    private static final String SYNTHETIC_PREFIX = "synthetic:";
+    private static final String RECORDING_SUFFIX = ".qrrec";
+
+    private FrameSequences() {}
+
+    /**
+     * @param name - "synthetic:approach", "synthetic:aiming", "synthetic:steady", "synthetic:empty", a recording made
+     *             by the plugin's frame recorder (*.qrrec) or a directory of binary PGM (P5) frames replayed in file
+     *             name order
+     * @param fps - Frame rate used for frame timestamps, recordings keep their sensor timestamps
+     */
+    public static List<ReplayFrame> load(String name, int fps, int width, int height, int length) throws IOException {
+        if(name.startsWith(SYNTHETIC_PREFIX)) {
+            return synthetic(name.substring(SYNTHETIC_PREFIX.length()), fps, width, height, length);
+        }
+
+        if(name.endsWith(RECORDING_SUFFIX)) {
+            return recording(new File(name));
+        }
+
+        return pgmDirectory(new File(name), fps);
+    }
+
+    /**
+     * "approach" - code getting closer to the camera, from too small to decode to filling most of the frame,
+     * "aiming" - code moving into the view with a motion blur which stops in the last third of the sequence,
+     * "steady" - code held in the middle of the view,
+     * "empty" - no code at all.
+     */
+    public static List<ReplayFrame> synthetic(String kind, int fps, int width, int height, int length) {
+        List<ReplayFrame> frames = new ArrayList<>(length);
+
+        for(int i = 0; i < length; i++) {
+            SyntheticFrame.Builder builder = SyntheticFrame.builder(width, height)
+                    .noise(3)
+                    .seed(i);
+
+            if(kind.equals("approach")) {
+                float progress = i / (float) Math.max(1, length - 1);
+                builder.version(4)
+                        .codeSize(0.1f + 0.6f * progress)
+                        .rotation(10 - 10 * progress);
+            }
+            else if(kind.equals("aiming")) {
+                float progress = Math.min(1, i / (float) Math.max(1, length - 1) * 1.5f);
+                builder.version(4)
+                        .codeSize(0.5f)
+                        .center(0.2f + 0.3f * progress, 0.5f)
+                        .motionBlur(Math.round(32 * (1 - progress)));
+            }
+            else if(kind.equals("steady")) {
+                builder.version(4)
+                        .codeSize(0.5f)
+                        .rotation(3);
+            }
+            else if(!kind.equals("empty")) {
+                throw new IllegalArgumentException("Unknown synthetic sequence: " + kind);
+            }
+
+            frames.add(ReplayFrame.of(builder.build(), frameTimestamp(i, fps)));
+        }
+
+        return frames;
+    }
+
+    public static List<ReplayFrame> pgmDirectory(File directory, int fps) throws IOException {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+
+        Arrays.sort(files);
+
+        List<ReplayFrame> frames = new ArrayList<>();
+        for(File file : files) {
+            if(!file.getName().endsWith(".pgm")) continue;
+
+            frames.add(readPgm(file, frameTimestamp(frames.size(), fps)));
+        }
+
+        return frames;
+    }
+
+    public static List<ReplayFrame> recording(File file) throws IOException {
+        try (FrameRecording recording = FrameRecording.open(file)) {
+            List<ReplayFrame> frames = new ArrayList<>(recording.getEntries().size());
+
+            for(FrameRecording.Entry entry : recording.getEntries()) {
+                frames.add(new ReplayFrame(
+                        recording.readPlane(entry), entry.getWidth(), entry.getHeight(), entry.getWidth(), 1,
+                        entry.getTimestamp()
+                ));
+            }
+
+            return frames;
+        }
+    }
+
+    private static ReplayFrame readPgm(File file, long timestamp) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(!nextToken(buffer).equals("P5")) {
+                throw new IOException("Only binary PGM (P5) files are supported: " + file);
+            }
+
+            int width = Integer.parseInt(nextToken(buffer));
+            int height = Integer.parseInt(nextToken(buffer));
+            int maxValue = Integer.parseInt(nextToken(buffer));
+            if(maxValue > 255) {
+                throw new IOException("Only 8-bit PGM files are supported: " + file);
+            }
+
+            // Single whitespace separates the header from the pixels
+            buffer.get();
+            ByteBuffer plane = buffer.slice();
+
+            return new ReplayFrame(plane, width, height, width, 1, timestamp);
+        }
+    }
+
+    private static String nextToken(ByteBuffer buffer) {
+        StringBuilder token = new StringBuilder();
+
+        while(buffer.hasRemaining()) {
+            char c = (char) buffer.get(buffer.position());
+
+            if(c == '#' && token.length() == 0) {
+                while(buffer.hasRemaining() && buffer.get() != '\n');
+            }
+            else if(Character.isWhitespace(c)) {
+                if(token.length() > 0) break;
+                buffer.get();
+            }
+            else {
+                token.append(c);
+                buffer.get();
+            }
+        }
+
+        return token.toString();
+    }
+
+    private static long frameTimestamp(int index, int fps) {
+        return index * 1_000_000_000L / fps;
+    }
+}
@@ -0,0 +1,191 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import cz.bcx.qrscanner.DecodeScheduler;
+import cz.bcx.qrscanner.DecodeWorkerPool;
+import cz.bcx.qrscanner.FramePipeline;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Replays several frame sequences at once, each through its own {@link FramePipeline} as a scanner session of the
+ * plugin, all of them decoded by one shared {@link DecodeScheduler}. Every session has an in-memory stand-in for its
+ * camera, a thread feeding the sequence at its own frame rate.
+ *
+ * Reports how many of the frames handed to decoders each session got decoded. With a fair scheduler the shares are
+ * about the same however fast the cameras are, the fairness index is Jain's index of the shares (1 is fair).
+ *
+ * Usage: gradle multiSessionReplay -Pargs="[--threads 2] [--fps 30] [--speed 1] [--size 800x600] [--length 90]
+ * [--option name=value]... sequence[@fps]..."
+ * Sequences are described in {@link FrameSequences#load}, options are shared by all sessions.
+ */
+public class MultiSessionReplay {
+    private static final class Session extends Thread {
+        private final String sequence;
+        private final List<ReplayFrame> frames;
+        private final double speed;
+        private final FrameReplay.ReplayClock clock = new FrameReplay.ReplayClock();
+        private final FramePipeline pipeline;
+
+        private Session(String sequence, List<ReplayFrame> frames, double speed, ScannerOptions options,
+                        DecodeScheduler scheduler) {
+            super("camera_" + sequence);
+
+            this.sequence = sequence;
+            this.frames = frames;
+            this.speed = speed;
+            this.pipeline = new FramePipeline(options, scheduler, clock, new FramePipeline.Listener() {
+                @Override
+                public void onCodesScanned(List<Result> results, long timestamp) {}
+
+                @Override
+                public void onCodesTracked(List<Result> results, long timestamp) {}
+            });
+        }
+
+        @Override
+        public void run() {
+            if(frames.isEmpty()) return;
+
+            long firstTimestamp = frames.get(0).getTimestamp();
+            long replayStart = System.nanoTime();
+
+            try {
+                for(ReplayFrame frame : frames) {
+                    long frameTime = frame.getTimestamp() - firstTimestamp;
+                    long sleep = (long) (frameTime / speed) - (System.nanoTime() - replayStart);
+                    if(sleep > 0) {
+                        Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+                    }
+
+                    clock.set(frame.getTimestamp());
+                    pipeline.onFrame(
+                            frame.getPlane().duplicate(),
+                            frame.getRowStride(),
+                            frame.getPixelStride(),
+                            frame.getWidth(),
+                            frame.getHeight(),
+                            frame.getTimestamp()
+                    );
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * @return Frames handed to the decoders, either decoded or replaced by a newer frame while waiting.
+         */
+        private long getFramesOffered() {
+            return pipeline.getDecodeAttempts() + pipeline.getFramesDropped();
+        }
+
+        private double getDecodedShare() {
+            long offered = getFramesOffered();
+            return offered == 0 ? 0 : pipeline.getDecodeAttempts() / (double) offered;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = DecodeWorkerPool.getDefaultWorkerCount();
+        int fps = 30;
+        double speed = 1;
+        int width = 800;
+        int height = 600;
+        int length = 90;
+        Map<String, Object> options = new HashMap<>();
+        List<String> sequences = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--fps":
+                    fps = Integer.parseInt(args[++i]);
+                    break;
+                case "--speed":
+                    speed = Double.parseDouble(args[++i]);
+                    break;
+                case "--size":
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--length":
+                    length = Integer.parseInt(args[++i]);
+                    break;
+                case "--option":
+                    String[] option = args[++i].split("=", 2);
+                    options.put(option[0], FrameReplay.parseOptionValue(option[1]));
+                    break;
+                default:
+                    sequences.add(args[i]);
+            }
+        }
+
+        if(sequences.isEmpty()) {
+            sequences.add("synthetic:steady@60");
+            sequences.add("synthetic:steady");
+            sequences.add("synthetic:approach");
+        }
+
+        DecodeScheduler scheduler = new DecodeScheduler(threads);
+        ScannerOptions scannerOptions = ScannerOptions.fromArguments(options);
+        List<Session> sessions = new ArrayList<>();
+
+        for(String sequence : sequences) {
+            int at = sequence.lastIndexOf('@');
+            String name = at < 0 ? sequence : sequence.substring(0, at);
+            int sessionFps = at < 0 ? fps : Integer.parseInt(sequence.substring(at + 1));
+
+            // Each session spans the same time, faster cameras deliver more frames
+            int sessionLength = (int) ((long) length * sessionFps / fps);
+            List<ReplayFrame> frames = FrameSequences.load(name, sessionFps, width, height, sessionLength);
+
+            sessions.add(new Session(sequence, frames, speed, scannerOptions, scheduler));
+        }
+
+        for(Session session : sessions) {
+            session.pipeline.setScanningEnabled(true);
+            session.pipeline.start();
+        }
+        for(Session session : sessions) {
+            session.start();
+        }
+        for(Session session : sessions) {
+            session.join();
+        }
+        for(Session session : sessions) {
+            session.pipeline.awaitIdle(10_000);
+            session.pipeline.stop();
+        }
+
+        System.out.printf(Locale.US, "%d sessions on %d decode threads%n", sessions.size(), threads);
+
+        double shareSum = 0;
+        double shareSquareSum = 0;
+
+        for(Session session : sessions) {
+            double share = session.getDecodedShare();
+            shareSum += share;
+            shareSquareSum += share * share;
+
+            System.out.printf(Locale.US,
+                    "%s: received %d, offered to decoders %d, decoded %d (%.1f %%), dropped %d, avg decode %.2f ms%n",
+                    session.sequence, session.pipeline.getFramesReceived(), session.getFramesOffered(),
+                    session.pipeline.getDecodeAttempts(), share * 100, session.pipeline.getFramesDropped(),
+                    session.pipeline.getAverageDecodeTime() / 1e6);
+        }
+
+        double fairness = shareSquareSum == 0 ? 1 : shareSum * shareSum / (sessions.size() * shareSquareSum);
+        System.out.printf(Locale.US, "Fairness index of decoded shares: %.3f%n", fairness);
+    }
+}
@@ -0,0 +1,166 @@
+package cz.bcx.qrscanner.benchmark;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+
+import cz.bcx.qrscanner.BinarizerCascade;
+import cz.bcx.qrscanner.FinderPrescreen;
+import cz.bcx.qrscanner.Frame;
+import cz.bcx.qrscanner.FrameDecoder;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Measures the finder pattern prescreen on a corpus of synthetic frames, half of them with a code of random version,
+ * size, rotation and position, all of them with random noise, shadow, blur and background clutter.
+ *
+ * False negative rate is the share of frames the full decoder decodes, which the prescreen would reject. False
+ * positive rate is the share of frames without any code which the prescreen lets through to the decoder.
+ *
+ * --brightness scales all frames down to simulate a dark scene with little contrast between dark and light modules.
+ *
+ * Usage: gradle prescreenCorpus -Pargs="[--frames 1000] [--size 800x600] [--spacing 2,3,4,6] [--brightness 0.2]"
+ */
+public class PrescreenCorpus {
+    public static void main(String[] args) {
+        int frames = 1000;
+        int width = 800;
+        int height = 600;
+        String[] spacings = {"2", "3", "4", "6"};
+        float brightness = 1;
+
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--frames":
+                    frames = Integer.parseInt(args[++i]);
+                    break;
+                case "--size":
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--spacing":
+                    spacings = args[++i].split(",");
+                    break;
+                case "--brightness":
+                    brightness = Float.parseFloat(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        FinderPrescreen[] prescreens = new FinderPrescreen[spacings.length];
+        for(int i = 0; i < spacings.length; i++) {
+            prescreens[i] = new FinderPrescreen(Integer.parseInt(spacings[i]), false);
+        }
+
+        int[] falseNegatives = new int[spacings.length];
+        int[] falsePositives = new int[spacings.length];
+        long[] prescreenTimes = new long[spacings.length];
+
+        int decodable = 0;
+        int undecodable = 0;
+        int empty = 0;
+        long emptyDecodeTime = 0;
+
+        // Reference decoder decodes every frame
+        ScannerOptions options = ScannerOptions.fromArguments(
+                Collections.<String, Object>singletonMap("prescreenLineSpacing", 0));
+        FrameDecoder decoder = new FrameDecoder(options, new BinarizerCascade(options.getBinarizerStrategy()), null);
+        Frame frame = new Frame(width * height);
+
+        for(int i = 0; i < frames; i++) {
+            boolean withCode = i % 2 == 0;
+            SyntheticFrame syntheticFrame = createFrame(width, height, i, withCode, brightness);
+
+            frame.copyPlane(syntheticFrame.getPlane(), syntheticFrame.getRowStride(), 1, width, height, null, 0, 0);
+
+            long decodeStart = System.nanoTime();
+            boolean decoded = !decoder.decode(frame).isEmpty();
+            long decodeTime = System.nanoTime() - decodeStart;
+
+            if(withCode && !decoded) {
+                // Neither the decoder finds the code, the prescreen can't miss it
+                undecodable++;
+                continue;
+            }
+
+            if(withCode) {
+                decodable++;
+            }
+            else {
+                empty++;
+                emptyDecodeTime += decodeTime;
+            }
+
+            for(int s = 0; s < prescreens.length; s++) {
+                long prescreenStart = System.nanoTime();
+                boolean candidate = prescreens[s].scan(frame.getData(), width, height);
+                prescreenTimes[s] += System.nanoTime() - prescreenStart;
+
+                if(withCode && !candidate) falseNegatives[s]++;
+                if(!withCode && candidate) falsePositives[s]++;
+            }
+        }
+
+        System.out.printf(Locale.US, "%d frames %dx%d: %d decodable, %d undecodable, %d without code%n",
+                frames, width, height, decodable, undecodable, empty);
+        System.out.printf(Locale.US, "Full decode of a frame without code: %.0f us%n",
+                emptyDecodeTime / 1e3 / Math.max(1, empty));
+        System.out.println("spacing  false negatives  false positives  prescreen");
+
+        for(int s = 0; s < spacings.length; s++) {
+            System.out.printf(Locale.US, "%7s  %8d (%5.2f%%)  %8d (%5.1f%%)  %6.0f us%n",
+                    spacings[s],
+                    falseNegatives[s], 100.0 * falseNegatives[s] / Math.max(1, decodable),
+                    falsePositives[s], 100.0 * falsePositives[s] / Math.max(1, empty),
+                    prescreenTimes[s] / 1e3 / Math.max(1, decodable + empty));
+        }
+    }
+
+    /**
+     * Frames are generated from their index, so every run and every user of the corpus gets the same frames.
+     */
+    static SyntheticFrame createFrame(int width, int height, int index, boolean withCode) {
+        return createFrame(width, height, index, withCode, 1, 8);
+    }
+
+    static SyntheticFrame createFrame(int width, int height, int index, boolean withCode, float brightness) {
+        return createFrame(width, height, index, withCode, brightness, 8);
+    }
+
+    /**
+     * @param maxNoise - Upper bound of the noise's standard deviation, drawn at random for every frame
+     */
+    static SyntheticFrame createFrame(int width, int height, int index, boolean withCode, float brightness,
+                                      float maxNoise) {
+        Random random = new Random(index);
+
+        SyntheticFrame.Builder builder = SyntheticFrame.builder(width, height)
+                .brightness(brightness)
+                .noise(random.nextFloat() * maxNoise)
+                .shadow(random.nextBoolean() ? random.nextFloat() * 0.6f : 0)
+                .motionBlur(random.nextInt(4))
+                .clutter(random.nextInt(40))
+                .seed(index)
+                .direct(false);
+
+        if(withCode) {
+            // Code size is relative to the shorter side, centers keep the whole code in the frame
+            float codeSize = 0.15f + random.nextFloat() * 0.65f;
+            float marginY = codeSize / 2;
+            float marginX = marginY * height / width;
+
+            builder.version(1 + random.nextInt(10))
+                    .codeSize(codeSize)
+                    .rotation(random.nextInt(360))
+                    .center(
+                            marginX + random.nextFloat() * (1 - 2 * marginX),
+                            marginY + random.nextFloat() * (1 - 2 * marginY)
+                    );
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,94 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import cz.bcx.qrscanner.DecodeEngine;
+import cz.bcx.qrscanner.DecodeEngines;
+import cz.bcx.qrscanner.DecodeStatus;
+import cz.bcx.qrscanner.Frame;
+import cz.bcx.qrscanner.FrameRecorder;
+import cz.bcx.qrscanner.FrameRecording;
+import cz.bcx.qrscanner.ScannerOptions;
+
+/**
+ * Lists frames of a recording made by the plugin's frame recorder and decodes every one of them again, so the
+ * outcome on the device can be compared with the outcome of the current decoder and options, including another
+ * decode engine (--option decodeEngine=name).
+ *
+ * Usage: gradle recordingDump -Pargs="[--quiet] [--option name=value]... recording.qrrec"
+ */
+public class RecordingDump {
+    public static void main(String[] args) throws IOException {
+        boolean quiet = false;
+        Map<String, Object> options = new HashMap<>();
+        String file = null;
+
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--quiet":
+                    quiet = true;
+                    break;
+                case "--option":
+                    String[] option = args[++i].split("=", 2);
+                    options.put(option[0], FrameReplay.parseOptionValue(option[1]));
+                    break;
+                default:
+                    file = args[i];
+            }
+        }
+
+        if(file == null) {
+            throw new IllegalArgumentException("Recording file is missing.");
+        }
+
+        ScannerOptions scannerOptions = ScannerOptions.fromArguments(options);
+        DecodeEngine.Decoder decoder = DecodeEngines.create(scannerOptions.getDecodeEngine(), scannerOptions)
+                .createDecoder(null);
+
+        Map<FrameRecorder.Outcome, Integer> recorded = new EnumMap<>(FrameRecorder.Outcome.class);
+        Map<DecodeStatus, Integer> replayed = new EnumMap<>(DecodeStatus.class);
+
+        try (FrameRecording recording = FrameRecording.open(new File(file))) {
+            List<FrameRecording.Entry> entries = recording.getEntries();
+            Frame frame = new Frame(0);
+            long firstTimestamp = entries.isEmpty() ? 0 : entries.get(0).getTimestamp();
+
+            for(int i = 0; i < entries.size(); i++) {
+                FrameRecording.Entry entry = entries.get(i);
+                recording.readFrame(entry, frame, i);
+
+                List<Result> results = decoder.decode(frame);
+                DecodeStatus status = decoder.getLastStatus();
+
+                increment(recorded, entry.getOutcome());
+                increment(replayed, status);
+
+                if(!quiet) {
+                    System.out.printf(Locale.US,
+                            "#%-5d %9.1f ms  %dx%d (stride %d, pixel stride %d)  %-11s -> %-9s %s%n",
+                            entry.getId(), (entry.getTimestamp() - firstTimestamp) / 1e6,
+                            entry.getWidth(), entry.getHeight(), entry.getRowStride(), entry.getPixelStride(),
+                            entry.getOutcome(), status, results.isEmpty() ? "" : results.get(0).getText());
+                }
+            }
+
+            System.out.printf(Locale.US, "%d frames%s%n", entries.size(),
+                    recording.isIndexed() ? "" : ", recording was not closed, index rebuilt from records");
+            System.out.println("Recorded outcomes: " + recorded);
+            System.out.println("Decoded again:     " + replayed);
+        }
+    }
+
+    private static <K> void increment(Map<K, Integer> counts, K key) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+}
@@ -0,0 +1,55 @@
+package cz.bcx.qrscanner.benchmark;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Y plane of a single frame of a replayed sequence.
+ */
+public final class ReplayFrame {
+    private final ByteBuffer plane;
+    private final int width;
+    private final int height;
+    private final int rowStride;
+    private final int pixelStride;
+    private final long timestamp;
+
+    public ReplayFrame(ByteBuffer plane, int width, int height, int rowStride, int pixelStride, long timestamp) {
+        this.plane = plane;
+        this.width = width;
+        this.height = height;
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.timestamp = timestamp;
+    }
+
+    public static ReplayFrame of(SyntheticFrame frame, long timestamp) {
+        return new ReplayFrame(frame.getPlane(), frame.getWidth(), frame.getHeight(), frame.getRowStride(), 1, timestamp);
+    }
+
+    public ByteBuffer getPlane() {
+        return plane;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRowStride() {
+        return rowStride;
+    }
+
+    public int getPixelStride() {
+        return pixelStride;
+    }
+
+    /**
+     * @return Capture time of the frame in nanoseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
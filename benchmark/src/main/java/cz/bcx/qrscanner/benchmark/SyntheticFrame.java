@@ -0,0 +1,348 @@
+package cz.bcx.qrscanner.benchmark;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Y plane of a camera frame with a rendered QR code, laid out like a plane of android.media.Image:
+ * rows are rowStride bytes apart and the last row is not padded.
+ */
+public final class SyntheticFrame {
+    private static final int DARK = 30;
+    private static final int LIGHT = 220;
+    private static final int QUIET_ZONE = 4; // modules
+
+    private final ByteBuffer plane;
+    private final int width;
+    private final int height;
+    private final int rowStride;
+    private final String content;
+    private final int version;
+
+    private SyntheticFrame(ByteBuffer plane, int width, int height, int rowStride, String content, int version) {
+        this.plane = plane;
+        this.width = width;
+        this.height = height;
+        this.rowStride = rowStride;
+        this.content = content;
+        this.version = version;
+    }
+
+    public static Builder builder(int width, int height) {
+        return new Builder(width, height);
+    }
+
+    /**
+     * @return Content which encodes into a QR code of given version at error correction level M (byte mode).
+     */
+    public static String contentForVersion(int version) {
+        // Byte mode capacities of versions 1 - 40 at level M
+        int[] capacities = {
+                14, 26, 42, 62, 84, 106, 122, 152, 180, 213,
+                251, 287, 331, 362, 412, 450, 504, 560, 624, 666,
+                711, 779, 857, 911, 997, 1059, 1125, 1190, 1264, 1370,
+                1452, 1538, 1628, 1722, 1809, 1911, 1989, 2099, 2213, 2331
+        };
+
+        char[] content = new char[capacities[version - 1]];
+        for(int i = 0; i < content.length; i++) {
+            content[i] = (char) ('a' + (i * 7 % 26));
+        }
+
+        return new String(content);
+    }
+
+    public ByteBuffer getPlane() {
+        return plane;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRowStride() {
+        return rowStride;
+    }
+
+    /**
+     * @return Encoded content, null if the frame contains no code.
+     */
+    public String getContent() {
+        return content;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public static final class Builder {
+        private final int width;
+        private final int height;
+
+        private String content;
+        private int version = 0;
+        private float codeSize = 0.5f;
+        private float centerX = 0.5f;
+        private float centerY = 0.5f;
+        private double rotation = 0;
+        private double noise = 0;
+        private int rowPadding = 0;
+        private float shadow = 0;
+        private float brightness = 1;
+        private int motionBlur = 0;
+        private int clutter = 0;
+        private boolean inverted = false;
+        private boolean direct = true;
+        private long seed = 42;
+
+        private Builder(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        public Builder version(int version) {
+            this.version = version;
+            this.content = contentForVersion(version);
+            return this;
+        }
+
+        public Builder content(String content) {
+            this.content = content;
+            return this;
+        }
+
+        /**
+         * @param codeSize - Size of the code including its quiet zone relative to the shorter side of the frame
+         */
+        public Builder codeSize(float codeSize) {
+            this.codeSize = codeSize;
+            return this;
+        }
+
+        /**
+         * @param centerX - Normalized horizontal position of the code's center
+         * @param centerY - Normalized vertical position of the code's center
+         */
+        public Builder center(float centerX, float centerY) {
+            this.centerX = centerX;
+            this.centerY = centerY;
+            return this;
+        }
+
+        /**
+         * @param rotation - Rotation of the code in degrees
+         */
+        public Builder rotation(double rotation) {
+            this.rotation = rotation;
+            return this;
+        }
+
+        /**
+         * @param noise - Standard deviation of gaussian noise added to every pixel
+         */
+        public Builder noise(double noise) {
+            this.noise = noise;
+            return this;
+        }
+
+        /**
+         * @param rowPadding - Number of bytes padding every row, row stride is width + rowPadding
+         */
+        public Builder rowPadding(int rowPadding) {
+            this.rowPadding = rowPadding;
+            return this;
+        }
+
+        /**
+         * @param shadow - Darkening of the right half of the frame, the shadow has a soft edge in the middle
+         */
+        public Builder shadow(float shadow) {
+            this.shadow = shadow;
+            return this;
+        }
+
+        /**
+         * @param brightness - Scale of all pixel values before noise is added, low values simulate a dark scene
+         */
+        public Builder brightness(float brightness) {
+            this.brightness = brightness;
+            return this;
+        }
+
+        /**
+         * @param motionBlur - Length in pixels of a horizontal motion blur
+         */
+        public Builder motionBlur(int motionBlur) {
+            this.motionBlur = motionBlur;
+            return this;
+        }
+
+        /**
+         * @param clutter - Number of random rectangles of random gray levels drawn into the background
+         */
+        public Builder clutter(int clutter) {
+            this.clutter = clutter;
+            return this;
+        }
+
+        /**
+         * @param inverted - Render a light code with dark quiet zone
+         */
+        public Builder inverted(boolean inverted) {
+            this.inverted = inverted;
+            return this;
+        }
+
+        public Builder direct(boolean direct) {
+            this.direct = direct;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public SyntheticFrame build() {
+            int rowStride = width + rowPadding;
+            byte[] pixels = new byte[rowStride * (height - 1) + width];
+            Arrays.fill(pixels, (byte) LIGHT);
+
+            if(clutter > 0) {
+                renderClutter(pixels, rowStride);
+            }
+
+            int renderedVersion = 0;
+            if(content != null) {
+                renderedVersion = renderCode(pixels, rowStride);
+            }
+
+            if(shadow > 0) {
+                for(int y = 0; y < height; y++) {
+                    for(int x = 0; x < width; x++) {
+                        float edge = Math.max(0, Math.min(1, (x - 0.45f * width) / (0.1f * width)));
+                        float lighting = 1 - shadow * edge;
+                        pixels[y * rowStride + x] = (byte) ((pixels[y * rowStride + x] & 0xff) * lighting);
+                    }
+                }
+            }
+
+            if(brightness != 1) {
+                for(int i = 0; i < pixels.length; i++) {
+                    pixels[i] = (byte) Math.min(255, Math.round((pixels[i] & 0xff) * brightness));
+                }
+            }
+
+            if(motionBlur > 1) {
+                int[] row = new int[width];
+                for(int y = 0; y < height; y++) {
+                    for(int x = 0; x < width; x++) {
+                        row[x] = pixels[y * rowStride + x] & 0xff;
+                    }
+
+                    // Box filter over the blur length, clamped at frame edges
+                    for(int x = 0; x < width; x++) {
+                        int sum = 0;
+                        for(int i = 0; i < motionBlur; i++) {
+                            sum += row[Math.max(0, Math.min(width - 1, x + i - motionBlur / 2))];
+                        }
+                        pixels[y * rowStride + x] = (byte) (sum / motionBlur);
+                    }
+                }
+            }
+
+            if(noise > 0) {
+                Random random = new Random(seed);
+                for(int i = 0; i < pixels.length; i++) {
+                    int value = (pixels[i] & 0xff) + (int) Math.round(random.nextGaussian() * noise);
+                    pixels[i] = (byte) Math.max(0, Math.min(255, value));
+                }
+            }
+
+            ByteBuffer plane = direct ? ByteBuffer.allocateDirect(pixels.length) : ByteBuffer.allocate(pixels.length);
+            plane.put(pixels);
+            plane.flip();
+
+            return new SyntheticFrame(plane, width, height, rowStride, content, renderedVersion);
+        }
+
+        private void renderClutter(byte[] pixels, int rowStride) {
+            // Separate generator, so the noise of a frame doesn't depend on its clutter
+            Random random = new Random(~seed);
+
+            for(int i = 0; i < clutter; i++) {
+                int rectWidth = 2 + random.nextInt(Math.max(1, width / 4));
+                int rectHeight = 2 + random.nextInt(Math.max(1, height / 4));
+                int left = random.nextInt(width);
+                int top = random.nextInt(height);
+                byte gray = (byte) random.nextInt(256);
+
+                for(int y = top; y < Math.min(height, top + rectHeight); y++) {
+                    Arrays.fill(pixels, y * rowStride + left, y * rowStride + Math.min(width, left + rectWidth), gray);
+                }
+            }
+        }
+
+        private int renderCode(byte[] pixels, int rowStride) {
+            QRCode code;
+            try {
+                code = Encoder.encode(content, ErrorCorrectionLevel.M);
+            } catch (WriterException e) {
+                throw new IllegalArgumentException("Content can't be encoded.", e);
+            }
+
+            if(version != 0 && code.getVersion().getVersionNumber() != version) {
+                throw new IllegalStateException("Content has been encoded into a different version.");
+            }
+
+            ByteMatrix matrix = code.getMatrix();
+            int modules = matrix.getWidth();
+            int modulesWithQuietZone = modules + 2 * QUIET_ZONE;
+
+            double moduleSize = codeSize * Math.min(width, height) / modulesWithQuietZone;
+            double cos = Math.cos(Math.toRadians(rotation));
+            double sin = Math.sin(Math.toRadians(rotation));
+            double cx = centerX * width;
+            double cy = centerY * height;
+            double halfExtent = modulesWithQuietZone * moduleSize / 2 * (Math.abs(cos) + Math.abs(sin));
+
+            int minX = Math.max(0, (int) (cx - halfExtent));
+            int maxX = Math.min(width - 1, (int) (cx + halfExtent));
+            int minY = Math.max(0, (int) (cy - halfExtent));
+            int maxY = Math.min(height - 1, (int) (cy + halfExtent));
+
+            // Inverse mapping of every pixel into the code's module grid
+            for(int y = minY; y <= maxY; y++) {
+                for(int x = minX; x <= maxX; x++) {
+                    double dx = x + 0.5 - cx;
+                    double dy = y + 0.5 - cy;
+
+                    double u = (dx * cos + dy * sin) / moduleSize + modulesWithQuietZone / 2.0;
+                    double v = (-dx * sin + dy * cos) / moduleSize + modulesWithQuietZone / 2.0;
+
+                    if(u < 0 || v < 0 || u >= modulesWithQuietZone || v >= modulesWithQuietZone) continue;
+
+                    int moduleX = (int) u - QUIET_ZONE;
+                    int moduleY = (int) v - QUIET_ZONE;
+                    boolean dark = moduleX >= 0 && moduleY >= 0 && moduleX < modules && moduleY < modules &&
+                            matrix.get(moduleX, moduleY) == 1;
+
+                    pixels[y * rowStride + x] = (byte) (dark != inverted ? DARK : LIGHT);
+                }
+            }
+
+            return code.getVersion().getVersionNumber();
+        }
+    }
+}
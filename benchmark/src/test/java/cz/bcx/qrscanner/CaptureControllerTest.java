@@ -0,0 +1,25 @@
+package cz.bcx.qrscanner;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CaptureControllerTest {
+    // Ranges of a phone camera with a high speed mode
+    private static final int[][] RANGES = {{15, 15}, {7, 30}, {15, 30}, {30, 30}, {60, 60}};
+
+    @Test
+    public void selectsRangeOfNominalFrameRate() {
+        // 33 ms is a frame at 30 fps, not 31 fps which no camera offers
+        assertArrayEquals(new int[] {30, 30}, CaptureController.selectFrameRateRange(RANGES, 33_000_000L));
+        assertArrayEquals(new int[] {15, 30}, CaptureController.selectFrameRateRange(RANGES, 66_000_000L));
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertFalse(ScannerOptions.fromArguments(new HashMap<String, Object>()).isScanCaptureProfile());
+    }
+}
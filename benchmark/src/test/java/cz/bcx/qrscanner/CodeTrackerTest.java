@@ -0,0 +1,77 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class CodeTrackerTest {
+    private static final long FRAME_INTERVAL = 33_000_000; // ns
+    private static final long RESCAN_INTERVAL = 500_000_000; // ns
+
+    private static Result code(float left, float top, float size) {
+        return new Result("code", null, new ResultPoint[] {
+                new ResultPoint(left, top + size),
+                new ResultPoint(left, top),
+                new ResultPoint(left + size, top)
+        }, BarcodeFormat.QR_CODE);
+    }
+
+    @Test
+    public void decodesWholeFramePeriodicallyWhileTracking() {
+        CodeTracker tracker = new CodeTracker(3, RESCAN_INTERVAL);
+        long timestamp = 0;
+
+        tracker.onFullFrame(timestamp);
+        tracker.onFound(0, timestamp, Collections.singletonList(code(300, 200, 100)));
+
+        int wholeFrames = 0;
+        for(int sequence = 1; sequence <= 60; sequence++) {
+            timestamp += FRAME_INTERVAL;
+
+            Region prediction = tracker.predict(timestamp, 1280, 720);
+            if(prediction == null) {
+                wholeFrames++;
+                tracker.onFullFrame(timestamp);
+            }
+
+            tracker.onFound(sequence, timestamp, Collections.singletonList(code(300, 200, 100)));
+        }
+
+        // 60 frames of 33 ms are almost 2 s, a whole frame every 500 ms
+        assertEquals(3, wholeFrames);
+    }
+
+    @Test
+    public void predictsAroundFoundCode() {
+        CodeTracker tracker = new CodeTracker(3, RESCAN_INTERVAL);
+
+        tracker.onFullFrame(0);
+        tracker.onFound(0, 0, Collections.singletonList(code(300, 200, 100)));
+
+        Region prediction = tracker.predict(FRAME_INTERVAL, 1280, 720);
+        assertNotNull(prediction);
+        assertEquals(new Region(250, 150, 200, 200), prediction);
+    }
+
+    @Test
+    public void losesCodeAfterMisses() {
+        CodeTracker tracker = new CodeTracker(2, RESCAN_INTERVAL);
+
+        tracker.onFullFrame(0);
+        tracker.onFound(0, 0, Collections.singletonList(code(300, 200, 100)));
+        tracker.onMissed(1);
+        tracker.onMissed(2);
+
+        assertFalse(tracker.isTracking());
+        assertNull(tracker.predict(3 * FRAME_INTERVAL, 1280, 720));
+    }
+}
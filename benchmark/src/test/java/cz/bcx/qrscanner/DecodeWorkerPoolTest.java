@@ -0,0 +1,131 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeWorkerPoolTest {
+    private static final String ENGINE = "test-blocking";
+    private static final long TIMEOUT = 5000; // ms
+
+    // Decoding of the first frame waits for the release latch, every frame has a code
+    private static final CountDownLatch firstFrameStarted = new CountDownLatch(1);
+    private static final CountDownLatch firstFrameRelease = new CountDownLatch(1);
+
+    static {
+        DecodeEngines.register(ENGINE, new DecodeEngine.Factory() {
+            @Override
+            public DecodeEngine create(ScannerOptions options) {
+                return new DecodeEngine() {
+                    @Override
+                    public Decoder createDecoder(PipelineStats stats) {
+                        return new Decoder() {
+                            @Override
+                            public List<Result> decode(Frame frame) {
+                                if(frame.getSequence() == 0) {
+                                    firstFrameStarted.countDown();
+                                    try {
+                                        firstFrameRelease.await();
+                                    } catch (InterruptedException e) {
+                                        Thread.currentThread().interrupt();
+                                    }
+                                }
+
+                                List<Result> results = new ArrayList<>(1);
+                                results.add(new Result("code " + frame.getSequence(), null, null, BarcodeFormat.QR_CODE));
+                                return results;
+                            }
+
+                            @Override
+                            public DecodeStatus getLastStatus() {
+                                return DecodeStatus.FOUND;
+                            }
+
+                            @Override
+                            public Region getLastCandidateRegion() {
+                                return null;
+                            }
+                        };
+                    }
+                };
+            }
+        });
+    }
+
+    private final List<Long> delivered = Collections.synchronizedList(new ArrayList<Long>());
+    private final Semaphore decodedFrames = new Semaphore(0);
+
+    private final DecodeWorkerPool.Listener listener = new DecodeWorkerPool.Listener() {
+        @Override
+        public void onDecodeFinished(Frame frame, DecodeStatus status, List<Result> results, Region candidateRegion,
+                                     long decodeTime) {
+            decodedFrames.release();
+        }
+
+        @Override
+        public void onCodesDecoded(Frame frame, List<Result> results) {
+            delivered.add(frame.getSequence());
+        }
+
+        @Override
+        public void onDecodeError(Frame frame, RuntimeException e) {}
+    };
+
+    private void awaitDelivered(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while(delivered.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void submit(DecodeWorkerPool pool, long sequence) {
+        Frame frame = pool.obtainFrame(0);
+        frame.set(1, 1, null, sequence, sequence);
+        pool.submit(frame);
+    }
+
+    @Test
+    public void slowFrameHoldsBackAtMostOneFramePerDecoder() throws InterruptedException {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("decodeEngine", ENGINE);
+        arguments.put("decodeWorkers", 2);
+
+        DecodeWorkerPool pool = new DecodeWorkerPool(ScannerOptions.fromArguments(arguments), null, listener);
+        pool.start();
+
+        submit(pool, 0);
+        assertTrue(firstFrameStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // The other decoder decodes frames one by one while the first one is stuck
+        for(long sequence = 1; sequence <= 10; sequence++) {
+            submit(pool, sequence);
+            assertTrue(decodedFrames.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+
+        // Two frames wait in the buffer, the third one skips the stuck frame
+        awaitDelivered(10);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), new ArrayList<>(delivered));
+        assertEquals(0, pool.getDroppedFrames());
+
+        // Results of the skipped frame follow when it's done
+        firstFrameRelease.countDown();
+        assertTrue(pool.awaitIdle(TIMEOUT));
+        pool.stop();
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 0L), delivered);
+    }
+}
@@ -0,0 +1,57 @@
+package cz.bcx.qrscanner;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameGateTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    /**
+     * Checkerboard of 3 px squares, sharp in both directions, behind a header of bright pixels.
+     */
+    private static ByteBuffer createPlane(int rowStride, int position) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(position + HEIGHT * rowStride);
+
+        for(int i = 0; i < position; i++) {
+            buffer.put(i, (byte) 0xFF);
+        }
+
+        for(int y = 0; y < HEIGHT; y++) {
+            for(int x = 0; x < WIDTH; x++) {
+                buffer.put(position + y * rowStride + x, (byte) ((x / 3 + y / 3) % 2 == 0 ? 20 : 230));
+            }
+        }
+
+        buffer.position(position);
+        return buffer;
+    }
+
+    @Test
+    public void samplesFromBufferPosition() {
+        Region crop = Region.full(WIDTH, HEIGHT);
+
+        FrameGate gate = new FrameGate(0.5f, 0);
+        assertEquals(FrameGate.Verdict.ADMIT, gate.check(createPlane(WIDTH + 8, 0), WIDTH + 8, 1, crop));
+        float sharpness = gate.getLastSharpness();
+        assertTrue(sharpness > 0.5f);
+
+        ByteBuffer plane = createPlane(WIDTH + 8, 100);
+        assertEquals(FrameGate.Verdict.ADMIT, gate.check(plane, WIDTH + 8, 1, crop));
+        assertEquals(sharpness, gate.getLastSharpness(), 1e-6);
+        assertEquals(100, plane.position());
+    }
+
+    @Test
+    public void disabledByDefault() {
+        ScannerOptions options = ScannerOptions.fromArguments(new HashMap<String, Object>());
+
+        assertFalse(new FrameGate(options.getMinSharpness(), options.getMinFrameDifference()).isEnabled());
+    }
+}
@@ -0,0 +1,108 @@
+package cz.bcx.qrscanner;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FrameTest {
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+
+    private static byte pixel(int x, int y) {
+        return (byte) (y * 16 + x + 1);
+    }
+
+    /**
+     * Y plane with row padding, pixel stride and a header before the plane's first pixel.
+     * Bytes which are not pixels are 0xFF, so copying any of them shows up in the frame.
+     */
+    private static ByteBuffer createPlane(int rowStride, int pixelStride, int position) {
+        int size = position + (HEIGHT - 1) * rowStride + (WIDTH - 1) * pixelStride + 1;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+
+        for(int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0xFF);
+        }
+
+        for(int y = 0; y < HEIGHT; y++) {
+            for(int x = 0; x < WIDTH; x++) {
+                buffer.put(position + y * rowStride + x * pixelStride, pixel(x, y));
+            }
+        }
+
+        buffer.position(position);
+        return buffer;
+    }
+
+    private static byte[] expectedPixels(Region crop) {
+        byte[] pixels = new byte[crop.getWidth() * crop.getHeight()];
+
+        for(int y = 0; y < crop.getHeight(); y++) {
+            for(int x = 0; x < crop.getWidth(); x++) {
+                pixels[y * crop.getWidth() + x] = pixel(crop.getLeft() + x, crop.getTop() + y);
+            }
+        }
+
+        return pixels;
+    }
+
+    private static byte[] copy(ByteBuffer plane, int rowStride, int pixelStride, Region crop) {
+        Frame frame = new Frame(0);
+        frame.copyPlane(plane, rowStride, pixelStride, WIDTH, HEIGHT, crop, 3, 42);
+
+        Region frameCrop = crop != null ? crop : Region.full(WIDTH, HEIGHT);
+        assertEquals(frameCrop, frame.getCrop());
+        assertEquals(3, frame.getSequence());
+        assertEquals(42, frame.getTimestamp());
+
+        byte[] data = new byte[frameCrop.getWidth() * frameCrop.getHeight()];
+        System.arraycopy(frame.getData(), 0, data, 0, data.length);
+        return data;
+    }
+
+    @Test
+    public void copiesPaddedRows() {
+        ByteBuffer plane = createPlane(WIDTH + 9, 1, 0);
+
+        assertArrayEquals(expectedPixels(Region.full(WIDTH, HEIGHT)), copy(plane, WIDTH + 9, 1, null));
+    }
+
+    @Test
+    public void copiesInterleavedPixels() {
+        ByteBuffer plane = createPlane(2 * WIDTH + 3, 2, 0);
+
+        assertArrayEquals(expectedPixels(Region.full(WIDTH, HEIGHT)), copy(plane, 2 * WIDTH + 3, 2, null));
+    }
+
+    @Test
+    public void copiesFromBufferPosition() {
+        ByteBuffer packed = createPlane(WIDTH + 1, 1, 11);
+        assertArrayEquals(expectedPixels(Region.full(WIDTH, HEIGHT)), copy(packed, WIDTH + 1, 1, null));
+        assertEquals(11, packed.position());
+
+        ByteBuffer interleaved = createPlane(2 * WIDTH + 3, 2, 5);
+        assertArrayEquals(expectedPixels(Region.full(WIDTH, HEIGHT)), copy(interleaved, 2 * WIDTH + 3, 2, null));
+        assertEquals(5, interleaved.position());
+    }
+
+    @Test
+    public void copiesOnlyCrop() {
+        Region crop = new Region(2, 1, 4, 3);
+
+        assertArrayEquals(expectedPixels(crop), copy(createPlane(WIDTH + 9, 1, 7), WIDTH + 9, 1, crop));
+        assertArrayEquals(expectedPixels(crop), copy(createPlane(2 * WIDTH + 3, 2, 7), 2 * WIDTH + 3, 2, crop));
+    }
+
+    @Test
+    public void reusesLargeEnoughData() {
+        Frame frame = new Frame(WIDTH * HEIGHT);
+        byte[] data = frame.getData();
+
+        frame.copyPlane(createPlane(WIDTH, 1, 0), WIDTH, 1, WIDTH, HEIGHT, new Region(1, 1, 3, 3), 0, 0);
+
+        assertEquals(data, frame.getData());
+    }
+}
@@ -0,0 +1,25 @@
+package cz.bcx.qrscanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RegionTest {
+    private static final Region FRAME = Region.full(1280, 720);
+
+    @Test
+    public void alignsSizeAroundCenter() {
+        assertEquals(new Region(222, 122, 256, 256), new Region(250, 150, 200, 200).alignSize(64, FRAME));
+        assertEquals(new Region(222, 120, 256, 256), new Region(248, 149, 203, 197).alignSize(64, FRAME));
+    }
+
+    @Test
+    public void keepsAlignedRegionWithinBounds() {
+        assertEquals(new Region(0, 0, 256, 128), new Region(10, 5, 200, 100).alignSize(64, FRAME));
+        assertEquals(new Region(1024, 592, 256, 128), new Region(1075, 615, 200, 100).alignSize(64, FRAME));
+
+        // A dimension of the bounds smaller than the aligned size is taken as it is
+        Region window = new Region(100, 100, 300, 90);
+        assertEquals(new Region(144, 100, 256, 90), new Region(150, 110, 250, 70).alignSize(64, window));
+    }
+}
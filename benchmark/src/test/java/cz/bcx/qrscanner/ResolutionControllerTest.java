@@ -0,0 +1,141 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.Result;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResolutionControllerTest {
+    private static final int[] WIDTHS = {640, 1280, 1920};
+    private static final int[] HEIGHTS = {480, 720, 1080};
+
+    private static final long FRAME_INTERVAL = 33_000_000; // ns
+    private static final long DECODE_TIME = 10_000_000; // ns
+    private static final long TARGET_DECODE_TIME = 50_000_000; // ns
+
+    /**
+     * Stands in for the camera: switches sizes synchronously, skips switches while it isn't capturing and fails to
+     * switch to sizes it can't configure.
+     */
+    private static final class FakeCamera implements ResolutionController.Target {
+        private ResolutionController controller;
+        private boolean capturing = true;
+        private int unsupportedWidth = -1;
+        private int width;
+        private int height;
+        private int switchRequests = 0;
+        private long now;
+
+        private FakeCamera(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void switchCaptureSize(int width, int height) {
+            switchRequests++;
+
+            if(!capturing) {
+                controller.onSwitchSkipped(now, this.width, this.height);
+            }
+            else if(width == unsupportedWidth) {
+                controller.onSwitchFailed(now);
+            }
+            else {
+                this.width = width;
+                this.height = height;
+            }
+        }
+    }
+
+    private FakeCamera camera;
+    private ResolutionController controller;
+    private final Frame frame = new Frame(0);
+    private long sequence = 0;
+
+    @Before
+    public void setUp() {
+        camera = new FakeCamera(WIDTHS[1], HEIGHTS[1]);
+        controller = new ResolutionController(
+                WIDTHS, HEIGHTS, 1, new AdaptiveResolutionPolicy(TARGET_DECODE_TIME), camera
+        );
+        camera.controller = controller;
+    }
+
+    /**
+     * Decodes frames of the camera's current size in which codes are located but can't be read.
+     */
+    private void decodePartials(int frames) {
+        for(int i = 0; i < frames; i++) {
+            camera.now += FRAME_INTERVAL;
+            frame.set(camera.width, camera.height, null, sequence++, camera.now);
+            controller.onDecodeFinished(
+                    camera.now, frame, DecodeStatus.PARTIAL, Collections.<Result>emptyList(), DECODE_TIME
+            );
+        }
+    }
+
+    @Test
+    public void switchesToLargerSizeWhenCodesCantBeRead() {
+        decodePartials(10);
+
+        assertEquals(1, camera.switchRequests);
+        assertEquals(2, controller.getLevel());
+        assertEquals(WIDTHS[2], camera.width);
+    }
+
+    @Test
+    public void keepsSwitchingAfterSkippedSwitch() {
+        camera.capturing = false;
+        decodePartials(10);
+
+        // The camera still captures the previous size, which the controller goes back to
+        assertEquals(1, camera.switchRequests);
+        assertEquals(1, controller.getLevel());
+        assertEquals(WIDTHS[1], camera.width);
+
+        // Frames of the current size still drive the controller once the camera captures again
+        camera.capturing = true;
+        decodePartials(100);
+
+        assertEquals(2, camera.switchRequests);
+        assertEquals(2, controller.getLevel());
+        assertEquals(WIDTHS[2], camera.width);
+    }
+
+    @Test
+    public void stopsSwitchingAfterFailedSwitch() {
+        camera.unsupportedWidth = WIDTHS[2];
+        decodePartials(10);
+
+        assertEquals(1, camera.switchRequests);
+        assertEquals(1, controller.getLevel());
+
+        decodePartials(100);
+
+        assertEquals(1, camera.switchRequests);
+        assertEquals(WIDTHS[1], camera.width);
+    }
+
+    @Test
+    public void ignoresFramesOfPreviousSize() {
+        decodePartials(10);
+        assertEquals(2, controller.getLevel());
+
+        // Frames captured before the switch are still being decoded
+        for(int i = 0; i < 100; i++) {
+            camera.now += FRAME_INTERVAL;
+            frame.set(WIDTHS[1], HEIGHTS[1], null, sequence++, camera.now);
+            controller.onDecodeFinished(
+                    camera.now, frame, DecodeStatus.FOUND, Collections.<Result>emptyList(), 200_000_000
+            );
+        }
+
+        assertEquals(1, camera.switchRequests);
+        assertEquals(2, controller.getLevel());
+    }
+}
@@ -0,0 +1,143 @@
+package cz.bcx.qrscanner;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class YPlaneLuminanceSourceTest {
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+
+    private static byte[] createData() {
+        byte[] data = new byte[WIDTH * HEIGHT];
+
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7 + 3);
+        }
+
+        return data;
+    }
+
+    /**
+     * Reference implementation: the view's matrix built pixel by pixel from the definition of the orientation.
+     */
+    private static byte[] orient(byte[] data, int width, int height, Orientation orientation) {
+        boolean rotated = orientation.getQuarterTurns() == 1;
+        int viewWidth = rotated ? height : width;
+        int viewHeight = rotated ? width : height;
+        byte[] matrix = new byte[viewWidth * viewHeight];
+
+        for(int y = 0; y < viewHeight; y++) {
+            for(int x = 0; x < viewWidth; x++) {
+                // Rotating counter-clockwise moves the last column of the data to the first row of the view
+                byte value = rotated ? data[x * width + width - 1 - y] : data[y * width + x];
+                matrix[y * viewWidth + x] = orientation.isInverted() ? (byte) ~value : value;
+            }
+        }
+
+        return matrix;
+    }
+
+    private static byte[] rows(LuminanceSource source) {
+        byte[] matrix = new byte[source.getWidth() * source.getHeight()];
+
+        for(int y = 0; y < source.getHeight(); y++) {
+            byte[] row = source.getRow(y, null);
+            System.arraycopy(row, 0, matrix, y * source.getWidth(), source.getWidth());
+        }
+
+        return matrix;
+    }
+
+    private static byte[] matrix(LuminanceSource source) {
+        byte[] matrix = new byte[source.getWidth() * source.getHeight()];
+        System.arraycopy(source.getMatrix(), 0, matrix, 0, matrix.length);
+        return matrix;
+    }
+
+    @Test
+    public void orientedViewsMatchReference() {
+        byte[] data = createData();
+        YPlaneLuminanceSource source = new YPlaneLuminanceSource(data, WIDTH, HEIGHT);
+
+        for(Orientation orientation : Orientation.values()) {
+            LuminanceSource view = source.orient(orientation, null);
+            byte[] expected = orient(data, WIDTH, HEIGHT, orientation);
+
+            assertEquals(orientation.name(), orientation.getQuarterTurns() == 1 ? HEIGHT : WIDTH, view.getWidth());
+            assertArrayEquals(orientation.name(), expected, matrix(view));
+            assertArrayEquals(orientation.name(), expected, rows(view));
+        }
+    }
+
+    @Test
+    public void zxingRotationAndInversionMatchOrientations() {
+        YPlaneLuminanceSource source = new YPlaneLuminanceSource(createData(), WIDTH, HEIGHT);
+
+        assertArrayEquals(matrix(source.orient(Orientation.ROTATED, null)), matrix(source.rotateCounterClockwise()));
+        assertArrayEquals(matrix(source.orient(Orientation.INVERTED, null)), matrix(source.invert()));
+        assertArrayEquals(
+                matrix(source.orient(Orientation.ROTATED_INVERTED, null)),
+                matrix(source.rotateCounterClockwise().invert())
+        );
+
+        // Four quarter turns and two inversions give back the original view
+        LuminanceSource turned = source.rotateCounterClockwise().rotateCounterClockwise()
+                .rotateCounterClockwise().rotateCounterClockwise().invert().invert();
+        assertArrayEquals(matrix(source), matrix(turned));
+    }
+
+    @Test
+    public void croppedViewsMatchReference() {
+        byte[] data = createData();
+        YPlaneLuminanceSource source = new YPlaneLuminanceSource(data, WIDTH, HEIGHT, 1, 1, 4, 3);
+
+        byte[] cropped = new byte[4 * 3];
+        for(int y = 0; y < 3; y++) {
+            System.arraycopy(data, (y + 1) * WIDTH + 1, cropped, y * 4, 4);
+        }
+
+        for(Orientation orientation : Orientation.values()) {
+            assertArrayEquals(orientation.name(), orient(cropped, 4, 3, orientation),
+                    matrix(source.orient(orientation, null)));
+        }
+
+        // Crop of a rotated view, in the rotated view's coordinates
+        LuminanceSource rotated = source.orient(Orientation.ROTATED, null);
+        byte[] rotatedMatrix = orient(cropped, 4, 3, Orientation.ROTATED);
+        byte[] expected = new byte[2 * 2];
+        for(int y = 0; y < 2; y++) {
+            System.arraycopy(rotatedMatrix, (y + 1) * 3 + 1, expected, y * 2, 2);
+        }
+
+        assertArrayEquals(expected, matrix(rotated.crop(1, 1, 2, 2)));
+    }
+
+    @Test
+    public void reusesMatrixBuffer() {
+        byte[] buffer = new byte[WIDTH * HEIGHT];
+        YPlaneLuminanceSource view = new YPlaneLuminanceSource(createData(), WIDTH, HEIGHT)
+                .orient(Orientation.ROTATED_INVERTED, buffer);
+
+        assertEquals(buffer, view.getMatrix());
+    }
+
+    @Test
+    public void mapsPointsToDataCoordinates() {
+        YPlaneLuminanceSource source = new YPlaneLuminanceSource(createData(), WIDTH, HEIGHT, 1, 1, 4, 3);
+        YPlaneLuminanceSource rotated = source.orient(Orientation.ROTATED, null);
+
+        // Pixel (0, 0) of the rotated view is the last pixel of the first row of the crop
+        ResultPoint point = rotated.toDataCoordinates(new ResultPoint(0.5f, 0.5f));
+        assertEquals(4.5f, point.getX(), 1e-6);
+        assertEquals(1.5f, point.getY(), 1e-6);
+
+        ResultPoint inverted = source.orient(Orientation.INVERTED, null).toDataCoordinates(new ResultPoint(2, 1));
+        assertEquals(3, inverted.getX(), 1e-6);
+        assertEquals(2, inverted.getY(), 1e-6);
+    }
+}
@@ -1,5 +1,5 @@
 import 'dart:async';
-
+import 'dart:typed_data';
 
 import 'package:flutter/services.dart';
 import 'package:flutter/material.dart';
@@ -7,6 +7,24 @@ import 'package:flutter/material.dart';
 final MethodChannel _channel =
     const MethodChannel('cz.bcx.qr_scanner');
 
+// Events of the scanner and of file decoding share one native channel
+final Stream<dynamic> _events =
+    new EventChannel('cz.bcx.qr_scanner/events').receiveBroadcastStream();
+
+// Flattens batches of events sent by the native dispatcher
+Iterable<Map<dynamic, dynamic>> _unbatchEvents(dynamic e) sync* {
+  final Map<dynamic, dynamic> event = e;
+
+  if(event["eventType"] == "batch") {
+    for(dynamic batchedEvent in event["events"]) {
+      yield* _unbatchEvents(batchedEvent);
+    }
+  }
+  else {
+    yield event;
+  }
+}
+
 class ScannerPreview extends StatelessWidget {
   final ScannerController controller;
 
@@ -47,6 +65,157 @@ String _serializePreviewQuality(PreviewQuality previewQuality) {
   }
 }
 
+Map<String, double> _serializeScanWindow(Rect scanWindow) {
+  if(scanWindow == null) return null;
+
+  return <String, double> {
+    'left': scanWindow.left,
+    'top': scanWindow.top,
+    'width': scanWindow.width,
+    'height': scanWindow.height
+  };
+}
+
+enum LensFacing {
+  back,
+  front,
+  external
+}
+
+String _serializeLensFacing(LensFacing lensFacing) {
+  switch(lensFacing) {
+    case LensFacing.back:
+      return 'back';
+    case LensFacing.front:
+      return 'front';
+    case LensFacing.external:
+      return 'external';
+
+    // Let the platform decide
+    default:
+      return null;
+  }
+}
+
+enum CaptureProfile {
+  // Focus and metering on the scan window, short exposures, refocus on codes which couldn't be read
+  scan,
+  // Camera's preview defaults with continuous focus
+  preview
+}
+
+String _serializeCaptureProfile(CaptureProfile captureProfile) {
+  switch(captureProfile) {
+    case CaptureProfile.scan:
+      return 'scan';
+    case CaptureProfile.preview:
+      return 'preview';
+
+    // Let the platform decide
+    default:
+      return null;
+  }
+}
+
+enum BinarizerStrategy {
+  hybrid,  // Local thresholding only, handles uneven lighting
+  global,  // Global histogram only, cheapest
+  cascade  // Global histogram first, hybrid when no code is found; reorders itself by hit rates
+}
+
+String _serializeBinarizerStrategy(BinarizerStrategy strategy) {
+  switch(strategy) {
+    case BinarizerStrategy.hybrid:
+      return 'hybrid';
+    case BinarizerStrategy.global:
+      return 'global';
+    case BinarizerStrategy.cascade:
+      return 'cascade';
+
+    // Let the platform decide
+    default:
+      return null;
+  }
+}
+
+enum CodeOrientation {
+  inverted,        // Light code on dark background
+  rotated,         // Rotated by 90 degrees, codes are searched along columns of the frame
+  rotatedInverted
+}
+
+List<String> _serializeOrientations(List<CodeOrientation> orientations) {
+  if(orientations == null) return null;
+
+  return orientations.map((CodeOrientation orientation) {
+    switch(orientation) {
+      case CodeOrientation.inverted:
+        return 'inverted';
+      case CodeOrientation.rotated:
+        return 'rotated';
+      case CodeOrientation.rotatedInverted:
+        return 'rotatedInverted';
+    }
+  }).toList();
+}
+
+enum ReleaseMode {
+  none,  // Camera stays open while the app is paused
+  hot,   // Camera is closed, everything else is kept for a fast resume
+  cold   // Decode workers and frame buffers are released too, resume takes a bit longer
+}
+
+String _serializeReleaseMode(ReleaseMode releaseMode) {
+  switch(releaseMode) {
+    case ReleaseMode.none:
+      return 'none';
+    case ReleaseMode.hot:
+      return 'hot';
+    case ReleaseMode.cold:
+      return 'cold';
+
+    // Let the platform decide
+    default:
+      return null;
+  }
+}
+
+class ScanResult {
+  final String code;
+  final String format;
+  final Uint8List rawBytes;
+
+  // Sensor timestamp of the frame in nanoseconds
+  final int timestamp;
+
+  // Corner points of the code in capture coordinates
+  final List<Offset> points;
+
+  const ScanResult({this.code, this.format, this.rawBytes, this.timestamp, this.points});
+
+  factory ScanResult._fromEvent(Map<dynamic, dynamic> event) {
+    final List<Offset> points = <Offset>[];
+    final Float64List rawPoints = event["points"];
+
+    if(rawPoints != null) {
+      for(int i = 0; i + 1 < rawPoints.length; i += 2) {
+        points.add(new Offset(rawPoints[i], rawPoints[i + 1]));
+      }
+    }
+
+    return new ScanResult(
+      code: event["code"],
+      format: event["format"],
+      rawBytes: event["rawBytes"],
+      timestamp: event["timestamp"],
+      points: points
+    );
+  }
+
+  @override
+  String toString() => '$runtimeType(code: $code, format: $format, points: $points)';
+}
+
 class ScannerValue {
   final bool initialized;
 
@@ -101,13 +270,165 @@ class ScannerController extends ValueNotifier<ScannerValue> {
   Completer<Null> _initializeCompleter;
 
   PreviewQuality previewQuality;
+
+  // Camera of this controller, the first camera facing lensFacing is used unless a cameraId is given.
+  // Several controllers may scan at once with different cameras, as far as the device can open them together.
+  LensFacing lensFacing;
+  String cameraId;
+
+  // Number of frames of this controller decoded in parallel, null to let the platform decide.
+  // Frames of all controllers are decoded by one shared set of native threads.
+  int decodeWorkers;
+
+  // Part of the preview in which codes are searched for, in normalized (0.0 - 1.0) coordinates.
+  // Null to scan the whole preview.
+  Rect scanWindow;
+
+  // Bounds of frames per second handed to the decoder, the rate adapts to decoding speed and results.
+  // Null to use platform defaults.
+  double minScanRate;
+  double maxScanRate;
+
+  // Pause after a successful scan, null to use platform default
+  Duration scanCooldown;
+
+  // The same code is reported again only after it hasn't been seen for dedupTtl.
+  // dedupCapacity limits number of remembered codes, 0 reports every scan.
+  int dedupCapacity;
+  Duration dedupTtl;
+
+  // Native events of this scanner are delivered in batches of at most eventBatchSize events,
+  // waiting at most eventFlushInterval for other events. Other scanners batch by their own settings.
+  Duration eventFlushInterval;
+  int eventBatchSize;
+
+  // Decode all codes in a frame instead of just one, codes found in the same frame are delivered together.
+  // At most maxCodesPerFrame codes are decoded, codes smaller than minCodeRegionSize capture pixels are skipped.
+  bool multiCode;
+  int maxCodesPerFrame;
+  double minCodeRegionSize;
+
+  // Name of the native decode engine, engines other than the built-in 'zxing' (default) and 'zxing-plain' have to be
+  // registered by the app's Android code before the controller is initialized. Null to use platform default.
+  String decodeEngine;
+
+  BinarizerStrategy binarizer;
+
+  // Number of half resolution levels decoded before the full resolution, 0 decodes only the full resolution.
+  // Saves time on close codes, distant codes take longer.
+  int pyramidLevels;
+
+  // Distance in capture pixels between rows and columns checked for finder patterns before a frame is decoded.
+  // Frames without any finder pattern are not decoded at all, which makes frames without a code much cheaper.
+  // 4 works well on the benchmark's corpus (benchmark/, prescreenCorpus). 0 or null (default) decodes every frame.
+  int prescreenLineSpacing;
+
+  // Frames less sharp than minSharpness and frames differing less than minFrameDifference from the last frame
+  // without any code are not decoded. Off by default, the replay harness (benchmark/) shows the values which work
+  // for the app's frames; 0.5 for both is a starting point. 0 or null disables the check.
+  double minSharpness;
+  double minFrameDifference;
+
+  // After a code is found, following frames are decoded only around its location until it's missed
+  // in trackingMisses frames. A whole frame is still decoded every trackingRescanInterval (default 500 ms),
+  // so other codes entering the view are found. 0 or null (default) decodes whole frames all the time,
+  // tracking is always off in multiCode mode.
+  int trackingMisses;
+  Duration trackingRescanInterval;
+
+  // Called with a ScanResult for every code found in a frame, including already reported ones,
+  // so overlays can follow the code. Requires trackingEvents.
+  bool trackingEvents;
+  Function onTracked;
+
+  // Switch capture resolution while scanning: higher when codes are located but can't be decoded,
+  // lower when decoding a frame takes longer than targetDecodeTime or codes are large.
+  bool adaptiveResolution;
+  Duration targetDecodeTime;
+
+  // A frame without any code is decoded once more in the next of these orientations, round robin.
+  // The orientation which finds a code is tried first on following frames. Null or empty disables retries.
+  List<CodeOrientation> orientationRetries;
+
+  // How focus, metering and exposure are controlled, null to use platform default (preview).
+  CaptureProfile captureProfile;
+
+  // Longest exposure auto exposure should use with the scan profile, shorter exposures blur less when the camera moves.
+  // Zero for no limit, null to use platform default (33 ms).
+  Duration maxExposureTime;
+
+  // Whether to always focus codes in the macro mode with the scan profile, for apps scanning codes held close.
+  // Null to use platform default (false).
+  bool closeFocus;
+
+  // File scanned frames are recorded into together with their decode outcomes, for reproducing failed scans off
+  // the device. Null to not record. Recordings are read by the benchmark's recordingDump and replay tasks.
+  // Initialization fails when the file can't be opened for recording.
+  String recordFile;
+
+  // Number of recorded frames buffered in memory, frames are not recorded while all buffers are in use.
+  // Null to use platform default (8).
+  int recordBuffers;
+
+  // Maximal number of frames recorded per second, 0 to record every scanned frame. Null to use platform default (10).
+  int recordFrameRate;
+
+  // Maximal size of the recording in bytes, recording stops once it's reached. Null to use platform default (100 MB).
+  int recordMaxSize;
+
+  // What is released while the app is paused, the camera is reopened and the preview restarted on resume.
+  // Null to use platform default (hot).
+  ReleaseMode releaseMode;
+
   int _textureId;
 
   StreamSubscription<dynamic> _eventChannelSubscription;
 
   Function onCodeScanned;
 
-  ScannerController({this.previewQuality : PreviewQuality.medium, this.onCodeScanned}) : super(new ScannerValue.uninitialized());
+  // Called with a ScanResult for every scanned code
+  Function onResult;
+
+  ScannerController({
+    this.previewQuality : PreviewQuality.medium,
+    this.lensFacing,
+    this.cameraId,
+    this.decodeWorkers,
+    this.scanWindow,
+    this.minScanRate,
+    this.maxScanRate,
+    this.scanCooldown,
+    this.dedupCapacity,
+    this.dedupTtl,
+    this.eventFlushInterval,
+    this.eventBatchSize,
+    this.multiCode,
+    this.maxCodesPerFrame,
+    this.minCodeRegionSize,
+    this.decodeEngine,
+    this.binarizer,
+    this.pyramidLevels,
+    this.prescreenLineSpacing,
+    this.minSharpness,
+    this.minFrameDifference,
+    this.trackingMisses,
+    this.trackingRescanInterval,
+    this.trackingEvents,
+    this.onTracked,
+    this.adaptiveResolution,
+    this.targetDecodeTime,
+    this.orientationRetries,
+    this.captureProfile,
+    this.maxExposureTime,
+    this.closeFocus,
+    this.recordFile,
+    this.recordBuffers,
+    this.recordFrameRate,
+    this.recordMaxSize,
+    this.releaseMode,
+    this.onCodeScanned,
+    this.onResult
+  }) : super(new ScannerValue.uninitialized());
 
 
   int get textureId => _textureId;
@@ -124,7 +445,41 @@ class ScannerController extends ValueNotifier<ScannerValue> {
       final Map<dynamic, dynamic> methodResult = await _channel.invokeMethod(
         'initialize',
         <String, dynamic> {
-          'previewQuality' : _serializePreviewQuality(previewQuality)
+          'previewQuality' : _serializePreviewQuality(previewQuality),
+          'lensFacing' : _serializeLensFacing(lensFacing),
+          'cameraId' : cameraId,
+          'decodeWorkers' : decodeWorkers,
+          'scanWindow' : _serializeScanWindow(scanWindow),
+          'minScanRate' : minScanRate,
+          'maxScanRate' : maxScanRate,
+          'scanCooldown' : scanCooldown?.inMilliseconds,
+          'dedupCapacity' : dedupCapacity,
+          'dedupTtl' : dedupTtl?.inMilliseconds,
+          'eventFlushInterval' : eventFlushInterval?.inMilliseconds,
+          'eventBatchSize' : eventBatchSize,
+          'multiCode' : multiCode,
+          'maxCodesPerFrame' : maxCodesPerFrame,
+          'minCodeRegionSize' : minCodeRegionSize,
+          'decodeEngine' : decodeEngine,
+          'binarizer' : _serializeBinarizerStrategy(binarizer),
+          'pyramidLevels' : pyramidLevels,
+          'prescreenLineSpacing' : prescreenLineSpacing,
+          'minSharpness' : minSharpness,
+          'minFrameDifference' : minFrameDifference,
+          'trackingMisses' : trackingMisses,
+          'trackingRescanInterval' : trackingRescanInterval?.inMilliseconds,
+          'trackingEvents' : trackingEvents,
+          'adaptiveResolution' : adaptiveResolution,
+          'targetDecodeTime' : targetDecodeTime?.inMilliseconds,
+          'orientationRetries' : _serializeOrientations(orientationRetries),
+          'captureProfile' : _serializeCaptureProfile(captureProfile),
+          'maxExposureTime' : maxExposureTime?.inMilliseconds,
+          'closeFocus' : closeFocus,
+          'recordFile' : recordFile,
+          'recordBuffers' : recordBuffers,
+          'recordFrameRate' : recordFrameRate,
+          'recordMaxSize' : recordMaxSize,
+          'releaseMode' : _serializeReleaseMode(releaseMode)
         }
       );
 
@@ -137,9 +492,7 @@ class ScannerController extends ValueNotifier<ScannerValue> {
       );
 
       // Subscription to receive state and error events from native platform
-      _eventChannelSubscription = new EventChannel('cz.bcx.qr_scanner/events')
-          .receiveBroadcastStream()
-          .listen(_onEventReceived);
+      _eventChannelSubscription = _events.listen(_onEventReceived);
 
 
       value = value.copyWith(
@@ -160,6 +513,9 @@ class ScannerController extends ValueNotifier<ScannerValue> {
 
     var eventType = event["eventType"];
 
+    // Events of other controllers share the channel, they're tagged by the texture ID of their session
+    if(event["textureId"] != null && event["textureId"] != _textureId) return;
+
     switch(eventType) {
       case "error":
         value = value.copyWith(error: event["errorMessage"]);
@@ -170,14 +526,38 @@ class ScannerController extends ValueNotifier<ScannerValue> {
         if(onCodeScanned != null) {
           Function.apply(onCodeScanned, [event["code"]]);
         }
+        if(onResult != null) {
+          Function.apply(onResult, [new ScanResult._fromEvent(event)]);
+        }
+        break;
+
+      case "codeTracked":
+        if(onTracked != null) {
+          Function.apply(onTracked, [new ScanResult._fromEvent(event)]);
+        }
+        break;
+
+      case "batch":
+      // Several events delivered at once
+        for(dynamic batchedEvent in event["events"]) {
+          _onEventReceived(batchedEvent);
+        }
         break;
     }
   }
 
+  // Identifies the native session of this controller
+  Map<String, dynamic> _sessionArguments() {
+    return <String, dynamic> {
+      'textureId' : _textureId
+    };
+  }
+
   void startPreview() async {
     if(value.initialized && !value.disposed) { //Error if not initialized or disposed
       await _channel.invokeMethod(
         'startPreview',
+        _sessionArguments()
       );
 
       value = value.copyWith(previewStarted: true);
@@ -187,7 +567,8 @@ class ScannerController extends ValueNotifier<ScannerValue> {
   void stopPreview() async {
     if(value.initialized && !value.disposed) { //Error if not initialized or disposed
       await _channel.invokeMethod(
-        'stopPreview'
+        'stopPreview',
+        _sessionArguments()
       );
 
       value = value.copyWith(previewStarted: false);
@@ -197,7 +578,8 @@ class ScannerController extends ValueNotifier<ScannerValue> {
   void enableScanning() async {
     if(value.initialized && !value.disposed) { //Error if not initialized or disposed
       await _channel.invokeMethod(
-          'enableScanning'
+          'enableScanning',
+          _sessionArguments()
       );
 
       value = value.copyWith(scanningEnabled: true);
@@ -207,13 +589,30 @@ class ScannerController extends ValueNotifier<ScannerValue> {
   void disableScanning() async {
     if(value.initialized && !value.disposed) { //Error if not initialized or disposed
       await _channel.invokeMethod(
-          'disableScanning'
+          'disableScanning',
+          _sessionArguments()
       );
 
       value = value.copyWith(scanningEnabled: false);
     }
   }
 
+  // Counters and per-stage latency histograms (count, mean, p50, p90, p99 and max in microseconds)
+  // of the native pipeline since initialization or the last resetStats call.
+  // 'startup' holds microseconds from the start of initialization to configurationReady, setupDone, cameraOpened,
+  // sessionConfigured, firstPreviewFrame, firstImage and firstScanFrame, it isn't reset.
+  Future<Map<dynamic, dynamic>> getStats() async {
+    if(!value.initialized || value.disposed) return null;
+
+    return await _channel.invokeMethod('getStats', _sessionArguments());
+  }
+
+  Future<Null> resetStats() async {
+    if(value.initialized && !value.disposed) {
+      await _channel.invokeMethod('resetStats', _sessionArguments());
+    }
+  }
+
   @override
   Future<Null> dispose() {
     if(value.disposed) {
@@ -226,10 +625,15 @@ class ScannerController extends ValueNotifier<ScannerValue> {
 
     if(_initializeCompleter != null) {
       return _initializeCompleter.future.then((param) async {
-        await _channel.invokeMethod(
-          'dispose'
-        );
-        await _eventChannelSubscription?.cancel();
+        // Fails with a PlatformException when the frame recording couldn't be finished, the session is gone anyway
+        try {
+          await _channel.invokeMethod(
+            'dispose',
+            _sessionArguments()
+          );
+        } finally {
+          await _eventChannelSubscription?.cancel();
+        }
       });
     }
     else {
@@ -238,6 +642,100 @@ class ScannerController extends ValueNotifier<ScannerValue> {
   }
 }
 
+class FileScanResult {
+  final int index;
+  final String path;
+
+  // Codes found in the image, points are in image coordinates. Null if the file couldn't be read.
+  final List<ScanResult> results;
+  final String error;
+
+  const FileScanResult({this.index, this.path, this.results, this.error});
+
+  @override
+  String toString() => '$runtimeType(path: $path, results: $results, error: $error)';
+}
+
+// Decodes codes in image files (JPEG, PNG, WebP, BMP, GIF and binary PGM) without any camera.
+// Decoding options are those of ScannerController: 'decodeEngine', 'multiCode', 'maxCodesPerFrame', 'binarizer',
+// 'pyramidLevels', 'prescreenLineSpacing'.
+class FileScanner {
+  static int _nextBatchId = 0;
+
+  static Future<List<ScanResult>> decodeFile(String path, {Map<String, dynamic> options}) async {
+    final Map<String, dynamic> arguments = <String, dynamic>{'path': path}..addAll(options ?? const {});
+
+    try {
+      final List<dynamic> codes = await _channel.invokeMethod('decodeFile', arguments);
+      return codes.map((dynamic code) => new ScanResult._fromEvent(code)).toList();
+    } on PlatformException catch(e) {
+      throw new ScannerException(message: "Failed to decode file $path.", cause: e);
+    }
+  }
+
+  // Decodes the files, or images of the directory, in parallel. Results come as soon as each file is decoded,
+  // in order of completion. Cancelling the subscription stops the batch.
+  static Stream<FileScanResult> decodeFiles({List<String> paths, String directory, Map<String, dynamic> options}) {
+    final int batchId = _nextBatchId++;
+    StreamSubscription<dynamic> subscription;
+    StreamController<FileScanResult> controller;
+
+    controller = new StreamController<FileScanResult>(
+      onListen: () {
+        // Listens before the call, events may arrive before its result
+        subscription = _events.listen((dynamic e) {
+          for(Map<dynamic, dynamic> event in _unbatchEvents(e)) {
+            if(event["batchId"] != batchId) continue;
+
+            switch(event["eventType"]) {
+              case "fileDecoded":
+                controller.add(new FileScanResult(
+                  index: event["index"],
+                  path: event["path"],
+                  results: (event["codes"] as List<dynamic>)
+                      .map((dynamic code) => new ScanResult._fromEvent(code))
+                      .toList()
+                ));
+                break;
+
+              case "fileFailed":
+                controller.add(new FileScanResult(
+                  index: event["index"],
+                  path: event["path"],
+                  error: event["errorMessage"]
+                ));
+                break;
+
+              case "batchFinished":
+                subscription.cancel();
+                controller.close();
+                break;
+            }
+          }
+        });
+
+        final Map<String, dynamic> arguments = <String, dynamic>{
+          'batchId': batchId,
+          'paths': paths,
+          'directory': directory
+        }..addAll(options ?? const {});
+
+        _channel.invokeMethod('decodeFiles', arguments).catchError((dynamic e) {
+          subscription.cancel();
+          controller.addError(new ScannerException(message: "Failed to decode files.", cause: e));
+          controller.close();
+        });
+      },
+      onCancel: () {
+        subscription?.cancel();
+        _channel.invokeMethod('cancelDecodeFiles', batchId);
+      }
+    );
+
+    return controller.stream;
+  }
+}
+
 class ScannerException implements Exception {
   String message;
   Exception cause;